@@ -0,0 +1,104 @@
+package cpen221.mp3.cache;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of Cache hits, misses and evicting puts, at several capacities
+ * and with one and eight threads sharing the cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    int capacity;
+
+    Cache<myCacheable<String>> cache;
+    String[] cachedIds;
+    String[] missingIds;
+
+    @Setup
+    public void fill() {
+        this.cache = new Cache<>(this.capacity, 3600);
+        this.cachedIds = new String[this.capacity];
+        this.missingIds = new String[this.capacity];
+        for (int i = 0; i < this.capacity; i++) {
+            this.cachedIds[i] = "page " + i;
+            this.missingIds[i] = "missing " + i;
+            this.cache.put(new myCacheable<>(this.cachedIds[i], "text of page " + i));
+        }
+    }
+
+    @TearDown
+    public void stopExpiry() {
+        ExpiryScheduler.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public myCacheable<String> hit() {
+        return this.cache.get(randomOf(this.cachedIds));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public myCacheable<String> hitContended() {
+        return this.cache.get(randomOf(this.cachedIds));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean miss() {
+        return tryGet(randomOf(this.missingIds));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean missContended() {
+        return tryGet(randomOf(this.missingIds));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean putEvicting(Fresh fresh) {
+        return this.cache.put(fresh.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean putEvictingContended(Fresh fresh) {
+        return this.cache.put(fresh.next());
+    }
+
+    /* per-thread source of ids that are not in the cache yet */
+    @State(Scope.Thread)
+    public static class Fresh {
+        private final String prefix = "fresh " + Thread.currentThread().getId() + " ";
+        private long counter;
+
+        myCacheable<String> next() {
+            return new myCacheable<>(this.prefix + this.counter++, "new text");
+        }
+    }
+
+    private boolean tryGet(String id) {
+        try {
+            this.cache.get(id);
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    private static String randomOf(String[] ids) {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
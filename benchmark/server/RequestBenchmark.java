@@ -0,0 +1,55 @@
+package cpen221.mp3.server;
+
+import cpen221.mp3.wikimediator.FixtureWikiSource;
+import cpen221.mp3.wikimediator.WikiMediator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of turning a Request into a JSON Response, for cached
+ * pages of several sizes and for a statistics query. The mediator runs
+ * against a FixtureWikiSource, so no network is used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int pageBytes;
+
+    WikiHandler handler;
+    Request getPage;
+    Request zeitgeist;
+
+    @Setup
+    public void start() {
+        FixtureWikiSource source = new FixtureWikiSource();
+        StringBuilder text = new StringBuilder(this.pageBytes);
+        while (text.length() < this.pageBytes) {
+            text.append("'''Lorem''' ipsum [[dolor]] sit amet. \"quoted\"\n");
+        }
+        source.addPage("Lorem", text.toString(), List.of("Dolor"));
+        WikiMediator mediator = new WikiMediator(source);
+        mediator.getPage("Lorem");
+
+        this.handler = new WikiHandler(null, mediator);
+        this.getPage = new Request("1", "getPage", "Lorem", "0");
+        this.zeitgeist = new Request("2", "zeitgeist", "10");
+    }
+
+    @Benchmark
+    public String getPageCached() {
+        return this.handler.process(this.getPage);
+    }
+
+    @Benchmark
+    public String zeitgeist() {
+        return this.handler.process(this.zeitgeist);
+    }
+}
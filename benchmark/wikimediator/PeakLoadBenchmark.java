@@ -0,0 +1,47 @@
+package cpen221.mp3.wikimediator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a request and of peakLoad30s after a long simulated
+ * uptime (ten requests a second since the tracker was created).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeakLoadBenchmark {
+
+    private static final int REQUESTS_PER_SECOND = 10;
+
+    @Param({"1", "24", "720"})
+    int uptimeHours;
+
+    LoadTracker tracker;
+
+    @Setup
+    public void simulateUptime() {
+        long now = System.currentTimeMillis();
+        long start = now - TimeUnit.HOURS.toMillis(this.uptimeHours);
+        this.tracker = new LoadTracker(start);
+        for (long t = start; t < now; t += 1000 / REQUESTS_PER_SECOND) {
+            this.tracker.record(t);
+        }
+    }
+
+    @Benchmark
+    public int peakLoad30s() {
+        this.tracker.record(System.currentTimeMillis());
+        return this.tracker.peak();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void recordContended() {
+        this.tracker.record(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,78 @@
+package cpen221.mp3.wikimediator;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of zeitgeist, trending and of recording a query, with 10^3 to 10^6
+ * distinct queries seen so far. Queries follow a Zipf-like distribution, as
+ * real search traffic does. Runs against an empty FixtureWikiSource, so no
+ * network is used.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatisticsBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int distinctQueries;
+
+    @Param({"10", "100"})
+    int limit;
+
+    WikiMediator mediator;
+    String[] queries;
+
+    @Setup
+    public void record() {
+        this.mediator = new WikiMediator(new FixtureWikiSource());
+        this.queries = new String[this.distinctQueries];
+        for (int i = 0; i < this.distinctQueries; i++) {
+            this.queries[i] = "query " + i;
+        }
+        SplittableRandom random = new SplittableRandom(221);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 2 * this.distinctQueries; i++) {
+            int id = this.mediator.queryIds.record(
+                    this.queries[zipf(random, this.distinctQueries)], now);
+            this.mediator.allTimeQueries.increment(id);
+            this.mediator.recentQueries.increment(id, now);
+        }
+    }
+
+    @Benchmark
+    public List<String> zeitgeist() {
+        return this.mediator.zeitgeist(this.limit);
+    }
+
+    @Benchmark
+    public List<String> trending() {
+        return this.mediator.trending(this.limit);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordQuery(Cursor cursor) {
+        long now = System.currentTimeMillis();
+        int id = this.mediator.queryIds.record(
+                this.queries[zipf(cursor.random, this.distinctQueries)], now);
+        this.mediator.allTimeQueries.increment(id);
+        this.mediator.recentQueries.increment(id, now);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    /* an index in [0, n) where small indices are much more likely */
+    private static int zipf(SplittableRandom random, int n) {
+        return (int) Math.min(n - 1, Math.floor(Math.pow(n, random.nextDouble())) - 1);
+    }
+}
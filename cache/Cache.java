@@ -1,52 +1,126 @@
 package cpen221.mp3.cache;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.io.Serializable;
 
 public class Cache<T extends Cacheable> implements Serializable{
 
     // anything Cacheable should be allowed to be stored in our Cache:
-    // a map of some cacheable object to some time it was put into the cache.
-    private ConcurrentHashMap<T, Long> cacheMap = new ConcurrentHashMap<>();
+    // access-ordered maps from the id of each cached object to its entry.
+    private final LinkedHashMap<String, Entry<T>> cacheMap;
+    private final LinkedHashMap<String, Entry<T>> mainMap;
     private int timeOut;
+    private final long timeOutNanos;
     private int cacheCapacity;
+    private final Weigher<? super T> weigher;
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private long windowWeight;
+    private long mainWeight;
+    private final FrequencySketch sketch;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
     /* the default cache size is 32 objects */
     private static final int DSIZE = 32;
     /* the default timeout value is 3600s */
     private static final int DTIMEOUT = 3600;
+    /* the share of maxWeight given to the admission window, in percent */
+    private static final int WINDOW_PERCENT = 1;
+    /* returned by expire once an entry is no longer in the cache */
+    static final long GONE = Long.MIN_VALUE;
 
     // Abstraction Function:
     // Cache represents a storage place for any object that meets the requirements
     // of being stored in a cache.
-    //  - cacheMap represents a map that maps each object to the time it was
-    //    inserted into this Cache. The time is in milliseconds, and
-    //    demonstrates the the time difference between the current time and
-    //    midnight of January 1 of 1970.
+    //  - cacheMap and mainMap together represent a map from the id of each
+    //    object to an Entry holding the object, its weight and the time at
+    //    which it becomes stale, which is timeOut seconds after it was last
+    //    put, touched or updated. The time is a System.nanoTime() reading, so
+    //    it is never affected by changes to the wall clock.
+    //    The iteration order of each map is the access order of its objects:
+    //    the first key is the least recently accessed object, the last key is
+    //    the most recently accessed one.
+    //  - Without a weigher, every object weighs 1 and mainMap is always
+    //    empty: cacheMap is the whole cache and the least recently accessed
+    //    object is evicted first (LRU).
+    //  - With a weigher, the cache uses W-TinyLFU: new objects enter cacheMap,
+    //    a small "window" of at most windowMaxWeight. Objects pushed out of
+    //    the window only move into mainMap if they have been accessed more
+    //    often recently (according to sketch) than the least recently
+    //    accessed object of mainMap, which is then evicted. A one-off page
+    //    therefore cannot flush the frequently used ones.
+    //  - windowWeight and mainWeight are the total weights of the objects in
+    //    cacheMap and in mainMap.
+    //  - sketch represents the recent access frequency of ids (only used
+    //    with a weigher).
+    //  - hits and misses represent the number of calls to get that found,
+    //    and did not find, their object.
+    //  - evictions represents the number of objects removed (or turned away
+    //    by admission) to keep this Cache within its bounds, and expirations
+    //    the number of objects removed because they went stale.
     //  - timeOut represents the number of seconds before an object is marked
     //    as stale inside the Cache (which will be evicted)
     //    The default timeOut value is 3600 seconds.
+    //  - timeOutNanos is timeOut expressed in nanoseconds.
     //  - cacheCapacity represents the maximum number of elements that
     //    that are allowed to be in this Cache at one time. The default cacheCapacity
     //    is 32.
+    //  - maxWeight represents the maximum total weight of the objects in this
+    //    Cache.
 
 
     // Rep Invariants:
-    //    - cacheMap cannot contain null as its key field.
-    //    - The cacheMap value field > 0 && value != null
+    //    - cacheMap and mainMap cannot contain null as their key or value
+    //      field, and no id is a key of both.
+    //    - for every key k, the value of k holds an object whose id() is k
+    //    - no entry in cacheMap or mainMap is marked as removed, and an
+    //      entry marked as removed holds no value
+    //    - cacheMap.size() + mainMap.size() <= cacheCapacity
+    //    - windowWeight + mainWeight <= maxWeight
+    //    - weigher == null iff sketch == null iff mainMap is always empty
     //    - timeOut > 0
+    //    - timeOutNanos == timeOut * 10^9
     //    - cacheCapacity > 0
+    //    - hits >= 0, misses >= 0, evictions >= 0, expirations >= 0
 
     // Thread Safety Arguments:
     // This class is thread safe because it is
-    //  - Following Strategy 3 of ensuring Thread Safety, which is that
-    //    we used thread-safe mutable data type: a ConcurrentMap called "cacheMap".
-    //  - timeOut and cacheCapacity are final
+    //  - Following Strategy 4 of ensuring Thread Safety (synchronization):
+    //    every access to cacheMap, mainMap, the entries inside them, the
+    //    weights, the sketch and the counters happens while holding the lock
+    //    of this Cache. LinkedHashMap lookups, insertions, removals and
+    //    access-order moves are all O(1), so the lock is only held for
+    //    constant time (amortized over evictions).
+    //  - timeOut, timeOutNanos, cacheCapacity, weigher, maxWeight and
+    //    windowMaxWeight are never reassigned after construction.
+    //  - Stale entries are removed by the shared ExpiryScheduler thread, which
+    //    also goes through the lock of this Cache (see expire), and lazily by
+    //    get when it finds a stale entry.
     //  - Following the Strategy 2 for ensuring Thread Safety, timeOut is
     //    an immutable data type.
 
 
+    /* One slot of the Cache: an object along with the time it goes stale. */
+    static final class Entry<T> implements Serializable {
+        final String id;
+        T value;
+        long weight;
+        long expiresAt;
+        boolean inWindow = true;
+        boolean removed;
+
+        Entry(String id, T value, long weight, long expiresAt) {
+            this.id = id;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
 
     /**
      * Create a cache with a fixed capacity and a timeout value.
@@ -57,12 +131,37 @@ public class Cache<T extends Cacheable> implements Serializable{
      * @param timeout  the duration an object should be in the cache before it times out
      */
     public Cache(int capacity, int timeout) {
+        this(capacity, timeout, null, capacity);
+    }
+
+    /**
+     * Create a cache bounded by the total weight of its objects, for example
+     * their size in bytes, as well as by their number.
+     * Objects in the cache that have not been refreshed within the timeout period
+     * are removed from the cache. When the cache is too heavy, objects that
+     * are rarely accessed are evicted before objects that are often accessed.
+     *
+     * @param capacity the number of objects the cache can hold
+     * @param timeout  the duration an object should be in the cache before it times out
+     * @param weigher  computes the weight of each object
+     * @param maxWeight the maximum total weight of the objects in the cache
+     */
+    public Cache(int capacity, int timeout, Weigher<? super T> weigher, long maxWeight) {
         this.timeOut = timeout;
+        this.timeOutNanos = TimeUnit.SECONDS.toNanos(timeout);
         this.cacheCapacity = capacity;
-        myRunnable runner = new myRunnable(this.cacheMap, this.timeOut);
-        // creating an instance of a Thread class:
-        Thread tr1 = new Thread(runner);
-        tr1.start();
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        // accessOrder = true: every get/put moves the entry to the tail.
+        this.cacheMap = new LinkedHashMap<>(16, 0.75f, true);
+        this.mainMap = new LinkedHashMap<>(16, 0.75f, true);
+        if (weigher == null) {
+            this.windowMaxWeight = maxWeight;
+            this.sketch = null;
+        } else {
+            this.windowMaxWeight = Math.max(1, maxWeight / 100 * WINDOW_PERCENT);
+            this.sketch = new FrequencySketch(capacity);
+        }
     }
 
     /**
@@ -75,37 +174,66 @@ public class Cache<T extends Cacheable> implements Serializable{
     /**
      * Add a value to the cache.
      * If the cache is full then remove the least recently accessed object to
-     * make room for the new object.
+     * make room for the new object. (With a weigher, the new object may
+     * instead be turned away if it is accessed less often than the objects
+     * it would push out.)
      *
      * @param t a value to be placed into the Cache.
      * @return returns true if the value gets successfully put into the Cache,
      * false otherwise.
      */
     public boolean put(T t) {
-        // TODO: implement this method
+        return putFor(t, this.timeOutNanos);
+    }
 
+    /**
+     * Add a value to the cache that goes stale sooner than the timeout, for
+     * example a value restored from a snapshot that was already cached for
+     * some time. If the cache is full then remove the least recently accessed
+     * object to make room for the new object.
+     *
+     * @param t a value to be placed into the Cache.
+     * @param timeToLive the number of milliseconds before t goes stale;
+     *                   capped at the timeout of this Cache
+     * @return returns true if the value gets successfully put into the Cache,
+     * false otherwise (including when timeToLive <= 0).
+     */
+    public boolean put(T t, long timeToLive) {
+        if (timeToLive <= 0) {
+            return false;
+        }
+        return putFor(t, Math.min(this.timeOutNanos, TimeUnit.MILLISECONDS.toNanos(timeToLive)));
+    }
+
+    private synchronized boolean putFor(T t, long nanosToLive) {
         if (t == null) {
             return false;
         }
-        if (this.cacheMap.size() >= this.cacheCapacity) {
-            long maxTimeSoFar = 0;
-            T objectTobeRemoved = null;
-            for (T objectElement : this.cacheMap.keySet()) {
-                if (this.cacheMap.get(objectElement) > maxTimeSoFar) {
-                    maxTimeSoFar = this.cacheMap.get(objectElement);
-                    objectTobeRemoved = objectElement;
-                }
-            }
-            // remove the least recently accessed object (the object with
-            // longest time spent):
-            if (objectTobeRemoved != null) {
-                this.cacheMap.remove(objectTobeRemoved);
-            }
-            // put a value with a time as its key into the Cache:
-            cacheMap.put(t, System.currentTimeMillis());
-            return true;
+        String id = t.id();
+        long expiresAt = System.nanoTime() + nanosToLive;
+        long weight = weigh(t);
+        if (weight > this.maxWeight) {
+            return false;
+        }
+
+        Entry<T> existing = find(id);
+        if (existing != null) {
+            // same id already cached: replace it in place.
+            reweigh(existing, weight);
+            existing.value = t;
+            existing.expiresAt = expiresAt;
+            rebalance();
+            return !existing.removed;
+        }
+
+        Entry<T> entry = new Entry<>(id, t, weight, expiresAt);
+        this.cacheMap.put(id, entry);
+        this.windowWeight += weight;
+        rebalance();
+        if (entry.removed) {
+            return false;
         }
-        this.cacheMap.put(t, System.currentTimeMillis());
+        ExpiryScheduler.shared().schedule(this, entry, expiresAt);
         return true;
     }
 
@@ -117,17 +245,49 @@ public class Cache<T extends Cacheable> implements Serializable{
      * @throws NoSuchElementException if the object with the given id
      * is not found in the cache
      */
-    public T get(String id) throws NoSuchElementException {
+    public synchronized T get(String id) throws NoSuchElementException {
+        if (this.sketch != null) {
+            this.sketch.increment(id);
+        }
+        T value = getIfPresent(id);
+        if (value == null) {
+            this.misses++;
+            /* Do not return null. Throw a suitable checked exception when an object
+               is not in the cache. */
+            throw new NoSuchElementException();
+        }
+        this.hits++;
+        return value;
+    }
 
-        List<T> list = new ArrayList<>(this.cacheMap.keySet());
-        for (T element : list) {
-            if (element.id().equals(id)) {
-                return element;
-            }
+    /**
+     * Check for an object without counting a hit, a miss or an access to
+     * it, so that its place in the eviction order does not change.
+     *
+     * @param id the identifier of an object
+     * @return true if an object with that id is in the cache; it may have
+     * gone stale in the last moments, before the expiry thread reached it
+     */
+    synchronized boolean isCached(String id) {
+        return this.cacheMap.containsKey(id) || this.mainMap.containsKey(id);
+    }
+
+    /**
+     * Retrieve the object with the given id without counting a hit or a
+     * miss, for callers that check again right after a miss.
+     *
+     * @param id the identifier of the object to be retrieved
+     * @return the object that matches the identifier, or null if there is none
+     */
+    synchronized T getIfPresent(String id) {
+        Entry<T> entry = find(id);
+        if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+            // stale, but the expiry thread has not reached it yet:
+            remove(entry);
+            this.expirations++;
+            entry = null;
         }
-        /* Do not return null. Throw a suitable checked exception when an object
-           is not in the cache. */
-        throw new NoSuchElementException();  // a checked exception
+        return entry == null ? null : entry.value;
     }
 
 
@@ -139,15 +299,13 @@ public class Cache<T extends Cacheable> implements Serializable{
      * @param id the identifier of the object to "touch"
      * @return true if successful and false otherwise
      */
-    public boolean touch(String id) {
-        /* TODO: Implement this method */
-        for (T objectElement : this.cacheMap.keySet()) {
-            if (objectElement.id().equals(id)) {
-                this.cacheMap.put(objectElement, System.currentTimeMillis());
-                return true;
-            }
+    public synchronized boolean touch(String id) {
+        Entry<T> entry = find(id);
+        if (entry == null) {
+            return false;
         }
-        return false;
+        entry.expiresAt = System.nanoTime() + this.timeOutNanos;
+        return true;
     }
 
     /**
@@ -158,10 +316,214 @@ public class Cache<T extends Cacheable> implements Serializable{
      * @param t the object to update
      * @return true if successful and false otherwise
      */
-    public boolean update(T t) {
-        /* TODO: implement this method */
-        String touchedID = t.id();
-        return this.touch(touchedID);
+    public synchronized boolean update(T t) {
+        if (t == null) {
+            return false;
+        }
+        Entry<T> entry = find(t.id());
+        if (entry == null) {
+            return false;
+        }
+        long weight = weigh(t);
+        if (weight > this.maxWeight) {
+            return false;
+        }
+        reweigh(entry, weight);
+        entry.value = t;
+        entry.expiresAt = System.nanoTime() + this.timeOutNanos;
+        rebalance();
+        return !entry.removed;
+    }
+
+    /**
+     * @return the number of objects in this Cache
+     */
+    public synchronized int size() {
+        return this.cacheMap.size() + this.mainMap.size();
+    }
+
+    /**
+     * @return the total weight of the objects in this Cache (their number,
+     * if this Cache has no weigher)
+     */
+    public synchronized long weight() {
+        return this.windowWeight + this.mainWeight;
+    }
+
+    /**
+     * @return the number of calls to get that found their object
+     */
+    public synchronized long hitCount() {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of calls to get that did not find their object
+     */
+    public synchronized long missCount() {
+        return this.misses;
+    }
+
+    /**
+     * @return the number of objects evicted, or turned away on admission,
+     * to keep this Cache within its capacity and weight
+     */
+    public synchronized long evictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * @return the number of objects removed because they went stale
+     */
+    public synchronized long expiryCount() {
+        return this.expirations;
+    }
+
+    /**
+     * @return the fraction of calls to get that found their object, or 0 if
+     * get was never called
+     */
+    public synchronized double hitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+
+    /**
+     * Visit every object in this Cache, from the least recently accessed to
+     * the most recently accessed, without changing the access order.
+     * Putting the objects into an empty Cache in the order visited gives
+     * that Cache the same access order. (With a weigher, the objects that
+     * passed admission are visited before the newer ones still in the
+     * admission window.)
+     *
+     * @param visitor called with each object and the number of milliseconds
+     *                before it goes stale
+     */
+    public synchronized void forEach(BiConsumer<T, Long> visitor) {
+        long now = System.nanoTime();
+        List<Entry<T>> entries = new ArrayList<>(this.mainMap.values());
+        entries.addAll(this.cacheMap.values());
+        for (Entry<T> entry : entries) {
+            long timeToLive = TimeUnit.NANOSECONDS.toMillis(entry.expiresAt - now);
+            if (timeToLive > 0) {
+                visitor.accept(entry.value, timeToLive);
+            }
+        }
+    }
+
+    /**
+     * Expiry check run by the ExpiryScheduler for one entry of this Cache.
+     *
+     * @param entry the entry to check
+     * @param now the current System.nanoTime()
+     * @return GONE if entry is no longer in this Cache (it was evicted
+     * earlier, or it is stale and has just been removed), otherwise the
+     * time at which entry should be checked again.
+     */
+    synchronized long expire(Entry<?> entry, long now) {
+        if (entry.removed) {
+            return GONE;
+        }
+        if (entry.expiresAt - now <= 0) {
+            remove(entry);
+            this.expirations++;
+            return GONE;
+        }
+        return entry.expiresAt;
+    }
+
+    /* the entry for id, or null; counts as an access to it */
+    private Entry<T> find(String id) {
+        Entry<T> entry = this.cacheMap.get(id);
+        return entry != null ? entry : this.mainMap.get(id);
+    }
+
+    private long weigh(T t) {
+        return this.weigher == null ? 1 : this.weigher.weigh(t);
+    }
+
+    private void reweigh(Entry<T> entry, long weight) {
+        if (entry.inWindow) {
+            this.windowWeight += weight - entry.weight;
+        } else {
+            this.mainWeight += weight - entry.weight;
+        }
+        entry.weight = weight;
+    }
+
+    private void remove(Entry<?> entry) {
+        entry.removed = true;
+        // a queued expiry check still holds entry until it is due:
+        entry.value = null;
+        if (entry.inWindow) {
+            this.cacheMap.remove(entry.id);
+            this.windowWeight -= entry.weight;
+        } else {
+            this.mainMap.remove(entry.id);
+            this.mainWeight -= entry.weight;
+        }
+    }
+
+    private void evict(Entry<?> entry) {
+        remove(entry);
+        this.evictions++;
+    }
+
+    private static <T> Entry<T> eldest(LinkedHashMap<String, Entry<T>> map) {
+        return map.values().iterator().next();
+    }
+
+    /* evict entries until every bound of this Cache holds again */
+    private void rebalance() {
+        // objects pushed out of the admission window compete for mainMap:
+        while (this.windowWeight > this.windowMaxWeight
+                || (this.sketch == null && size() > this.cacheCapacity)) {
+            Entry<T> candidate = eldest(this.cacheMap);
+            if (this.sketch == null) {
+                evict(candidate);
+            } else {
+                admit(candidate);
+            }
+        }
+        long mainMaxWeight = this.maxWeight - this.windowMaxWeight;
+        while (!this.mainMap.isEmpty()
+                && (this.mainWeight > mainMaxWeight || size() > this.cacheCapacity)) {
+            evict(eldest(this.mainMap));
+        }
+        while (size() > this.cacheCapacity) {
+            evict(eldest(this.cacheMap));
+        }
+    }
+
+    /* move candidate from the window into mainMap, if it is worth it */
+    private void admit(Entry<T> candidate) {
+        long mainMaxWeight = this.maxWeight - this.windowMaxWeight;
+        this.cacheMap.remove(candidate.id);
+        this.windowWeight -= candidate.weight;
+        candidate.inWindow = false;
+        if (candidate.weight > mainMaxWeight) {
+            reject(candidate);
+            return;
+        }
+        if (this.mainWeight + candidate.weight > mainMaxWeight && !this.mainMap.isEmpty()) {
+            Entry<T> victim = eldest(this.mainMap);
+            if (this.sketch.frequency(candidate.id) <= this.sketch.frequency(victim.id)) {
+                reject(candidate);
+                return;
+            }
+            while (this.mainWeight + candidate.weight > mainMaxWeight) {
+                evict(eldest(this.mainMap));
+            }
+        }
+        this.mainMap.put(candidate.id, candidate);
+        this.mainWeight += candidate.weight;
+    }
+
+    /* turn away candidate, already taken out of the window by admit */
+    private void reject(Entry<?> candidate) {
+        candidate.removed = true;
+        candidate.value = null;
+        this.evictions++;
     }
 
 }
@@ -0,0 +1,222 @@
+package cpen221.mp3.cache;
+
+import cpen221.mp3.wikimediator.DeadlineExceededException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+public class CacheRegion<V> {
+
+    private final Cache<myCacheable<V>> cache;
+    private final SingleFlight<V> flights = new SingleFlight<>();
+
+    // Abstraction Function:
+    //  CacheRegion represents a read-through cache for one kind of value
+    //  (page text, search results, lists of links...), with its own
+    //  capacity and timeout.
+    //    - cache represents the values loaded recently, each stored in a
+    //      myCacheable whose id is the key it was loaded for.
+    //    - flights represents the loads currently running, so concurrent
+    //      misses for the same key share one load.
+
+    // Representation Invariant:
+    //    - cache != null, flights != null
+
+    // Thread Safety Arguments:
+    //  - cache and flights are thread safe (see Cache and SingleFlight) and
+    //    final. A load re-checks cache before running its loader, so a key
+    //    is only loaded again once its value has left the cache.
+
+    /**
+     * @param capacity the number of values the region can hold
+     * @param timeout the number of seconds a value stays in the region
+     */
+    public CacheRegion(int capacity, int timeout) {
+        this.cache = new Cache<>(capacity, timeout);
+    }
+
+    /**
+     * @param capacity the number of values the region can hold
+     * @param timeout the number of seconds a value stays in the region
+     * @param weigher computes the weight of each value, e.g. its size in bytes
+     * @param maxWeight the maximum total weight of the values in the region
+     */
+    public CacheRegion(int capacity, int timeout, Weigher<? super V> weigher, long maxWeight) {
+        this.cache = new Cache<>(capacity, timeout,
+                cached -> weigher.weigh(cached.content()), maxWeight);
+    }
+
+    /**
+     * Return the value cached for key, loading and caching it if it is not
+     * cached.
+     *
+     * @param key the key of the value
+     * @param loader computes the value of key when it is not cached; never
+     *               run by two threads for the same key at once
+     * @return the value of key
+     */
+    public V get(String key, Supplier<V> loader) {
+        return get(key, loader, Long.MAX_VALUE);
+    }
+
+    /**
+     * get(key, loader), waiting at most timeoutNanos for a load of key
+     * already started by another thread.
+     *
+     * @param key the key of the value
+     * @param loader computes the value of key when it is not cached; never
+     *               run by two threads for the same key at once
+     * @param timeoutNanos the longest time to wait for another thread's
+     *                     load, Long.MAX_VALUE for no limit
+     * @return the value of key
+     * @throws DeadlineExceededException if another thread's load of key is
+     * still running after timeoutNanos
+     */
+    public V get(String key, Supplier<V> loader, long timeoutNanos) {
+        try {
+            return this.cache.get(key).content();
+        } catch (NoSuchElementException e) {
+            return this.flights.load(key, () -> load(key, loader), timeoutNanos);
+        }
+    }
+
+    /**
+     * Return the value cached for key, without loading it.
+     *
+     * @param key the key of the value
+     * @return the value of key, or null if it is not cached
+     */
+    public V getIfCached(String key) {
+        try {
+            return this.cache.get(key).content();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cache a value loaded by the caller, e.g. as part of a batch.
+     *
+     * @param key the key of the value
+     * @param value the value
+     */
+    public void put(String key, V value) {
+        this.cache.put(new myCacheable<>(key, value));
+    }
+
+    /**
+     * Load and cache the value of key if it is not cached, e.g. to prefetch
+     * it. Unlike get, this is not counted as a request for key: no hit or
+     * miss is counted, and a cached value keeps its place in the eviction
+     * order.
+     *
+     * @param key the key of the value
+     * @param loader computes the value of key; never run by two threads
+     *               for the same key at once
+     * @return the value loaded, or null if a value was already cached
+     */
+    public V prefetch(String key, Supplier<V> loader) {
+        if (contains(key)) {
+            return null;
+        }
+        boolean[] loaded = new boolean[1];
+        V value = this.flights.load(key, () -> load(key, () -> {
+            loaded[0] = true;
+            return loader.get();
+        }));
+        return loaded[0] ? value : null;
+    }
+
+    /**
+     * Check for a value without counting a request for key, so its place
+     * in the eviction order does not change.
+     *
+     * @param key the key of a value
+     * @return true if get(key, loader) would not run loader, as a value is
+     * cached for key (a value that has only just gone stale may count)
+     */
+    public boolean contains(String key) {
+        return this.cache.isCached(key);
+    }
+
+    /**
+     * @return the number of values in the region
+     */
+    public int size() {
+        return this.cache.size();
+    }
+
+    /**
+     * @return the total weight of the values in the region (their number,
+     * if the region has no weigher)
+     */
+    public long weight() {
+        return this.cache.weight();
+    }
+
+    /**
+     * @return the size and weight of the region, the number of lookups that
+     * found and did not find their value cached, and the number of values
+     * evicted and expired, by name
+     */
+    public Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("size", this.cache.size());
+        stats.put("weight", this.cache.weight());
+        stats.put("hits", this.cache.hitCount());
+        stats.put("misses", this.cache.missCount());
+        stats.put("evictions", this.cache.evictionCount());
+        stats.put("expirations", this.cache.expiryCount());
+        return stats;
+    }
+
+    /**
+     * @return the fraction of lookups that found their value cached
+     */
+    public double hitRate() {
+        return this.cache.hitRate();
+    }
+
+    /**
+     * Visit every cached value, from the least recently accessed to the most
+     * recently accessed.
+     *
+     * @param visitor called with the key, the value and the number of
+     *                milliseconds before the value goes stale
+     */
+    public void forEach(EntryVisitor<V> visitor) {
+        this.cache.forEach((cached, timeToLive) ->
+                visitor.visit(cached.id(), cached.content(), timeToLive));
+    }
+
+    /**
+     * Put a value into the region without loading it, for example when
+     * restoring a snapshot.
+     *
+     * @param key the key of the value
+     * @param value the value
+     * @param timeToLive the number of milliseconds before value goes stale
+     */
+    public void restore(String key, V value, long timeToLive) {
+        this.cache.put(new myCacheable<>(key, value), timeToLive);
+    }
+
+    /* Receives the entries of a CacheRegion, see forEach. */
+    public interface EntryVisitor<V> {
+        void visit(String key, V value, long timeToLive);
+    }
+
+    private V load(String key, Supplier<V> loader) {
+        // a load that finished just before this one started may have
+        // already filled the cache:
+        myCacheable<V> cached = this.cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.content();
+        }
+        V value = loader.get();
+        this.cache.put(new myCacheable<>(key, value));
+        return value;
+    }
+}
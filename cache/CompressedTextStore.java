@@ -0,0 +1,254 @@
+package cpen221.mp3.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class CompressedTextStore {
+
+    private final LinkedHashMap<String, Slot> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private final long timeOutNanos;
+    private long storedBytes;
+    private long textBytes;
+    private long hits;
+    private long misses;
+    private long dropped;
+    private final ThreadPoolExecutor compressor;
+    private static final int COMPRESS_QUEUE = 256;
+    private static final int IDLE_SECONDS = 30;
+
+    // Abstraction Function:
+    //  CompressedTextStore represents a cache of texts kept off the Java heap,
+    //  compressed, so that many more texts fit than in an on-heap Cache.
+    //    - index maps each id to the Slot holding its compressed text, in
+    //      access order (least recently accessed first). Only the index is
+    //      on the heap; each text lives in its own direct ByteBuffer.
+    //    - maxBytes represents the maximum total size of the compressed texts.
+    //    - timeOutNanos represents how long a text stays in the store after
+    //      it was put.
+    //    - storedBytes and textBytes represent the total size of the texts
+    //      in the store, compressed and as UTF-8.
+    //    - hits and misses represent the number of calls to get that found,
+    //      and did not find, their text.
+    //    - compressor runs the puts handed to putInBackground, in order, on
+    //      one thread; dropped counts those that did not fit its queue.
+
+    // Representation Invariant:
+    //    - storedBytes == the sum of the capacities of the Slot buffers
+    //    - storedBytes <= maxBytes
+    //    - timeOutNanos > 0
+
+    // Thread Safety Arguments:
+    //  - Following Strategy 4 (synchronization), index and the counters are
+    //    only used while holding the lock of this store. compressor is a
+    //    thread-safe executor.
+    //  - Compressing and decompressing happen outside the lock. A Slot and
+    //    its buffer are never changed once created (Strategy 2), and readers
+    //    decompress from a duplicate of the buffer, so concurrent readers
+    //    never share a buffer position.
+
+    /* One compressed text, in direct (off-heap) memory. */
+    private static final class Slot {
+        final ByteBuffer compressed;
+        final int utf8Length;
+        final long expiresAt;
+
+        Slot(ByteBuffer compressed, int utf8Length, long expiresAt) {
+            this.compressed = compressed;
+            this.utf8Length = utf8Length;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @param maxBytes the maximum number of bytes of compressed text to hold
+     * @param timeout the number of seconds a text stays in the store
+     */
+    public CompressedTextStore(long maxBytes, int timeout) {
+        this.maxBytes = maxBytes;
+        this.timeOutNanos = TimeUnit.SECONDS.toNanos(timeout);
+        this.compressor = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(COMPRESS_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "wiki-compress");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (task, executor) -> {
+                    synchronized (this) {
+                        this.dropped++;
+                    }
+                });
+        this.compressor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Compress text and store it off-heap under id, replacing any text
+     * already stored under id. If the store is full then remove the least
+     * recently accessed texts to make room.
+     *
+     * @param id the identifier of the text
+     * @param text the text to store
+     * @return true if text was stored, false if it is too large for the store
+     */
+    public boolean put(String id, String text) {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer compressed = compress(utf8);
+        if (compressed.capacity() > this.maxBytes) {
+            return false;
+        }
+        Slot slot = new Slot(compressed, utf8.length, System.nanoTime() + this.timeOutNanos);
+
+        synchronized (this) {
+            Slot old = this.index.put(id, slot);
+            if (old != null) {
+                forget(old);
+            }
+            this.storedBytes += compressed.capacity();
+            this.textBytes += utf8.length;
+            Iterator<Slot> eldest = this.index.values().iterator();
+            while (this.storedBytes > this.maxBytes) {
+                forget(eldest.next());
+                eldest.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Store text under id like put, but compress it on a background thread
+     * so the caller does not wait for it. Until then, the store does not
+     * have the text. If too many texts are already waiting, text is not
+     * stored.
+     *
+     * @param id the identifier of the text
+     * @param text the text to store
+     */
+    public void putInBackground(String id, String text) {
+        this.compressor.execute(() -> put(id, text));
+    }
+
+    /**
+     * Retrieve and decompress the text stored under id.
+     *
+     * @param id the identifier of the text
+     * @return the text, or null if no fresh text is stored under id
+     */
+    public String get(String id) {
+        Slot slot;
+        synchronized (this) {
+            slot = this.index.get(id);
+            if (slot != null && slot.expiresAt - System.nanoTime() <= 0) {
+                this.index.remove(id);
+                forget(slot);
+                slot = null;
+            }
+            if (slot == null) {
+                this.misses++;
+                return null;
+            }
+            this.hits++;
+        }
+        return decompress(slot);
+    }
+
+    /**
+     * Check for a text without counting an access to it, so that its place
+     * in the eviction order does not change.
+     *
+     * @param id the identifier of a text
+     * @return true if a text is stored under id; it may have gone stale,
+     * and then get removes it
+     */
+    public synchronized boolean contains(String id) {
+        return this.index.containsKey(id);
+    }
+
+    /**
+     * @return the number of texts in the store
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * @return the number of off-heap bytes used by the compressed texts
+     */
+    public synchronized long storedBytes() {
+        return this.storedBytes;
+    }
+
+    /**
+     * @return the total UTF-8 size of the texts in the store
+     */
+    public synchronized long textBytes() {
+        return this.textBytes;
+    }
+
+    /**
+     * @return the fraction of calls to get that found their text, or 0 if
+     * get was never called
+     */
+    public synchronized double hitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+
+    /**
+     * @return the number of texts not stored because too many were waiting
+     * to be compressed, see putInBackground
+     */
+    public synchronized long dropped() {
+        return this.dropped;
+    }
+
+    private void forget(Slot slot) {
+        this.storedBytes -= slot.compressed.capacity();
+        this.textBytes -= slot.utf8Length;
+    }
+
+    private static ByteBuffer compress(byte[] utf8) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(utf8);
+            deflater.finish();
+            byte[] chunk = new byte[Math.max(64, utf8.length / 2)];
+            ByteArrayOutputStream out = new ByteArrayOutputStream(chunk.length);
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            ByteBuffer direct = ByteBuffer.allocateDirect(out.size());
+            direct.put(out.toByteArray());
+            direct.flip();
+            return direct;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String decompress(Slot slot) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(slot.compressed.duplicate());
+            byte[] utf8 = new byte[slot.utf8Length];
+            int n = 0;
+            while (n < utf8.length && !inflater.finished()) {
+                n += inflater.inflate(utf8, n, utf8.length - n);
+            }
+            return new String(utf8, 0, n, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            // cannot happen for data written by compress.
+            throw new IllegalStateException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package cpen221.mp3.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+public final class ExpiryScheduler {
+
+    private static final ExpiryScheduler SHARED = new ExpiryScheduler();
+
+    private final DelayQueue<Deadline> deadlines = new DelayQueue<>();
+    private Thread worker;
+
+    // Abstraction Function:
+    //  ExpiryScheduler represents the one expiry service shared by every
+    //  Cache in this JVM.
+    //    - deadlines represents the pending expiry checks, one per live
+    //      Cache entry, ordered by the System.nanoTime() at which the entry
+    //      would become stale if it is not refreshed again.
+    //    - worker represents the single daemon thread that sleeps until the
+    //      earliest deadline is due, or null if the service is not running.
+
+    // Representation Invariant:
+    //    - deadlines != null
+    //    - worker is null or a daemon thread
+
+    // Thread Safety Arguments:
+    //  - deadlines is a thread-safe DelayQueue (Strategy 3).
+    //  - worker is only read and written while holding the lock of this
+    //    ExpiryScheduler (Strategy 4).
+    //  - Caches are only held through weak references, so a Cache that is no
+    //    longer used can be garbage collected with checks still queued.
+
+
+    /* A pending expiry check for one entry of one Cache. */
+    private static final class Deadline implements Delayed {
+        final WeakReference<Cache<?>> cache;
+        final Cache.Entry<?> entry;
+        final long when;
+
+        Deadline(Cache<?> cache, Cache.Entry<?> entry, long when) {
+            this.cache = new WeakReference<>(cache);
+            this.entry = entry;
+            this.when = when;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(this.when - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(this.when, ((Deadline) other).when);
+        }
+    }
+
+    private ExpiryScheduler() {
+    }
+
+    /**
+     * @return the expiry service shared by all caches
+     */
+    static ExpiryScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Schedule an expiry check for a cache entry.
+     *
+     * @param cache the cache holding entry
+     * @param entry the entry to check
+     * @param when the System.nanoTime() at which entry should be checked
+     */
+    void schedule(Cache<?> cache, Cache.Entry<?> entry, long when) {
+        this.deadlines.add(new Deadline(cache, entry, when));
+        ensureRunning();
+    }
+
+    /**
+     * Stop the shared expiry thread and drop every pending check.
+     * Caches keep expiring their entries lazily when they are accessed, and
+     * the thread is started again by the next put into any Cache.
+     */
+    public static void shutdown() {
+        SHARED.stop();
+    }
+
+    private synchronized void ensureRunning() {
+        if (this.worker == null) {
+            this.worker = new Thread(this::runExpiry, "cache-expiry");
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+    }
+
+    private synchronized void stop() {
+        if (this.worker != null) {
+            this.worker.interrupt();
+            this.worker = null;
+        }
+        this.deadlines.clear();
+    }
+
+    private void runExpiry() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Deadline due;
+            try {
+                due = this.deadlines.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Cache<?> cache = due.cache.get();
+            if (cache == null) {
+                continue;
+            }
+            // the entry may have been refreshed since this check was queued,
+            // in which case it is checked again at its new deadline:
+            long next = cache.expire(due.entry, System.nanoTime());
+            if (next != Cache.GONE) {
+                this.deadlines.add(new Deadline(cache, due.entry, next));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package cpen221.mp3.cache;
+
+import java.io.Serializable;
+
+class FrequencySketch implements Serializable {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35};
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private int additions;
+
+    // Abstraction Function:
+    //  FrequencySketch represents the approximate number of times each id was
+    //  accessed recently, as a Count-Min sketch of 4-bit counters (the
+    //  TinyLFU frequency filter).
+    //    - table holds 16 counters of 4 bits in each long. An id is counted
+    //      in 4 counters, one chosen by each of SEEDS; its estimate is the
+    //      smallest of the 4.
+    //    - counterMask is the number of counters in table minus one.
+    //    - additions represents the number of increments since the counters
+    //      were last halved. Once it reaches sampleSize every counter is
+    //      halved, so the estimates favour recent accesses.
+
+    // Representation Invariant:
+    //    - table.length is a power of two and counterMask == 16 * table.length - 1
+    //    - 0 <= additions < sampleSize
+
+    // Thread Safety Arguments:
+    //  FrequencySketch is not thread safe; Cache only uses it while holding
+    //  its own lock.
+
+    /**
+     * @param expectedEntries the number of entries of the Cache, > 0
+     */
+    FrequencySketch(int expectedEntries) {
+        // one long (16 counters) per expected entry, rounded up to a power of two:
+        int entries = Math.max(16, Math.min(expectedEntries, 1 << 24));
+        this.table = new long[Integer.highestOneBit(entries - 1) << 1];
+        this.counterMask = this.table.length * 16 - 1;
+        this.sampleSize = 10 * Math.max(16, expectedEntries);
+    }
+
+    /**
+     * Count one access to id.
+     *
+     * @param id the id accessed
+     */
+    void increment(String id) {
+        int hash = spread(id.hashCode());
+        boolean added = false;
+        for (int seed : SEEDS) {
+            int counter = index(hash, seed);
+            int slot = counter >>> 4;
+            int shift = (counter & 15) << 2;
+            if (((this.table[slot] >>> shift) & 0xF) < 15) {
+                this.table[slot] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++this.additions >= this.sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @param id an id
+     * @return the estimated number of recent accesses to id, from 0 to 15
+     */
+    int frequency(String id) {
+        int hash = spread(id.hashCode());
+        int frequency = 15;
+        for (int seed : SEEDS) {
+            int counter = index(hash, seed);
+            int count = (int) ((this.table[counter >>> 4] >>> ((counter & 15) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private int index(int hash, int seed) {
+        int h = hash * seed;
+        h ^= h >>> 15;
+        return h & this.counterMask;
+    }
+
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.additions /= 2;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+}
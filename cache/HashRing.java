@@ -0,0 +1,80 @@
+package cpen221.mp3.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+final class HashRing<N> {
+
+    private final long[] points;
+    private final List<N> owners;
+
+    // Abstraction Function:
+    //  HashRing represents a consistent hash of keys onto nodes: each node
+    //  owns the keys whose hash falls between one of its points on the ring
+    //  and the point before it, so adding or removing a node only moves the
+    //  keys of that node.
+    //    - points holds the hashes of the virtual nodes of every node, in
+    //      increasing order, and owners.get(i) is the node of points[i].
+    //  Both hashes only depend on the names of the nodes and on the keys, so
+    //  every JVM given the same nodes agrees on the owner of every key.
+
+    // Representation Invariant:
+    //    - points.length == owners.size() > 0
+    //    - points is sorted in increasing (signed) order
+
+    // Thread Safety Arguments:
+    //  - A HashRing is never changed after construction, and its fields are
+    //    final, so it can be shared by any number of threads.
+
+    /**
+     * @param nodes the nodes, at least one
+     * @param name the name of each node, unique and the same in every JVM
+     *             that must agree on the owners of keys
+     * @param virtualNodes the number of points of each node on the ring;
+     *                     more points spread the keys more evenly
+     */
+    HashRing(List<N> nodes, Function<N, String> name, int virtualNodes) {
+        List<long[]> ring = new ArrayList<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int point = 0; point < virtualNodes; point++) {
+                ring.add(new long[] {hash(name.apply(nodes.get(node)) + "#" + point), node});
+            }
+        }
+        ring.sort(Comparator.<long[]>comparingLong(point -> point[0])
+                .thenComparing(point -> name.apply(nodes.get((int) point[1]))));
+        this.points = new long[ring.size()];
+        this.owners = new ArrayList<>(ring.size());
+        for (int i = 0; i < ring.size(); i++) {
+            this.points[i] = ring.get(i)[0];
+            this.owners.add(nodes.get((int) ring.get(i)[1]));
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return the node that owns key: the node of the first point at or
+     * after the hash of key, wrapping around the ring
+     */
+    N ownerOf(String key) {
+        int i = Arrays.binarySearch(this.points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return this.owners.get(i == this.points.length ? 0 : i);
+    }
+
+    /* 64-bit FNV-1a of the UTF-8 of s, with the murmur3 finalizer mixed in */
+    private static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,546 @@
+package cpen221.mp3.cache;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class PeerCache implements Closeable {
+
+    /* the operations of the peer protocol, see Abstraction Function */
+    private static final Logger LOG = Logger.getLogger(PeerCache.class.getName());
+    private static final byte GET = 1;
+    private static final byte PEEK = 2;
+    private static final byte PUT = 3;
+    /* the statuses of its responses */
+    private static final byte FOUND = 0;
+    private static final byte MISSING = 1;
+    private static final byte FAILED = 2;
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final int CONNECT_TIMEOUT_MILLIS = 500;
+    private static final long RETRY_MILLIS = 5000;
+    private static final int MAX_LOAD_MILLIS = 30000;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final int MAX_VALUE_BYTES = 64 << 20;
+    private static final int MAX_KEY_BYTES = 1 << 16;
+    /* the most requests written before reading their responses */
+    private static final int PIPELINE = 64;
+
+    private final InetSocketAddress self;
+    private final HashRing<InetSocketAddress> ring;
+    private final Map<InetSocketAddress, Peer> peers = new HashMap<>();
+    private final Set<InetAddress> allowed = new HashSet<>();
+    private final Owner owner;
+    private final ServerSocket listener;
+    // Serves the connections of other nodes, one thread per connection:
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "wiki-peer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Set<Socket> accepted = ConcurrentHashMap.newKeySet();
+    private final LongAdder remoteHits = new LongAdder();
+    private final LongAdder remoteMisses = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean closed;
+
+    // Abstraction Function:
+    //  PeerCache represents one node of a cache shared by several nodes
+    //  (usually one per server), each owning the keys that ring maps to it.
+    //  A node asks the owner of a key for its value instead of loading the
+    //  value itself, so every value is loaded about once for the whole
+    //  fleet, by its owner.
+    //    - self is the address this node listens on, and ring maps every
+    //      key to self or to the address of another node.
+    //    - peers maps the address of each other node to the connections
+    //      open to it, and to when it last could not be reached.
+    //    - owner answers the requests of other nodes for the keys of this
+    //      node, from its own cache.
+    //    - listener accepts, on the address of self only, the connections
+    //      of other nodes, and workers serve them; accepted holds those
+    //      connections. Connections from hosts that are not in allowed (the
+    //      hosts of peers) are closed at once and counted in rejected, so
+    //      no one else can put values into the cache this node serves.
+    //    - remoteHits, remoteMisses and fallbacks count the lookups sent to
+    //      other nodes that found their value, did not find it (PEEK), and
+    //      failed, so the caller loaded the value itself. served and
+    //      received count the lookups and the values sent by other nodes.
+    //  The protocol is binary, over TCP; a connection carries any number of
+    //  requests, each answered in order:
+    //    GET:  byte 1, int timeoutMillis, key
+    //          -> the owner's value, loaded if it is not cached.
+    //    PEEK: byte 2, key -> the owner's value only if it is cached.
+    //    PUT:  byte 3, key, value -> a value for the owner to cache.
+    //  A key or a value is an int length followed by that many bytes of
+    //  UTF-8, at most MAX_KEY_BYTES and MAX_VALUE_BYTES. Longer keys are
+    //  never sent: their values are loaded by the node that needs them.
+    //  Every request is answered by one byte, FOUND, MISSING or FAILED,
+    //  followed by the value if FOUND.
+
+    // Representation Invariant:
+    //    - peers has the addresses of ring except self, allowed has their
+    //      hosts, and neither is changed after construction
+
+    // Thread Safety Arguments:
+    //  - ring, peers, allowed and owner are only read after construction. Each Peer
+    //    is thread safe (see Peer), and a connection is only used by the
+    //    thread that took it until it is given back.
+    //  - accepted is a concurrent set, the counters are LongAdders and
+    //    closed is volatile.
+    //  - owner must be thread safe: workers call it concurrently.
+
+    /**
+     * Answers the requests of other nodes for the keys owned by this node.
+     * Must be thread safe.
+     */
+    public interface Owner {
+        /**
+         * @param key a key owned by this node
+         * @param timeoutMillis when the node asking stops waiting
+         * @return the value of key, loaded (without asking other nodes) if
+         * it is not cached
+         * @throws RuntimeException if the value cannot be loaded
+         */
+        String load(String key, long timeoutMillis);
+
+        /**
+         * @param key a key owned by this node
+         * @return the value cached for key, or null
+         */
+        String getIfCached(String key);
+
+        /**
+         * @param key a key owned by this node
+         * @param value the value of key, loaded by another node
+         */
+        void put(String key, String value);
+    }
+
+    /* One other node, and the connections to it not in use. */
+    private static final class Peer {
+        final InetSocketAddress address;
+        final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+        volatile long downUntil = System.nanoTime();
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        boolean isDown() {
+            return System.nanoTime() - this.downUntil < 0;
+        }
+    }
+
+    /* An open connection to a node, with buffered streams over it. */
+    private static final class Connection implements Closeable {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                // nothing more to release.
+            }
+        }
+    }
+
+    /* What a node sends over one connection and reads back. */
+    private interface Exchange<T> {
+        T run(Connection connection) throws IOException;
+    }
+
+    private PeerCache(InetSocketAddress self, List<InetSocketAddress> nodes, Owner owner,
+                      ServerSocket listener) {
+        this.self = self;
+        this.owner = owner;
+        this.listener = listener;
+        Set<InetSocketAddress> all = new LinkedHashSet<>(nodes);
+        all.add(self);
+        for (InetSocketAddress node : all) {
+            if (!node.equals(self)) {
+                this.peers.put(node, new Peer(node));
+                this.allowed.addAll(hostsOf(node));
+            }
+        }
+        this.ring = new HashRing<>(new ArrayList<>(all), PeerCache::nameOf, VIRTUAL_NODES);
+    }
+
+    /**
+     * Join a shared cache: listen for the other nodes at self, and send
+     * them the lookups of the keys they own.
+     *
+     * @param self the address of this node, as the other nodes know it; it
+     *             listens on that address only
+     * @param nodes the addresses of every node of the shared cache (with
+     *              or without self), given the same way to every node
+     *              (e.g. all "localhost:port" or all "127.0.0.1:port"). Only
+     *              their hosts may connect to this node.
+     * @param owner answers the lookups of other nodes for the keys of this one
+     * @return the node, listening
+     * @throws IOException if it cannot listen at self
+     */
+    public static PeerCache start(InetSocketAddress self, List<InetSocketAddress> nodes,
+                                  Owner owner) throws IOException {
+        ServerSocket listener = new ServerSocket();
+        listener.setReuseAddress(true);
+        listener.bind(self);
+        PeerCache cache = new PeerCache(self, nodes, owner, listener);
+        Thread acceptor = new Thread(cache::accept, "wiki-peer-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return cache;
+    }
+
+    /**
+     * @param key a key
+     * @return true if this node owns key, so it loads key itself
+     */
+    public boolean owns(String key) {
+        return this.ring.ownerOf(key).equals(this.self);
+    }
+
+    /**
+     * Ask the owner of key for its value, which the owner loads if it has
+     * not cached it.
+     *
+     * @param key a key this node does not own
+     * @param timeoutNanos how long to wait for the owner
+     * @return the value of key, or null if the owner is unreachable, failed
+     * to load it or took too long, so the caller should load it
+     */
+    public String get(String key, long timeoutNanos) {
+        int timeout = millisOf(timeoutNanos);
+        String value = !fits(key) ? null : exchange(this.ring.ownerOf(key), timeout,
+                connection -> {
+                    connection.out.writeByte(GET);
+                    connection.out.writeInt(timeout);
+                    writeText(connection.out, key);
+                    connection.out.flush();
+                    return readValue(connection.in);
+                });
+        (value == null ? this.fallbacks : this.remoteHits).increment();
+        return value;
+    }
+
+    /**
+     * Ask the owners of keys for the values they have cached, without
+     * making them load any. The lookups for each owner share one round trip.
+     *
+     * @param keys keys this node does not own
+     * @param timeoutNanos how long to wait for each owner
+     * @return the values found, keyed by their key
+     */
+    public Map<String, String> getAllIfCached(Collection<String> keys, long timeoutNanos) {
+        Map<String, String> values = new HashMap<>();
+        int timeout = millisOf(timeoutNanos);
+        for (Map.Entry<InetSocketAddress, List<String>> run : byOwner(keys)) {
+            List<String> owned = run.getValue();
+            List<String> found = exchange(run.getKey(), timeout, connection -> {
+                for (String key : owned) {
+                    connection.out.writeByte(PEEK);
+                    writeText(connection.out, key);
+                }
+                connection.out.flush();
+                List<String> answers = new ArrayList<>();
+                for (int i = 0; i < owned.size(); i++) {
+                    answers.add(readValue(connection.in));
+                }
+                return answers;
+            });
+            if (found == null) {
+                this.fallbacks.add(owned.size());
+                continue;
+            }
+            for (int i = 0; i < owned.size(); i++) {
+                if (found.get(i) != null) {
+                    values.put(owned.get(i), found.get(i));
+                    this.remoteHits.increment();
+                } else {
+                    this.remoteMisses.increment();
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Send values this node loaded to their owners, so that no other node
+     * loads them again. Values the owners cannot take are dropped.
+     *
+     * @param values the values, keyed by keys this node does not own
+     * @param timeoutNanos how long to wait for each owner
+     */
+    public void putAll(Map<String, String> values, long timeoutNanos) {
+        int timeout = millisOf(timeoutNanos);
+        for (Map.Entry<InetSocketAddress, List<String>> run : byOwner(values.keySet())) {
+            exchange(run.getKey(), timeout, connection -> {
+                for (String key : run.getValue()) {
+                    connection.out.writeByte(PUT);
+                    writeText(connection.out, key);
+                    writeText(connection.out, values.get(key));
+                }
+                connection.out.flush();
+                for (int i = 0; i < run.getValue().size(); i++) {
+                    connection.in.readByte();
+                }
+                return Boolean.TRUE;
+            });
+        }
+    }
+
+    /**
+     * @return the number of lookups sent to other nodes that found their
+     * value, that did not, and that failed (so the value was loaded here),
+     * the number of lookups and values received from other nodes, of
+     * connections refused because they came from elsewhere, and the number
+     * of other nodes and of those that cannot be reached, by name
+     */
+    public Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("remoteHits", this.remoteHits.sum());
+        stats.put("remoteMisses", this.remoteMisses.sum());
+        stats.put("fallbacks", this.fallbacks.sum());
+        stats.put("served", this.served.sum());
+        stats.put("received", this.received.sum());
+        stats.put("rejected", this.rejected.sum());
+        stats.put("peers", this.peers.size());
+        stats.put("peersDown", this.peers.values().stream().filter(Peer::isDown).count());
+        return stats;
+    }
+
+    /**
+     * Stop listening and close every connection. Idempotent.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.listener.close();
+        for (Socket socket : this.accepted) {
+            socket.close();
+        }
+        for (Peer peer : this.peers.values()) {
+            Connection connection;
+            while ((connection = peer.idle.poll()) != null) {
+                connection.close();
+            }
+        }
+        this.workers.shutdownNow();
+    }
+
+    /*
+     * The keys grouped by their owner, in runs of at most PIPELINE keys, so
+     * that a node never writes more requests than the sockets can buffer
+     * before it reads their responses.
+     */
+    private List<Map.Entry<InetSocketAddress, List<String>>> byOwner(Collection<String> keys) {
+        Map<InetSocketAddress, List<String>> owned = new HashMap<>();
+        for (String key : keys) {
+            InetSocketAddress owner = this.ring.ownerOf(key);
+            if (!owner.equals(this.self) && fits(key)) {
+                owned.computeIfAbsent(owner, node -> new ArrayList<>()).add(key);
+            }
+        }
+        List<Map.Entry<InetSocketAddress, List<String>>> runs = new ArrayList<>();
+        owned.forEach((owner, ownedKeys) -> {
+            for (int from = 0; from < ownedKeys.size(); from += PIPELINE) {
+                runs.add(Map.entry(owner, ownedKeys.subList(from,
+                        Math.min(ownedKeys.size(), from + PIPELINE))));
+            }
+        });
+        return runs;
+    }
+
+    /*
+     * Run exchange over a connection to node, reusing an idle one if there
+     * is one. Returns null if node is down or the exchange fails; a node
+     * that cannot be connected to, or that drops a fresh connection, is not
+     * tried again for RETRY_MILLIS, so lookups fall back at once.
+     */
+    private <T> T exchange(InetSocketAddress node, int timeoutMillis, Exchange<T> exchange) {
+        Peer peer = this.peers.get(node);
+        if (peer == null || peer.isDown() || this.closed) {
+            return null;
+        }
+        while (true) {
+            Connection connection = peer.idle.poll();
+            boolean reused = connection != null;
+            try {
+                if (connection == null) {
+                    Socket socket = new Socket();
+                    socket.setTcpNoDelay(true);
+                    socket.connect(peer.address, CONNECT_TIMEOUT_MILLIS);
+                    connection = new Connection(socket);
+                }
+                connection.socket.setSoTimeout(timeoutMillis + CONNECT_TIMEOUT_MILLIS);
+                T result = exchange.run(connection);
+                if (peer.idle.size() < MAX_IDLE_CONNECTIONS) {
+                    peer.idle.push(connection);
+                } else {
+                    connection.close();
+                }
+                return result;
+            } catch (SocketTimeoutException e) {
+                // the node is slow, not gone; the connection is out of step.
+                connection.close();
+                return null;
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.close();
+                }
+                if (!reused) {
+                    peer.downUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_MILLIS);
+                    return null;
+                }
+                // an idle connection the node has since closed; try a new one.
+            }
+        }
+    }
+
+    private void accept() {
+        while (!this.closed) {
+            try {
+                Socket socket = this.listener.accept();
+                if (!this.allowed.contains(socket.getInetAddress())) {
+                    this.rejected.increment();
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                this.accepted.add(socket);
+                this.workers.submit(() -> serve(socket));
+            } catch (IOException | RejectedExecutionException e) {
+                if (!this.closed) {
+                    LOG.log(Level.WARNING, "Peer cache stopped accepting", e);
+                }
+                return;
+            }
+        }
+    }
+
+    /* answer the requests of one connection until the other node closes it */
+    private void serve(Socket socket) {
+        try (Connection connection = new Connection(socket)) {
+            DataInputStream in = connection.in;
+            DataOutputStream out = connection.out;
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (operation == GET) {
+                    int timeout = in.readInt();
+                    String key = readText(in, MAX_KEY_BYTES);
+                    String value;
+                    try {
+                        value = this.owner.load(key, timeout);
+                    } catch (RuntimeException e) {
+                        value = null;
+                    }
+                    this.served.increment();
+                    if (value == null) {
+                        out.writeByte(FAILED);
+                    } else {
+                        out.writeByte(FOUND);
+                        writeText(out, value);
+                    }
+                } else if (operation == PEEK) {
+                    String value = this.owner.getIfCached(readText(in, MAX_KEY_BYTES));
+                    this.served.increment();
+                    if (value == null) {
+                        out.writeByte(MISSING);
+                    } else {
+                        out.writeByte(FOUND);
+                        writeText(out, value);
+                    }
+                } else if (operation == PUT) {
+                    String key = readText(in, MAX_KEY_BYTES);
+                    String value = readText(in, MAX_VALUE_BYTES);
+                    this.owner.put(key, value);
+                    this.received.increment();
+                    out.writeByte(FOUND);
+                } else {
+                    return;
+                }
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // the other node went away.
+        } finally {
+            this.accepted.remove(socket);
+        }
+    }
+
+    /* the value of a response, or null if it was not FOUND */
+    private static String readValue(DataInputStream in) throws IOException {
+        return in.readByte() == FOUND ? readText(in, MAX_VALUE_BYTES) : null;
+    }
+
+    private static String readText(DataInputStream in, int maxBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxBytes) {
+            throw new IOException("bad length " + length);
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    /* true if key is short enough to send; UTF-8 takes at most 3 bytes a char */
+    private static boolean fits(String key) {
+        return key.length() <= MAX_KEY_BYTES / 3
+                || key.getBytes(StandardCharsets.UTF_8).length <= MAX_KEY_BYTES;
+    }
+
+    private static int millisOf(long timeoutNanos) {
+        return (int) Math.max(1, Math.min(MAX_LOAD_MILLIS,
+                TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+    }
+
+    /* every address of the host of node, so that it may connect to this one */
+    private static List<InetAddress> hostsOf(InetSocketAddress node) {
+        if (!node.isUnresolved()) {
+            return List.of(node.getAddress());
+        }
+        try {
+            return List.of(InetAddress.getAllByName(node.getHostString()));
+        } catch (IOException e) {
+            // a host that cannot be found cannot connect either.
+            return List.of();
+        }
+    }
+
+    private static String nameOf(InetSocketAddress node) {
+        return node.getHostString() + ":" + node.getPort();
+    }
+}
@@ -0,0 +1,110 @@
+package cpen221.mp3.cache;
+
+import cpen221.mp3.wikimediator.DeadlineExceededException;
+
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+public class SingleFlight<V> {
+
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight =
+            new ConcurrentHashMap<>();
+
+    // Abstraction Function:
+    //  SingleFlight represents the set of loads currently running, one per
+    //  key, so that concurrent callers asking for the same key share one
+    //  load instead of each starting their own.
+    //    - inFlight maps every key being loaded to the future that will
+    //      hold its value. A key is removed as soon as its load finishes, so
+    //      the next load of the same key starts afresh.
+
+    // Representation Invariant:
+    //    - inFlight has no null keys or values
+
+    // Thread Safety Arguments:
+    //  - inFlight is a ConcurrentHashMap (Strategy 3). Only the caller whose
+    //    putIfAbsent succeeded runs the loader and completes the future, and
+    //    only that caller removes the key, with remove(key, future).
+
+    /**
+     * Load the value of key, or wait for the load already started by another
+     * thread for the same key. If that load is cancelled by its own caller
+     * (its loader throws a CancellationException, e.g. because that caller's
+     * deadline passed), the waiting callers load key again themselves.
+     *
+     * @param key the key to load
+     * @param loader computes the value of key; only run by the first caller
+     * @return the value computed for key
+     * @throws CancellationException if the calling thread is interrupted
+     * while waiting (its interrupt status is set again)
+     * @throws RuntimeException the exception thrown by loader, to every
+     * caller sharing the load, unless it is a CancellationException
+     */
+    public V load(String key, Supplier<V> loader) {
+        return load(key, loader, Long.MAX_VALUE);
+    }
+
+    /**
+     * load(key, loader), waiting at most timeoutNanos for a load started by
+     * another thread. A load run by the calling thread is bounded by loader
+     * itself.
+     *
+     * @param key the key to load
+     * @param loader computes the value of key; only run by the first caller
+     * @param timeoutNanos the longest time to wait for another thread's
+     *                     load, Long.MAX_VALUE for no limit
+     * @return the value computed for key
+     * @throws DeadlineExceededException if another thread's load is still
+     * running after timeoutNanos (that load carries on)
+     */
+    public V load(String key, Supplier<V> loader, long timeoutNanos) {
+        long start = System.nanoTime();
+        while (true) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> running = this.inFlight.putIfAbsent(key, mine);
+            if (running == null) {
+                try {
+                    V value = loader.get();
+                    mine.complete(value);
+                    return value;
+                } catch (RuntimeException | Error e) {
+                    mine.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    this.inFlight.remove(key, mine);
+                }
+            }
+
+            try {
+                long remaining = timeoutNanos - (System.nanoTime() - start);
+                return running.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                throw new DeadlineExceededException();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted while waiting for " + key);
+            } catch (CancellationException e) {
+                // the caller running the load gave up; try again.
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CancellationException) {
+                    continue;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new CompletionException(cause);
+            }
+        }
+    }
+
+    /**
+     * @return the number of keys being loaded right now
+     */
+    public int inFlight() {
+        return this.inFlight.size();
+    }
+}
@@ -0,0 +1,16 @@
+package cpen221.mp3.cache;
+
+import java.io.Serializable;
+
+/**
+ * Computes the weight of an object stored in a Cache, for example its size
+ * in bytes.
+ */
+public interface Weigher<T> extends Serializable {
+
+    /**
+     * @param t an object to be stored in a Cache
+     * @return the weight of t, >= 0
+     */
+    long weigh(T t);
+}
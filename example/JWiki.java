@@ -1,7 +1,7 @@
 package cpen221.mp3.example;
 
-import fastily.jwiki.core.Wiki;
-import fastily.jwiki.dwrap.Revision;
+import org.fastily.jwiki.core.Wiki;
+import org.fastily.jwiki.dwrap.Revision;
 
 import java.util.List;
 
@@ -15,8 +15,8 @@ import java.util.List;
 
 public class JWiki {
     public static void main(String[] args) {
-        Wiki wiki = new Wiki("en.wikipedia.org");
-        wiki.enableLogging(false);
+        Wiki wiki = new Wiki.Builder().withDomain("en.wikipedia.org")
+                .withDefaultLogger(false).build();
         String pageTitle = "Barack Obama";
 //        System.out.println(wiki.getPageText("Main Page"));
 //        System.out.println(wiki.getCategoriesOnPage(pageTitle));
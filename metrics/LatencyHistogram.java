@@ -0,0 +1,124 @@
+package cpen221.mp3.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    /* sub-buckets per power of two; each bucket is at most 1/8 wide */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    // Abstraction Function:
+    //  LatencyHistogram represents the multiset of durations recorded so far,
+    //  in nanoseconds, kept with a relative precision of 1/8 (like an
+    //  HdrHistogram with one significant octal digit).
+    //    - counts[i] represents the number of durations d recorded with
+    //      bucketOf(d) == i. Durations below SUB_BUCKETS have a bucket each;
+    //      above that, every power of two is split into SUB_BUCKETS buckets.
+    //    - total, sum and max represent the number, the sum and the largest
+    //      of the durations recorded.
+
+    // Representation Invariant:
+    //    - total == the sum of counts, apart from recordings in progress
+    //    - every count >= 0, sum >= 0, max >= 0
+
+    // Thread Safety Arguments:
+    //  - Every field is final and atomic. record only does atomic adds and a
+    //    compare-and-set loop for max, so it never blocks and never
+    //    allocates. Readers may see a recording half done, which only skews
+    //    a summary by that one duration.
+
+    /**
+     * Record one duration. Never allocates.
+     *
+     * @param nanos the duration, in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.total.incrementAndGet();
+        this.sum.addAndGet(value);
+        long seen = this.max.get();
+        while (value > seen && !this.max.compareAndSet(seen, value)) {
+            seen = this.max.get();
+        }
+    }
+
+    /**
+     * @return the number of durations recorded
+     */
+    public long count() {
+        return this.total.get();
+    }
+
+    /**
+     * @param fraction a fraction of the durations, between 0 and 1
+     * @return a duration (in nanoseconds) at least as long as that fraction
+     * of the durations recorded, and at most 1/8 longer than needed; 0 if
+     * nothing was recorded
+     */
+    public long percentile(double fraction) {
+        long total = this.total.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestIn(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * @return the count, mean, median, 90th, 99th percentile and maximum of
+     * the durations recorded, the durations in microseconds
+     */
+    public Map<String, Long> summary() {
+        Map<String, Long> summary = new LinkedHashMap<>();
+        long count = count();
+        summary.put("count", count);
+        summary.put("meanMicros", count == 0 ? 0 : micros(this.sum.get() / count));
+        summary.put("p50Micros", micros(percentile(0.5)));
+        summary.put("p90Micros", micros(percentile(0.9)));
+        summary.put("p99Micros", micros(percentile(0.99)));
+        summary.put("maxMicros", micros(this.max.get()));
+        return summary;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /* the bucket of a duration >= 0 */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    /* the longest duration in bucket i */
+    static long highestIn(int i) {
+        if (i < SUB_BUCKETS) {
+            return i;
+        }
+        int shift = i / SUB_BUCKETS - 1;
+        long sub = SUB_BUCKETS + i % SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,57 @@
+package cpen221.mp3.server;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Direct buffers shared by all connections for encoding responses:
+final class BufferPool {
+    private static final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger freeCount = new AtomicInteger();
+    static final int BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_FREE = 256;
+
+    // Abstraction Function:
+    //  BufferPool represents the unused direct ByteBuffers of BUFFER_BYTES
+    //  bytes kept for reuse, so that writing a response to a socket neither
+    //  allocates new buffers nor copies through a temporary direct buffer.
+    //    - free holds the unused buffers, and freeCount approximates their
+    //      number.
+
+    // Representation Invariant:
+    //    - every buffer in free is direct and has capacity BUFFER_BYTES
+    //    - freeCount <= MAX_FREE, apart from races that only let the pool
+    //      briefly grow by the number of concurrent callers of give.
+
+    // Thread Safety Arguments:
+    //  - free is a thread-safe queue and freeCount is atomic. A buffer is
+    //    only used by the caller who took it until it is given back.
+
+    private BufferPool() {
+    }
+
+    /**
+     * @return a cleared direct buffer of BUFFER_BYTES bytes
+     */
+    static ByteBuffer take() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_BYTES);
+        }
+        freeCount.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Return a buffer obtained from take. The caller must not use it again.
+     *
+     * @param buffer the buffer to return
+     */
+    static void give(ByteBuffer buffer) {
+        if (freeCount.get() < MAX_FREE) {
+            freeCount.incrementAndGet();
+            free.add(buffer);
+        }
+    }
+}
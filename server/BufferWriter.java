@@ -0,0 +1,104 @@
+package cpen221.mp3.server;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Encodes characters as UTF-8 straight into buffers from BufferPool:
+class BufferWriter extends Writer {
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final List<ByteBuffer> filled = new ArrayList<>();
+    private ByteBuffer current = BufferPool.take();
+    // a high surrogate whose low surrogate has not been written yet:
+    private final CharBuffer pair = CharBuffer.allocate(2);
+    private boolean hasHalf;
+
+    // Abstraction Function:
+    //  BufferWriter represents the UTF-8 encoding of the characters written
+    //  to it: the bytes in filled, in order, followed by the bytes of
+    //  current up to its position. If hasHalf, the last character written
+    //  is a high surrogate held in pair until its low surrogate arrives.
+
+    // Representation Invariant:
+    //    - every buffer in filled is flipped (ready to be read)
+    //    - current is not flipped, and current == null after finish
+
+    // Thread Safety Arguments:
+    //  - Not thread-safe: a BufferWriter is used by one thread, and hands its
+    //    buffers over through finish.
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        encode(CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        encode(CharBuffer.wrap(string, offset, offset + length));
+    }
+
+    @Override
+    public void write(int c) {
+        encode(CharBuffer.wrap(new char[] {(char) c}));
+    }
+
+    /**
+     * Stop writing and hand over the encoded bytes.
+     *
+     * @return the buffers holding the bytes written, ready to be read and
+     * to be given back to BufferPool once read
+     */
+    List<ByteBuffer> finish() {
+        if (this.hasHalf) {
+            this.hasHalf = false;
+            this.pair.flip();
+            encode(this.pair, true);
+        }
+        this.filled.add(this.current.flip());
+        this.current = null;
+        return this.filled;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void encode(CharBuffer chars) {
+        if (this.hasHalf && chars.hasRemaining()) {
+            this.hasHalf = false;
+            this.pair.put(chars.get()).flip();
+            encode(this.pair, false);
+            this.pair.clear();
+        }
+        encode(chars, false);
+        if (chars.hasRemaining()) {
+            // only a high surrogate can be left, waiting for its low half:
+            this.pair.clear();
+            this.pair.put(chars.get());
+            this.hasHalf = true;
+        }
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) {
+        while (true) {
+            CoderResult result = this.encoder.encode(chars, this.current, endOfInput);
+            if (!result.isOverflow()) {
+                return;
+            }
+            this.filled.add(this.current.flip());
+            this.current = BufferPool.take();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package cpen221.mp3.server;
+
+import cpen221.mp3.wikimediator.Deadline;
+import cpen221.mp3.wikimediator.DeadlineExceededException;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs requests for the non-blocking front end:
+class Dispatcher {
+    private final WikiHandler handler;
+    private final Semaphore upstream;
+    private final LaneState[] lanes = new LaneState[Lane.values().length];
+    // Shared by every Dispatcher; threads are only created when all idle
+    // ones are busy, and permits bound how many can be busy per Dispatcher:
+    private static final ExecutorService workers =
+            Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "wiki-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+    // Shared by every Dispatcher to time out requests:
+    private static final ScheduledExecutorService timer = newTimer();
+
+    // Abstraction Function:
+    //  Dispatcher represents a service that processes requests with handler
+    //  and hands each response to the callback given with its request.
+    //  Requests are admitted into one of three lanes by their cost:
+    //    - LOCAL: requests handler can answer without calling the wiki
+    //      (statistics, and pages or searches already cached).
+    //    - FETCH: other getPage and simpleSearch requests.
+    //    - GRAPH: graph traversals (getConnectedPages), which make many
+    //      calls to the wiki.
+    //  A batch goes to the lane of its most expensive sub-request.
+    //  Each lane has its own permits and its own waiting queue, so a cheap
+    //  request never waits behind an expensive one in another lane.
+    //    - lanes[l.ordinal()] holds the permits, waiting queue and counters
+    //      of lane l.
+    //    - upstream holds one permit for every FETCH or GRAPH request that
+    //      may still start: at most maxNumRequests requests call the wiki at
+    //      once. GRAPH may only use half of them (rounded up), so traversals
+    //      cannot starve fetches. A LOCAL request whose page or search left
+    //      the cache before it ran takes a permit for each call it then
+    //      makes to the wiki (see Deadline.withPermits).
+    //    - A waiting request whose timeout runs out leaves its queue at once.
+    //    - A request that finds its lane's queue full is rejected at once
+    //      with a "failed" Response.
+    //    - workers represents the threads that process requests.
+    //    - timer represents the thread that fails requests whose timeout
+    //      ran out before their response was ready.
+
+    // Representation Invariant:
+    //    - for each lane: permits.availablePermits() + running == its limit,
+    //      and 0 <= depth <= capacity, depth == waiting.size() apart from the
+    //      moments between changing one and the other.
+    //    - upstream.availablePermits() + the running FETCH and GRAPH Tasks
+    //      + the LOCAL Tasks calling the wiki == maxNumRequests
+    //    - a lane's waiting is only non-empty while it cannot acquire its
+    //      permits, apart from the moment between a Task finishing and
+    //      draining the lanes.
+
+    // Thread Safety Arguments:
+    //  - The semaphores, queues and counters are thread-safe data types.
+    //    Whoever adds to a waiting queue or releases a permit drains every
+    //    lane afterwards, so a waiting Task is never left behind while
+    //    permits are available.
+    //  - Each Task answers exactly once: the worker and the timer both race
+    //    on compareAndSet of its done flag, and only the winner replies.
+    //  - runner is guarded by the lock of its Task, so the timer only
+    //    interrupts a worker while it is still running that Task.
+
+    /* The lanes, cheapest first, in the order they are served when permits free up. */
+    enum Lane { LOCAL, FETCH, GRAPH }
+
+    /* The admission state of one lane. */
+    private static final class LaneState {
+        final Semaphore permits;
+        final boolean callsUpstream;
+        final int capacity;
+        final Queue<Task> waiting = new ConcurrentLinkedQueue<>();
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong rejected = new AtomicLong();
+
+        LaneState(int permits, boolean callsUpstream, int capacity) {
+            this.permits = new Semaphore(permits);
+            this.callsUpstream = callsUpstream;
+            this.capacity = capacity;
+        }
+    }
+
+    /* Receives the Response to a dispatched request. */
+    interface Reply {
+        void send(String id, String status, Object result);
+    }
+
+    /* One request and where its response goes. */
+    private final class Task implements Runnable {
+        final Request request;
+        final Reply reply;
+        final LaneState lane;
+        final Deadline deadline;
+        final AtomicBoolean done = new AtomicBoolean();
+        private Thread runner;
+        volatile ScheduledFuture<?> timeout;
+
+        Task(Request request, Reply reply, LaneState lane, Deadline deadline) {
+            this.request = request;
+            this.reply = reply;
+            this.lane = lane;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                this.runner = Thread.currentThread();
+            }
+            try {
+                if (!this.done.get()) {
+                    try {
+                        complete(WikiHandler.SUCCESS, handler.result(this.request, this.deadline));
+                    } catch (DeadlineExceededException e) {
+                        // the work noticed the deadline before the timer did:
+                        timeOut();
+                    } catch (RuntimeException e) {
+                        complete(WikiHandler.FAILED, WikiHandler.describe(e));
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    this.runner = null;
+                }
+                // clear an interrupt from timeOut that came too late to matter:
+                Thread.interrupted();
+                this.lane.running.decrementAndGet();
+                release(this.lane);
+                drain();
+            }
+        }
+
+        void complete(String status, Object result) {
+            if (this.done.compareAndSet(false, true)) {
+                ScheduledFuture<?> timeout = this.timeout;
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+                this.reply.send(this.request.getID(), status, result);
+            }
+        }
+
+        void timeOut() {
+            if (this.done.compareAndSet(false, true)) {
+                // stops the upstream calls and traversals made for the request:
+                this.deadline.cancel();
+                synchronized (this) {
+                    if (this.runner != null) {
+                        this.runner.interrupt();
+                    }
+                }
+                // still waiting: give its place in the queue to another.
+                if (this.lane.waiting.remove(this)) {
+                    this.lane.depth.decrementAndGet();
+                }
+                this.reply.send(this.request.getID(), WikiHandler.FAILED,
+                        "Operation timed out");
+            }
+        }
+    }
+
+    /**
+     * @param handler processes each request
+     * @param maxNumRequests the maximum number of requests calling the wiki
+     *                       at once, and of LOCAL requests running at once
+     * @param queueCapacity the maximum number of requests waiting in each lane
+     */
+    Dispatcher(WikiHandler handler, int maxNumRequests, int queueCapacity) {
+        this.handler = handler;
+        this.upstream = new Semaphore(maxNumRequests);
+        this.lanes[Lane.LOCAL.ordinal()] = new LaneState(maxNumRequests, false, queueCapacity);
+        this.lanes[Lane.FETCH.ordinal()] = new LaneState(maxNumRequests, true, queueCapacity);
+        this.lanes[Lane.GRAPH.ordinal()] =
+                new LaneState((maxNumRequests + 1) / 2, true, queueCapacity);
+    }
+
+    /**
+     * Admit request into its lane and process it as soon as that lane has
+     * permits, then pass its Response to reply. If the lane's queue is full,
+     * reply at once with a "failed" Response instead. If request has a
+     * timeout that runs out first, reply with a "failed" Response and stop
+     * the processing, along with every upstream call and traversal it
+     * started. Does not block.
+     *
+     * @param request the request to process
+     * @param reply called once, usually from another thread, with the Response
+     */
+    void dispatch(Request request, Reply reply) {
+        long seconds = -1;
+        if (request.getTimeOut() != null) {
+            try {
+                seconds = Long.parseLong(request.getTimeOut());
+            } catch (NumberFormatException e) {
+                reply.send(request.getID(), WikiHandler.FAILED, "invalid timeout");
+                return;
+            }
+        }
+        Lane kind = laneOf(request);
+        LaneState lane = this.lanes[kind.ordinal()];
+        Deadline deadline = seconds >= 0 ? Deadline.after(Duration.ofSeconds(seconds)) : Deadline.NONE;
+        if (kind == Lane.LOCAL) {
+            // its page or search may leave the cache before it runs:
+            deadline = deadline.withPermits(this.upstream);
+        }
+        Task task = new Task(request, reply, lane, deadline);
+
+        if (tryAcquire(lane)) {
+            schedule(task, seconds);
+            start(task);
+            return;
+        }
+        if (lane.depth.incrementAndGet() > lane.capacity) {
+            lane.depth.decrementAndGet();
+            lane.rejected.incrementAndGet();
+            reply.send(request.getID(), WikiHandler.FAILED, "server busy");
+            return;
+        }
+        // queued before its timeout starts, so that the timeout can remove it:
+        lane.waiting.add(task);
+        schedule(task, seconds);
+        drain();
+    }
+
+    /**
+     * @param lane a lane
+     * @return the number of requests waiting in lane
+     */
+    int depth(Lane lane) {
+        return this.lanes[lane.ordinal()].depth.get();
+    }
+
+    /**
+     * @param lane a lane
+     * @return the number of requests of lane being processed
+     */
+    int running(Lane lane) {
+        return this.lanes[lane.ordinal()].running.get();
+    }
+
+    /**
+     * @param lane a lane
+     * @return the number of requests rejected because lane was full
+     */
+    long rejected(Lane lane) {
+        return this.lanes[lane.ordinal()].rejected.get();
+    }
+
+    /**
+     * @param request a request
+     * @return the lane of request, by its type and whether handler can
+     * answer it locally; for a batch, the most expensive lane of its
+     * sub-requests
+     */
+    Lane laneOf(Request request) {
+        if ("batch".equals(request.getType())) {
+            Lane lane = Lane.LOCAL;
+            if (request.getRequests() != null) {
+                for (Request sub : request.getRequests()) {
+                    // missing and nested requests fail without calling the wiki:
+                    if (sub != null && !"batch".equals(sub.getType())) {
+                        Lane subLane = laneOf(sub);
+                        if (subLane.compareTo(lane) > 0) {
+                            lane = subLane;
+                        }
+                    }
+                }
+            }
+            return lane;
+        }
+        try {
+            if (this.handler.isLocal(request)) {
+                return Lane.LOCAL;
+            }
+        } catch (RuntimeException e) {
+            // a malformed request; result will report it.
+            return Lane.LOCAL;
+        }
+        String type = request.getType();
+        if (type.equals("getConnectedPages")) {
+            return Lane.GRAPH;
+        }
+        return Lane.FETCH;
+    }
+
+    private boolean tryAcquire(LaneState lane) {
+        if (!lane.permits.tryAcquire()) {
+            return false;
+        }
+        if (lane.callsUpstream && !this.upstream.tryAcquire()) {
+            lane.permits.release();
+            return false;
+        }
+        return true;
+    }
+
+    private void release(LaneState lane) {
+        if (lane.callsUpstream) {
+            this.upstream.release();
+        }
+        lane.permits.release();
+    }
+
+    private void schedule(Task task, long seconds) {
+        if (seconds >= 0) {
+            task.timeout = timer.schedule(task::timeOut, seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private void start(Task task) {
+        task.lane.running.incrementAndGet();
+        workers.execute(task);
+    }
+
+    /* start waiting Tasks, serving the lanes in order, while permits allow */
+    private void drain() {
+        for (LaneState lane : this.lanes) {
+            while (!lane.waiting.isEmpty() && tryAcquire(lane)) {
+                Task next = lane.waiting.poll();
+                if (next == null) {
+                    release(lane);
+                    break;
+                }
+                lane.depth.decrementAndGet();
+                start(next);
+            }
+        }
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "wiki-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most requests finish in time, so do not keep their cancelled checks:
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,114 @@
+package cpen221.mp3.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import cpen221.mp3.wikimediator.Deadline;
+import cpen221.mp3.wikimediator.StatsDigest;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// The other servers a WikiMediatorServer merges its statistics with:
+class Fleet {
+
+    private volatile List<InetSocketAddress> peers = List.of();
+    private final Gson gson = new Gson();
+    private static final long PEER_TIMEOUT_MILLIS = 2000;
+    // Shared by every Fleet to ask peers for their statistics at once:
+    private static final ExecutorService askers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "wiki-fleet");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Abstraction Function:
+    //  Fleet represents the other WikiMediatorServers of a fleet, each at
+    //  one of peers, which answer a "digest" request with the StatsDigest
+    //  of their WikiMediator.
+
+    // Representation Invariant:
+    //    - peers != null and is immutable
+
+    // Thread Safety Arguments:
+    //  - peers is volatile and immutable, so it is replaced whole.
+    //  - gson is thread safe, and askers is a thread-safe ExecutorService.
+
+    /**
+     * @param peers the addresses of the other servers of the fleet, not
+     *              including this one
+     */
+    void setPeers(List<InetSocketAddress> peers) {
+        this.peers = List.copyOf(peers);
+    }
+
+    /**
+     * Ask every peer for its digest, all at once.
+     *
+     * @param deadline when the digests are no longer wanted; each peer is
+     *                 also given at most PEER_TIMEOUT_MILLIS
+     * @return the digests of the peers that answered in time; the others,
+     * unreachable or too slow, are left out
+     */
+    List<StatsDigest> digests(Deadline deadline) {
+        long timeout = Math.min(PEER_TIMEOUT_MILLIS,
+                TimeUnit.NANOSECONDS.toMillis(deadline.remainingNanos()));
+        List<Future<StatsDigest>> answers = new ArrayList<>();
+        for (InetSocketAddress peer : this.peers) {
+            answers.add(askers.submit(() -> digestOf(peer, (int) Math.max(1, timeout))));
+        }
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<StatsDigest> digests = new ArrayList<>();
+        for (Future<StatsDigest> answer : answers) {
+            try {
+                digests.add(answer.get(Math.max(0, end - System.nanoTime()),
+                        TimeUnit.NANOSECONDS));
+            } catch (ExecutionException | TimeoutException e) {
+                answer.cancel(true);
+            } catch (InterruptedException e) {
+                answers.forEach(a -> a.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return digests;
+    }
+
+    /**
+     * @return the number of peers
+     */
+    int size() {
+        return this.peers.size();
+    }
+
+    /* the digest of the server at peer, over one connection */
+    private StatsDigest digestOf(InetSocketAddress peer, int timeoutMillis) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(peer, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.UTF_8));
+            out.write("{\"id\":\"digest\",\"type\":\"digest\"}\n");
+            out.flush();
+            JsonObject response = JsonParser.parseReader(new JsonReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8))).getAsJsonObject();
+            if (!WikiHandler.SUCCESS.equals(response.get("status").getAsString())) {
+                throw new IOException(peer + ": " + response.get("result"));
+            }
+            return this.gson.fromJson(response.get("result"), StatsDigest.class);
+        } catch (RuntimeException e) {
+            // a malformed response.
+            throw new IOException(peer + ": " + e, e);
+        }
+    }
+}
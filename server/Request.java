@@ -1,7 +1,11 @@
 package cpen221.mp3.server;
 
+import java.util.List;
+
 public class Request {
     String id, type, query, limit, timeout, hops;
+    // The sub-requests of a "batch" request:
+    List<Request> requests;
 
     public Request(String id, String type, String query, String limit, String timeout) {
         this.id = id;
@@ -37,12 +41,29 @@ public class Request {
         this.query = "";
     }
 
+    /**
+     * Create a "batch" request, answered by one Response whose result lists
+     * the Responses to requests, in order.
+     *
+     * @param id the id of the request
+     * @param requests the sub-requests, which must not be batches
+     * @param timeout the timeout of the whole batch in seconds, or null
+     */
+    public Request(String id, List<Request> requests, String timeout) {
+        this.id = id;
+        this.type = "batch";
+        this.requests = requests;
+        this.timeout = timeout;
+        this.query = "";
+    }
+
     public String getID() {
         return this.id;
     }
 
     public int getLimit() {
-        if (this.limit != null) {
+        // getConnectedPages requests keep their limit in hops:
+        if (this.limit != null && !this.limit.isEmpty()) {
             return Integer.parseInt(this.limit);
         }
         return Integer.parseInt(this.hops);
@@ -59,4 +80,8 @@ public class Request {
     public String getType() {
         return this.type;
     }
+
+    public List<Request> getRequests() {
+        return this.requests;
+    }
 }
@@ -0,0 +1,95 @@
+package cpen221.mp3.server;
+
+import cpen221.mp3.metrics.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+class RequestMetrics {
+
+    private final Map<String, LatencyHistogram> latency = new LinkedHashMap<>();
+    private final Map<String, LongAdder> failures = new LinkedHashMap<>();
+    private volatile Supplier<Map<String, ?>> gauges = Collections::emptyMap;
+    /* the request types with their own histogram; others share OTHER */
+    private static final List<String> TYPES = List.of("simpleSearch", "getPage",
+            "getConnectedPages", "zeitgeist", "trending", "peakLoad30s", "batch", "stats",
+            "digest", "mergeStats");
+    private static final String OTHER = "other";
+
+    // Abstraction Function:
+    //  RequestMetrics represents how long the requests made to a server took,
+    //  by type, and the current state of the server.
+    //    - latency maps each type of request to the time taken by every
+    //      request of that type, and failures to the number of those
+    //      requests that failed. Requests of unknown types are counted
+    //      under OTHER, so clients cannot grow the maps.
+    //    - gauges reads the state of the server (queue depths, connections)
+    //      when asked.
+
+    // Representation Invariant:
+    //    - latency and failures have the same keys: TYPES and OTHER, and are
+    //      never changed after construction
+    //    - gauges != null
+
+    // Thread Safety Arguments:
+    //  - latency and failures are only read after construction, and hold
+    //    thread safe values (see LatencyHistogram). gauges is volatile.
+
+    RequestMetrics() {
+        for (String type : TYPES) {
+            this.latency.put(type, new LatencyHistogram());
+            this.failures.put(type, new LongAdder());
+        }
+        this.latency.put(OTHER, new LatencyHistogram());
+        this.failures.put(OTHER, new LongAdder());
+    }
+
+    /**
+     * Record one request. Never allocates.
+     *
+     * @param type the type of the request
+     * @param nanos how long the request took, in nanoseconds
+     * @param failed true if the request failed
+     */
+    void record(String type, long nanos, boolean failed) {
+        String key = type != null && this.latency.containsKey(type) ? type : OTHER;
+        this.latency.get(key).record(nanos);
+        if (failed) {
+            this.failures.get(key).increment();
+        }
+    }
+
+    /**
+     * @param gauges reads the current state of the server, by name
+     */
+    void setGauges(Supplier<Map<String, ?>> gauges) {
+        this.gauges = gauges;
+    }
+
+    /**
+     * @return the latency summary and number of failures of each type of
+     * request received so far, by type
+     */
+    Map<String, Object> requests() {
+        Map<String, Object> requests = new LinkedHashMap<>();
+        this.latency.forEach((type, histogram) -> {
+            if (histogram.count() > 0) {
+                Map<String, Object> summary = new LinkedHashMap<>(histogram.summary());
+                summary.put("failures", this.failures.get(type).sum());
+                requests.put(type, summary);
+            }
+        });
+        return requests;
+    }
+
+    /**
+     * @return the current state of the server, by name
+     */
+    Map<String, ?> gauges() {
+        return this.gauges.get();
+    }
+}
@@ -0,0 +1,339 @@
+package cpen221.mp3.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// The non-blocking front end of WikiMediatorServer:
+final class SelectorLoop {
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Dispatcher dispatcher;
+    private final int maxInFlight;
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Gson gson = new Gson();
+    // Holds what is read from a client until its complete requests are
+    // dispatched; only a partial request left over is copied out:
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+    private static final Logger LOG = Logger.getLogger(SelectorLoop.class.getName());
+    private static final int BACKLOG = 1024;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_REQUEST_BYTES = 1 << 20;
+
+    // Abstraction Function:
+    //  SelectorLoop represents a server on one thread that accepts clients on
+    //  server, reads a stream of Requests from each client, and writes back
+    //  the Response that dispatcher produces for each of them as soon as it
+    //  is ready, so responses may come back in a different order than their
+    //  requests. Each response carries the id of its request.
+    //    - Each request and each response is one line of JSON.
+    //    - selector represents all open channels: server, and the
+    //      Connection attached to each client's SocketChannel.
+    //    - maxInFlight represents the number of requests of one client that
+    //      may be processed at once; beyond that, the client's requests stay
+    //      unread until one of its responses is ready.
+    //    - flushes holds the Connections that have new responses to write.
+    //    - connections represents the number of clients connected.
+    //    - readBuffer holds the bytes of the read in progress. A Connection
+    //      only has an in buffer of its own while it has bytes left over, so
+    //      idle clients hold no buffers.
+
+    // Representation Invariant:
+    //    - selector, server and dispatcher are not null.
+    //    - maxInFlight > 0
+    //    - A Connection's in buffer is null, readBuffer during a read, or
+    //      holds at most MAX_REQUEST_BYTES left over from earlier reads.
+    //    - readBuffer is empty between reads.
+    //    - 0 <= a Connection's inFlight <= maxInFlight
+
+    // Thread Safety Arguments:
+    //  - Only the thread in run uses selector, server, readBuffer, and the
+    //    channels, in buffers and flags of the Connections (thread
+    //    confinement).
+    //  - Workers encode responses into buffers of their own, then hand them
+    //    to that thread through the thread-safe out queue and inFlight
+    //    counter of a Connection and through flushes, and wake it up. The
+    //    buffers of one response are added under the Connection's lock, so
+    //    they are never interleaved with those of another response.
+
+    /* One client, and the bytes read from and still to be written to it. */
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer in;
+        final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        // the client sent its last request, or sent one too large to read:
+        boolean inputDone;
+        // a write did not fit in the socket buffer:
+        boolean writeBlocked;
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        /* Called by workers: queue a response and have the loop write it. */
+        void send(String id, String status, Object result) {
+            BufferWriter buffers = new BufferWriter();
+            try {
+                WikiHandler.write(new JsonWriter(buffers), id, status, result);
+            } catch (IOException e) {
+                // a BufferWriter does not throw.
+                throw new UncheckedIOException(e);
+            }
+            buffers.write('\n');
+            List<ByteBuffer> response = buffers.finish();
+            synchronized (this) {
+                this.out.addAll(response);
+            }
+            this.inFlight.decrementAndGet();
+            flushes.add(this);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Open a non-blocking server socket.
+     *
+     * @param port the port number to bind the server to
+     * @param dispatcher processes the requests read by this loop
+     * @param maxInFlight the number of requests of one client processed at once
+     * @throws IOException if the port cannot be bound
+     */
+    SelectorLoop(int port, Dispatcher dispatcher, int maxInFlight) throws IOException {
+        this.dispatcher = dispatcher;
+        this.maxInFlight = maxInFlight;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(port), BACKLOG);
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Serve clients until the thread is interrupted.
+     *
+     * @throws IOException if the selector fails
+     */
+    void run() throws IOException {
+        while (!Thread.currentThread().isInterrupted()) {
+            this.selector.select();
+            Connection pending;
+            while ((pending = this.flushes.poll()) != null) {
+                if (!pending.key.isValid()) {
+                    continue;
+                }
+                try {
+                    flush(pending);
+                    // a response was ready, so the client may send more:
+                    readRequests(pending);
+                    update(pending);
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "Connection failed", e);
+                    close(pending);
+                }
+            }
+            Iterator<SelectionKey> ready = this.selector.selectedKeys().iterator();
+            while (ready.hasNext()) {
+                SelectionKey key = ready.next();
+                ready.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable()) {
+                        flush(connection);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(connection);
+                    }
+                    update(connection);
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "Connection failed", e);
+                    if (key.attachment() != null) {
+                        close((Connection) key.attachment());
+                    }
+                }
+            }
+        }
+        this.server.close();
+        this.selector.close();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = this.server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            new Connection(channel);
+            this.connections.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of clients connected
+     */
+    int connections() {
+        return this.connections.get();
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (in == null) {
+            int read = connection.channel.read(this.readBuffer);
+            connection.in = this.readBuffer;
+            connection.inputDone = read < 0;
+            readRequests(connection);
+            return;
+        }
+        if (!in.hasRemaining()) {
+            if (in.capacity() >= MAX_REQUEST_BYTES) {
+                connection.inputDone = true;
+                connection.inFlight.incrementAndGet();
+                connection.send(null, WikiHandler.FAILED, "request too large");
+                return;
+            }
+            connection.in = grow(in, in.capacity() * 2);
+        }
+        if (connection.channel.read(connection.in) < 0) {
+            connection.inputDone = true;
+        }
+        readRequests(connection);
+    }
+
+    private static ByteBuffer grow(ByteBuffer in, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        in.flip();
+        return bigger.put(in);
+    }
+
+    /* Dispatch the complete lines in connection's in buffer, up to maxInFlight. */
+    private void readRequests(Connection connection) {
+        ByteBuffer in = connection.in;
+        if (in == null) {
+            return;
+        }
+        int start = 0;
+        for (int i = 0; i < in.position()
+                && connection.inFlight.get() < this.maxInFlight; i++) {
+            if (in.get(i) == '\n') {
+                if (!isBlank(in, start, i)) {
+                    dispatch(connection, in.array(), start, i - start);
+                }
+                start = i + 1;
+            }
+        }
+        in.flip().position(start);
+        in.compact();
+        if (in.position() == 0) {
+            connection.in = null;
+        } else if (in == this.readBuffer) {
+            // keep the partial request, leaving readBuffer for other clients:
+            connection.in = grow(in, Math.max(4096, 2 * in.position()));
+        }
+        this.readBuffer.clear();
+    }
+
+    private static boolean isBlank(ByteBuffer in, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (in.get(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dispatch(Connection connection, byte[] line, int offset, int length) {
+        connection.inFlight.incrementAndGet();
+        Request request;
+        try {
+            request = this.gson.fromJson(new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(line, offset, length), StandardCharsets.UTF_8)),
+                    Request.class);
+        } catch (JsonParseException e) {
+            request = null;
+        }
+        if (request == null || request.getType() == null) {
+            connection.send(null, WikiHandler.FAILED, "malformed request");
+            return;
+        }
+        this.dispatcher.dispatch(request, connection::send);
+    }
+
+    private void flush(Connection connection) throws IOException {
+        connection.writeBlocked = false;
+        ByteBuffer next;
+        while ((next = connection.out.peek()) != null) {
+            connection.channel.write(next);
+            if (next.hasRemaining()) {
+                connection.writeBlocked = true;
+                return;
+            }
+            BufferPool.give(connection.out.poll());
+        }
+    }
+
+    /* Close connection once it is finished, or else select what it waits for. */
+    private void update(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        if (connection.inputDone && connection.inFlight.get() == 0
+                && connection.out.isEmpty()) {
+            close(connection);
+            return;
+        }
+        int ops = 0;
+        if (!connection.inputDone && connection.inFlight.get() < this.maxInFlight) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (connection.writeBlocked) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void close(Connection connection) {
+        if (connection.key.isValid()) {
+            this.connections.decrementAndGet();
+        }
+        connection.key.cancel();
+        connection.in = null;
+        ByteBuffer unsent;
+        while ((unsent = connection.out.poll()) != null) {
+            BufferPool.give(unsent);
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Could not close connection", e);
+        }
+    }
+}
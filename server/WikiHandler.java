@@ -1,22 +1,55 @@
 package cpen221.mp3.server;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import cpen221.mp3.wikimediator.Deadline;
+import cpen221.mp3.wikimediator.DeadlineExceededException;
+import cpen221.mp3.wikimediator.StatsDigest;
 import cpen221.mp3.wikimediator.WikiMediator;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 // A brand-new Class:
 class WikiHandler implements Runnable {
     Socket client;
-    WikiMediator wiki = new WikiMediator();
+    WikiMediator wiki;
     // Gson is a library package made by Google (to help handle JSON-formatted data).
     Gson gson = new Gson();
+    // How long requests took, shared by every WikiHandler of a server:
+    final RequestMetrics metrics;
+    // The other servers whose statistics a mergeStats request adds in:
+    final Fleet fleet;
+    private static final Logger LOG = Logger.getLogger(WikiHandler.class.getName());
+    private static final Gson JSON = new Gson();
+    // Runs the requests that have a timeout, for every WikiHandler, so
+    // that the connection's thread can stop waiting when it expires:
+    private static final ExecutorService TIMED = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "wiki-timed-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+    static final String SUCCESS = "success";
+    static final String FAILED = "failed";
 
 
     /** Takes a client's Socket object and processes that client's request.
@@ -27,123 +60,403 @@ class WikiHandler implements Runnable {
      *
      */
     public WikiHandler(Socket clientSocket, WikiMediator wiki) {
+        this(clientSocket, wiki, new RequestMetrics(), new Fleet());
+    }
+
+    /** Takes a client's Socket object and processes that client's request,
+     * recording how long it took.
+     *
+     * @param clientSocket The socket where the request is accepted.
+     * @param wiki The WikiMediator object used to process requests for this client.
+     * @param metrics where the latency of each request is recorded, and
+     *                where a "stats" request reads the state of the server.
+     * @param fleet the other servers a "mergeStats" request asks for their
+     *              statistics.
+     */
+    WikiHandler(Socket clientSocket, WikiMediator wiki, RequestMetrics metrics, Fleet fleet) {
         // Only a client can use a Socket object to establish a connection with a server.
         this.client = clientSocket;
         this.wiki = wiki;
+        this.metrics = metrics;
+        this.fleet = fleet;
     }
 
     @Override
     public void run() {
-        // Only one thread, because we are processing one client's request:
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        System.out.println("Client connected");
         try {
-            // You can wrap an InputStream in an ObjectInputStream and then
-            // you can read objects of any type from it.
+            // The request and the response are each one line of JSON, read
+            // and written as a stream, without first building whole Strings.
 
             // Client Socket receiving data in:
-            ObjectInputStream ois = new ObjectInputStream(client.getInputStream());
+            JsonReader in = new JsonReader(new InputStreamReader(client.getInputStream(),
+                    StandardCharsets.UTF_8));
             // Client Socket sending data out (Because the data going into or
             // coming out of a socket is a stream of bytes).
-            ObjectOutputStream oos = new ObjectOutputStream(client.getOutputStream());
+            Writer writer = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(),
+                    StandardCharsets.UTF_8), BufferPool.BUFFER_BYTES);
+            JsonWriter out = new JsonWriter(writer);
 
             // "fromJson" method de-serializes the Json read from the specified
             // reader into an object of the specified type(Request.class).
-            Request req = gson.fromJson((JsonReader) ois.readObject(), Request.class);
+            Request req = gson.fromJson(in, Request.class);
+            if (req == null) {
+                // the client closed the connection without a request.
+                return;
+            }
 
+            Duration timeout = null;
+            if (req.getTimeOut() != null) {
+                try {
+                    timeout = Duration.ofSeconds(Long.parseLong(req.getTimeOut()));
+                } catch (NumberFormatException e) {
+                    write(out, req.getID(), FAILED, "invalid timeout");
+                    writer.write('\n');
+                    writer.flush();
+                    return;
+                }
+            }
 
             // Checking to see the Request contained a 'timeout' field.
-            if (req.getTimeOut() != null) {
+            if (timeout != null) {
                 // Returning a Future object representing the pending
                 // results of the submitted task.
-                // Future<Sting> object is just a wrapper around the "call()" method's return value.
-                final Future<String> handler = executorService.submit(new Callable<String>() {
+                // Future<Object> object is just a wrapper around the "call()" method's return value.
+                // The calls and traversals made for req stop once it expires:
+                Deadline deadline = Deadline.after(timeout);
+                final Future<Object> handler = TIMED.submit(new Callable<Object>() {
                     @Override
-                    public String call() throws Exception {
-                        return process(req);
+                    public Object call() {
+                        return result(req, deadline);
                     }
                 });
 
-                // Obtain a Duration representing a number of seconds.
-                Duration timeout = Duration.ofSeconds(Integer.parseInt(req.getTimeOut()));
-
                 try {
                     // If the execution period is longer than specified timeout, an exception will be thrown.
 
                     // Future's "get" method waits if necessary for at most the given time
                     // for the computation to complete, and then retrieves its
                     // result, returned by the "call" method of the Future object:
-                    String response = handler.get(timeout.toMinutes(), TimeUnit.MINUTES);
+                    Object result = handler.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
                     // writing the response to the socket (outputStream):
-                    oos.writeObject(response);
-                    // "response" is already in JSON format.(Hence
-                    // write directly into the Socket).
+                    write(out, req.getID(), SUCCESS, result);
 
                 } catch (TimeoutException e) {
-                    // Cancelling the thread executing this task if timed out.
+                    // Cancelling the thread executing this task if timed out,
+                    // and the upstream calls it is waiting for.
+                    deadline.cancel();
                     handler.cancel(true);
-                    System.out.println("Timeout");
 
                     // write an appropriate response (if timed-out):
-                    oos.writeObject(gson.toJson(new Response(req.getID(), "failed", "Operation timed out")));
+                    write(out, req.getID(), FAILED, "Operation timed out");
+                } catch (ExecutionException e) {
+                    write(out, req.getID(), FAILED, describe(e.getCause()));
+                } catch (InterruptedException e) {
+                    // the server is shutting down.
+                    deadline.cancel();
+                    handler.cancel(true);
+                    Thread.currentThread().interrupt();
+                    write(out, req.getID(), FAILED, "server shutting down");
                 }
             } // end of 'IF' statement here!
 
                 // If the Request did not have a 'timeout' field:
             else {
-                oos.writeObject(process(req));
+                try {
+                    write(out, req.getID(), SUCCESS, result(req));
+                } catch (RuntimeException e) {
+                    write(out, req.getID(), FAILED, describe(e));
+                }
+            }
+            writer.write('\n');
+            writer.flush();
+        } catch(IOException | JsonParseException e){
+            LOG.log(Level.FINE, "Could not answer a client", e);
+        } finally {
+            try {
+                client.close(); // closing the client's connection in the network.
+            } catch (IOException e) {
+                // already closed by the client.
             }
+        }
+    }
 
-            ois.close();
-            oos.close();
-            client.close(); // closing the client's connection in the network.
-        } catch(IOException | ClassNotFoundException | InterruptedException | ExecutionException e){
-            System.out.println(e);
+    /**
+     * @param req a request
+     * @return true if req can be answered without calling the wiki: a
+     * statistics request, or a page or search that is already cached
+     */
+    boolean isLocal(Request req) {
+        switch (req.getType()) {
+            case "zeitgeist":
+            case "trending":
+            case "peakLoad30s":
+            case "stats":
+            case "digest":
+                return true;
+            case "getPage":
+                return wiki.hasPage(req.getQuery());
+            case "simpleSearch":
+                return wiki.hasSearch(req.getQuery(), req.getLimit());
+            default:
+                return false;
         }
+    }
 
-        // Stop the current thread for this individual task:
-        executorService.shutdownNow();
+    /**
+     * Process req and return its Response as JSON, for callers that need
+     * the whole Response at once.
+     *
+     * @param req the request
+     * @return the JSON Response to req
+     */
+    String process(Request req) {
+        StringWriter json = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(json);
+            try {
+                write(out, req.getID(), SUCCESS, result(req));
+            } catch (RuntimeException e) {
+                write(out, req.getID(), FAILED, describe(e));
+            }
+        } catch (IOException e) {
+            // a StringWriter does not throw.
+            throw new UncheckedIOException(e);
+        }
+        return json.toString();
     }
 
-    // The return type of the "process" is of type JSON String.
-    private String process(Request req) {
+    /**
+     * Process req.
+     *
+     * @param req the request
+     * @return the result of req: a String, an Integer or a List of Strings
+     * @throws IllegalArgumentException if req has an unknown type
+     */
+    Object result(Request req) {
+        return result(req, Deadline.NONE);
+    }
 
+    /**
+     * Process req, giving up once deadline expires, and record how long it
+     * took in metrics.
+     *
+     * @param req the request
+     * @param deadline when the result is no longer wanted
+     * @return the result of req: a String, an Integer, a List of Strings,
+     * the List of Parts of a batch, or the Map of statistics of a stats
+     * request
+     * @throws IllegalArgumentException if req has an unknown type
+     * @throws DeadlineExceededException if deadline expires first
+     */
+    Object result(Request req, Deadline deadline) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = answer(req, deadline);
+            failed = false;
+            return result;
+        } finally {
+            this.metrics.record(req.getType(), System.nanoTime() - start, failed);
+        }
+    }
+
+    /* the result of req, see result(req, deadline) */
+    private Object answer(Request req, Deadline deadline) {
         String type = req.getType();
         String query = req.getQuery();
-        String id = req.getID();
-        String timeout = req.getTimeOut();
+        if (type.equals("batch")) {
+            return batch(req.getRequests(), deadline);
+        } else if (type.equals("stats")) {
+            return stats();
+        } else if (type.equals("digest")) {
+            return JSON.toJsonTree(wiki.digest());
+        }
         int limit = req.getLimit();
 
-
-        String response;
-        String statusS;
-
-        boolean status = true; // meaning 'success'
-
         if (type.equals("simpleSearch")) {
-            // Serializing the specified object(List<String>) to its equivalent JSON String:
-            response = gson.toJson(wiki.simpleSearch(query, limit));
+            return wiki.simpleSearch(query, limit, deadline);
         } else if (type.equals("getPage")) {
-            response = gson.toJson(wiki.getPage(query));
+            return wiki.getPage(query, deadline);
         } else if (type.equals("getConnectedPages")) {
-            response = gson.toJson(wiki.getConnectedPages(query, limit));
+            return wiki.getConnectedPages(query, limit, Integer.MAX_VALUE, deadline);
         } else if (type.equals("zeitgeist")) {
-            response = gson.toJson(wiki.zeitgeist(limit));
+            return wiki.zeitgeist(limit);
         } else if (type.equals("trending")) {
-            response = gson.toJson(wiki.trending(limit));
+            return wiki.trending(limit);
         } else if (type.equals("peakLoad30s")) {
-            response = gson.toJson(wiki.peakLoad30s());
-        } else {
-            status = false;
-            response = "request not found";
+            return wiki.peakLoad30s();
+        } else if (type.equals("mergeStats")) {
+            return mergeStats(limit, deadline);
+        }
+        throw new IllegalArgumentException("request not found");
+    }
+
+    /**
+     * @return the latency of each type of request, the state of the caches
+     * and of the calls to the wiki, and the state of the server, as nested
+     * maps
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", this.metrics.requests());
+        stats.put("mediator", wiki.stats());
+        stats.put("server", this.metrics.gauges());
+        return stats;
+    }
+
+    /**
+     * Answer zeitgeist, trending and peakLoad30s for the whole fleet, by
+     * merging the statistics of this server with those of every peer that
+     * answers before deadline.
+     *
+     * @param limit the number of queries of zeitgeist and trending
+     * @param deadline when the result is no longer wanted
+     * @return the fleet's "zeitgeist", "trending" and "peakLoad30s", the
+     * number of "nodes" merged and the number of peers "unreachable"
+     */
+    Map<String, Object> mergeStats(int limit, Deadline deadline) {
+        StatsDigest merged = wiki.digest();
+        List<StatsDigest> peers = this.fleet.digests(deadline);
+        for (StatsDigest peer : peers) {
+            merged = merged.merge(peer);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("zeitgeist", merged.zeitgeist(limit));
+        stats.put("trending", merged.trending(limit, System.currentTimeMillis()));
+        stats.put("peakLoad30s", merged.peakLoad30s());
+        stats.put("nodes", merged.nodes());
+        stats.put("unreachable", Math.max(0, this.fleet.size() - peers.size()));
+        return stats;
+    }
+
+    /* One Response inside the result of a batch. */
+    static final class Part {
+        final String id;
+        final String status;
+        final Object result;
+
+        Part(String id, String status, Object result) {
+            this.id = id;
+            this.status = status;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Process the sub-requests of a batch. The pages of all getPage
+     * sub-requests are fetched together (see WikiMediator.getPages); the
+     * other sub-requests are processed one by one.
+     *
+     * @param requests the sub-requests
+     * @param deadline when the whole batch is no longer wanted
+     * @return the Response to each sub-request, in order
+     * @throws IllegalArgumentException if requests is null or has a batch;
+     * a null sub-request, or a getPage without a title, only fails its own
+     * Response
+     */
+    private List<Part> batch(List<Request> requests, Deadline deadline) {
+        if (requests == null) {
+            throw new IllegalArgumentException("batch without requests");
+        }
+        List<String> titles = new ArrayList<>();
+        for (Request sub : requests) {
+            if (sub == null) {
+                continue;
+            }
+            if ("batch".equals(sub.getType())) {
+                throw new IllegalArgumentException("nested batch");
+            }
+            if ("getPage".equals(sub.getType()) && sub.getQuery() != null) {
+                titles.add(sub.getQuery());
+            }
+        }
+        Map<String, String> pages = wiki.getPages(titles, deadline);
+
+        List<Part> parts = new ArrayList<>(requests.size());
+        for (Request sub : requests) {
+            if (sub == null) {
+                parts.add(new Part(null, FAILED, "missing request"));
+                continue;
+            }
+            if ("getPage".equals(sub.getType())) {
+                parts.add(sub.getQuery() == null
+                        ? new Part(sub.getID(), FAILED, "missing title")
+                        : new Part(sub.getID(), SUCCESS, pages.get(sub.getQuery())));
+                continue;
+            }
+            deadline.check();
+            try {
+                parts.add(new Part(sub.getID(), SUCCESS, answer(sub, deadline)));
+            } catch (DeadlineExceededException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                parts.add(new Part(sub.getID(), FAILED, describe(e)));
+            }
         }
+        return parts;
+    }
 
-        if (status) {
-            statusS = "success";
+    /**
+     * Write a Response as one JSON object. The result is written as JSON
+     * in place (a page's text is escaped once, straight into out), not as
+     * a String holding more JSON.
+     *
+     * @param out where to write the Response
+     * @param id the id of the request
+     * @param status SUCCESS or FAILED
+     * @param result a String, a Number, a Collection of Strings, the
+     *               List of Parts of a batch, a Map of such values, or a
+     *               JsonElement
+     * @throws IOException if out cannot be written
+     */
+    static void write(JsonWriter out, String id, String status, Object result)
+            throws IOException {
+        writeObject(out, id, status, result);
+        out.flush();
+    }
+
+    private static void writeObject(JsonWriter out, String id, String status, Object result)
+            throws IOException {
+        out.beginObject();
+        if (id != null) {
+            out.name("id").value(id);
+        }
+        out.name("status").value(status);
+        out.name("result");
+        writeValue(out, result);
+        out.endObject();
+    }
+
+    private static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Part) {
+            Part part = (Part) value;
+            writeObject(out, part.id, part.status, part.result);
+        } else if (value instanceof JsonElement) {
+            JSON.toJson((JsonElement) value, out);
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                out.name(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+            out.endObject();
+        } else if (value instanceof Collection) {
+            out.beginArray();
+            for (Object element : (Collection<?>) value) {
+                writeValue(out, element);
+            }
+            out.endArray();
         } else {
-            statusS = "failed";
+            out.value(String.valueOf(value));
         }
+    }
 
-        return gson.toJson(new Response(id, statusS, response));
+    /* the message of a failed Response for e */
+    static String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
     }
-}
\ No newline at end of file
+}
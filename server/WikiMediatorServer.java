@@ -2,26 +2,55 @@ package cpen221.mp3.server;
 import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
 import cpen221.mp3.wikimediator.WikiMediator;
-import fastily.jwiki.core.Wiki;
+import org.fastily.jwiki.core.Wiki;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 public class WikiMediatorServer {
 
     private ServerSocket wikiServer = null;
     private int port;
     private int maxNumRequests;
-    private ExecutorService executorService = null;
+    private volatile ExecutorService executorService = null;
+    private final WikiMediator wiki;
+    private volatile Dispatcher dispatcher = null;
+    private volatile SelectorLoop loop = null;
+    // How long requests took, in either kind of server:
+    private final RequestMetrics metrics = new RequestMetrics();
+    // The other servers this one merges its statistics with:
+    private final Fleet fleet = new Fleet();
+    private static final Logger LOG = Logger.getLogger(WikiMediatorServer.class.getName());
+    private static final int DEFAULT_IN_FLIGHT = 16;
+    // The most requests waiting in each lane of the non-blocking server, and
+    // the most clients waiting for a thread in the blocking server:
+    private static final int QUEUE_CAPACITY = 1024;
 
 
     /**
@@ -31,8 +60,22 @@ public class WikiMediatorServer {
      * @param n the number of concurrent requests the server can handle
      */
     public WikiMediatorServer(int port, int n) {
+        this(port, n, new WikiMediator());
+    }
+
+    /**
+     * Constructor for WikiMediatorServer that serves requests from the
+     * given WikiMediator (for example one backed by a FixtureWikiSource).
+     *
+     * @param port the port number to bind the server to
+     * @param n the number of concurrent requests the server can handle
+     * @param wiki the WikiMediator used to process every request
+     */
+    public WikiMediatorServer(int port, int n, WikiMediator wiki) {
         this.port = port;
         this.maxNumRequests = n;
+        this.wiki = wiki;
+        this.metrics.setGauges(this::gauges);
     }
 
     /**
@@ -43,16 +86,17 @@ public class WikiMediatorServer {
      **/
     public void serve() {
         // Creating a thread-pool with 'maxNumRequests' number of threads; in
-        // other words, having one thread to handle each client.
-        executorService = Executors.newFixedThreadPool(this.maxNumRequests);
+        // other words, having one thread to handle each client. At most
+        // QUEUE_CAPACITY clients wait for a thread; the others are turned away.
+        executorService = new ThreadPoolExecutor(this.maxNumRequests, this.maxNumRequests,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY));
 
         try {
-            System.out.println("Starting Server");
+            LOG.info("Starting server on port " + this.port);
             // Making a Multi-Server that listens for connections on "port".
             // The constructor for ServerSocket throws an exception if it can't
             // listen on the specified port (Hence Try-Catch Block).
             wikiServer = new ServerSocket(this.port);
-            WikiMediator wiki = new WikiMediator();
 
             // while you are listening and requests are coming:
             while (true) {
@@ -64,7 +108,6 @@ public class WikiMediatorServer {
                     // keeps listening to new incoming clients.
                     // Listening to the ServerSocket to take clients:
                   Socket clientSocket =  wikiServer.accept();
-                  System.out.println("Processing");
 
                   // Submits a value-returning task for execution and returns
                   // a Future representing the pending results of that client.
@@ -72,14 +115,151 @@ public class WikiMediatorServer {
                     // Since WikiHandler implements Runnable, you can pass an object
                     // of type WikiHandler to the ExecutorService's submit method
                     // as argument:
-                  executorService.submit(new WikiHandler(clientSocket, wiki));
+                  try {
+                      executorService.submit(new WikiHandler(clientSocket, wiki, metrics, fleet));
+                  } catch (RejectedExecutionException e) {
+                      reject(clientSocket);
+                  }
                 } catch (IOException e) {
-                    System.out.println("Client cannot connect (Error accepting client");
+                    LOG.log(Level.WARNING, "Error accepting client", e);
                 }
             }
 
         } catch (IOException e) {  // this catch block is to catch the ServerSocket exception.
-            System.out.println("Error listening to the specified port");
+            LOG.log(Level.SEVERE, "Error listening to port " + this.port, e);
+        }
+    }
+
+    /* answer a client that cannot be served now with a "failed" Response */
+    private static void reject(Socket clientSocket) {
+        try (Writer out = new OutputStreamWriter(clientSocket.getOutputStream(),
+                StandardCharsets.UTF_8)) {
+            out.write("{\"status\":\"failed\",\"result\":\"server busy\"}\n");
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Could not turn a client away", e);
+        }
+    }
+
+    /**
+     * @return for each lane of the running non-blocking server, the number
+     * of requests waiting, running, and rejected because the lane was full,
+     * keyed "LANE.waiting", "LANE.running" and "LANE.rejected"; empty if
+     * that server is not running
+     */
+    public Map<String, Long> queueDepths() {
+        Map<String, Long> depths = new LinkedHashMap<>();
+        Dispatcher dispatcher = this.dispatcher;
+        if (dispatcher != null) {
+            for (Dispatcher.Lane lane : Dispatcher.Lane.values()) {
+                depths.put(lane + ".waiting", (long) dispatcher.depth(lane));
+                depths.put(lane + ".running", (long) dispatcher.running(lane));
+                depths.put(lane + ".rejected", dispatcher.rejected(lane));
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * @return the state of the running server: for the blocking server the
+     * number of clients being served and waiting for a thread, for the
+     * non-blocking server the number of clients connected and the state of
+     * each lane (see queueDepths)
+     */
+    public Map<String, Long> gauges() {
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        ExecutorService executorService = this.executorService;
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executorService;
+            gauges.put("clients.active", (long) pool.getActiveCount());
+            gauges.put("clients.waiting", (long) pool.getQueue().size());
+        }
+        SelectorLoop loop = this.loop;
+        if (loop != null) {
+            gauges.put("connections", (long) loop.connections());
+        }
+        gauges.putAll(queueDepths());
+        return gauges;
+    }
+
+    /**
+     * Set the other servers of the fleet this server belongs to. A
+     * "mergeStats" request, which takes a limit like "zeitgeist", asks each
+     * of them for its statistics (a "digest" request) and answers
+     * zeitgeist, trending and peakLoad30s for the whole fleet. Peers that
+     * cannot be reached within two seconds are left out, and counted as
+     * "unreachable" in the result.
+     *
+     * @param peers the addresses of the other servers, not including this one
+     */
+    public void setPeers(List<InetSocketAddress> peers) {
+        this.fleet.setPeers(peers);
+    }
+
+    /**
+     * Make the statistics of this server (see gauges and the "stats"
+     * request) readable over JMX, as the MBean
+     * cpen221.mp3:type=WikiMediatorServer,port=PORT.
+     *
+     * @return true if the MBean was registered, false if it could not be
+     */
+    public boolean registerMBean() {
+        try {
+            ObjectName name = new ObjectName(
+                    "cpen221.mp3:type=WikiMediatorServer,port=" + this.port);
+            WikiStatsMBean bean = () -> new WikiHandler(null, wiki, metrics, fleet)
+                    .process(new Request(null, "stats", null));
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new StandardMBean(bean, WikiStatsMBean.class), name);
+            return true;
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Could not register the stats MBean", e);
+            return false;
+        }
+    }
+
+    /**
+     * Start a non-blocking server at the given port number, processing up
+     * to DEFAULT_IN_FLIGHT requests of each client at once.
+     *
+     * @see #serveNonBlocking(int)
+     */
+    public void serveNonBlocking() {
+        serveNonBlocking(DEFAULT_IN_FLIGHT);
+    }
+
+    /**
+     * Start a non-blocking server at the given port number. One thread
+     * watches every connection, so thousands of idle clients cost no
+     * threads, and at most n requests call the wiki at once.
+     *
+     * Requests are admitted into lanes by cost: statistics requests and
+     * cache hits, other pages and searches, and graph traversals. Each lane
+     * runs and queues its requests separately, so cheap requests never wait
+     * behind expensive ones, and graph traversals may use only half of the n
+     * permits. A request arriving when its lane already has QUEUE_CAPACITY
+     * requests waiting receives a "failed" Response at once (see
+     * queueDepths).
+     *
+     * A client keeps its connection open and sends any number of Requests,
+     * each as a single line of JSON. It receives one Response per Request,
+     * each as a single line of JSON carrying the id of its Request, as soon
+     * as that Response is ready; so a quick Response can overtake a slow
+     * one. A request with a timeout receives a "failed" Response when its
+     * timeout (in seconds) runs out first. The server closes the connection
+     * after the client shuts down its output and every Response is sent.
+     *
+     * @param maxInFlight the number of requests of one client processed at
+     *                    once; later requests are read as earlier ones finish
+     */
+    public void serveNonBlocking(int maxInFlight) {
+        try {
+            LOG.info("Starting server on port " + this.port);
+            this.dispatcher = new Dispatcher(new WikiHandler(null, wiki, metrics, fleet),
+                    this.maxNumRequests, QUEUE_CAPACITY);
+            this.loop = new SelectorLoop(this.port, this.dispatcher, maxInFlight);
+            this.loop.run();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Error listening to port " + this.port, e);
         }
     }
 
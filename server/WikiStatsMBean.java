@@ -0,0 +1,13 @@
+package cpen221.mp3.server;
+
+/**
+ * The statistics of a WikiMediatorServer, as read over JMX (see
+ * WikiMediatorServer.registerMBean).
+ */
+public interface WikiStatsMBean {
+
+    /**
+     * @return the Response to a "stats" request, as JSON
+     */
+    String getStats();
+}
@@ -0,0 +1,32 @@
+package cpen221.mp3.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheRegionTest {
+
+    @Test
+    public void prefetchIsNotCountedAsARequest() {
+        CacheRegion<String> region = new CacheRegion<>(10, 60);
+        assertEquals("text", region.prefetch("page", () -> "text"));
+        assertNull(region.prefetch("page", () -> fail("loaded twice")));
+        assertTrue(region.contains("page"));
+        assertEquals(0L, region.stats().get("hits"));
+        assertEquals(0L, region.stats().get("misses"));
+
+        assertEquals("text", region.get("page", () -> fail("not cached")));
+        assertEquals(1L, region.stats().get("hits"));
+    }
+
+    @Test
+    public void containsDoesNotChangeTheEvictionOrder() {
+        CacheRegion<String> region = new CacheRegion<>(2, 60);
+        region.put("a", "1");
+        region.put("b", "2");
+        assertTrue(region.contains("a"));
+        region.put("c", "3");
+        assertFalse(region.contains("a"));
+        assertTrue(region.contains("b"));
+    }
+}
@@ -0,0 +1,70 @@
+package cpen221.mp3.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheTest {
+
+    /* a cached object of a given size */
+    private static final class Page implements Cacheable {
+        final String id;
+        final byte[] body;
+
+        Page(String id, int size) {
+            this.id = id;
+            this.body = new byte[size];
+        }
+
+        @Override
+        public String id() {
+            return this.id;
+        }
+    }
+
+    @Test
+    public void evictedValuesCanBeCollected() throws InterruptedException {
+        Cache<Page> cache = new Cache<>(2, 3600);
+        WeakReference<Page> first = putPage(cache, "a", 1 << 20);
+        putPage(cache, "b", 16);
+        putPage(cache, "c", 16);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        // the expiry check queued for "a" must not keep its value:
+        assertTrue(collected(first), "an evicted value is still reachable");
+    }
+
+    @Test
+    public void rejectedValuesCanBeCollected() throws InterruptedException {
+        // a window of 10 and a main space of 990:
+        Cache<Page> cache = new Cache<>(100, 3600, page -> page.body.length, 1000);
+        putPage(cache, "hot", 990);
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        WeakReference<Page> cold = putPage(cache, "cold", 10);
+        // pushes "cold" out of the window, and it is used less than "hot":
+        putPage(cache, "next", 10);
+        assertEquals(1, cache.evictionCount());
+        assertNull(cache.getIfPresent("cold"));
+        assertNotNull(cache.getIfPresent("hot"));
+        assertTrue(collected(cold), "a value turned away by admission is still reachable");
+    }
+
+    private static WeakReference<Page> putPage(Cache<Page> cache, String id, int size) {
+        Page page = new Page(id, size);
+        assertTrue(cache.put(page));
+        return new WeakReference<>(page);
+    }
+
+    /* whether ref is cleared within a few collections */
+    static boolean collected(WeakReference<?> ref) throws InterruptedException {
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return ref.get() == null;
+    }
+}
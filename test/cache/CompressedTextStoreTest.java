@@ -0,0 +1,45 @@
+package cpen221.mp3.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedTextStoreTest {
+
+    @Test
+    public void storesTextsCompressed() {
+        CompressedTextStore store = new CompressedTextStore(1 << 20, 60);
+        String text = "the quick brown fox ".repeat(500);
+        assertTrue(store.put("fox", text));
+        assertEquals(text, store.get("fox"));
+        assertTrue(store.storedBytes() < store.textBytes());
+        assertNull(store.get("dog"));
+    }
+
+    @Test
+    public void compressesInTheBackground() throws InterruptedException {
+        CompressedTextStore store = new CompressedTextStore(1 << 20, 60);
+        store.putInBackground("fox", "jumps");
+        for (int i = 0; i < 500 && !store.contains("fox"); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals("jumps", store.get("fox"));
+        assertEquals(0, store.dropped());
+    }
+
+    @Test
+    public void containsDoesNotChangeTheEvictionOrder() {
+        String text = "x".repeat(10_000);
+        CompressedTextStore probe = new CompressedTextStore(1 << 20, 60);
+        probe.put("a", text);
+        long oneText = probe.storedBytes();
+
+        CompressedTextStore store = new CompressedTextStore(2 * oneText, 60);
+        store.put("a", text);
+        store.put("b", text);
+        assertTrue(store.contains("a"));
+        store.put("c", text);
+        assertFalse(store.contains("a"));
+        assertTrue(store.contains("b"));
+    }
+}
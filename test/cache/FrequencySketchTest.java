@@ -0,0 +1,55 @@
+package cpen221.mp3.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsAccesses() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("page");
+        }
+        sketch.increment("other");
+        assertEquals(5, sketch.frequency("page"));
+        assertEquals(1, sketch.frequency("other"));
+        assertEquals(0, sketch.frequency("never"));
+    }
+
+    @Test
+    public void saturatesAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("page");
+        }
+        assertEquals(15, sketch.frequency("page"));
+    }
+
+    @Test
+    public void agesCountsOnceSampleIsFull() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 12; i++) {
+            sketch.increment("old");
+        }
+        // sample size is 10 * 16 additions; fill it with other ids:
+        for (int i = 0; i < 160; i++) {
+            sketch.increment("filler " + i);
+        }
+        assertTrue(sketch.frequency("old") <= 6, "counts should have been halved");
+    }
+
+    @Test
+    public void neverUnderestimates() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int id = 0; id < 1000; id++) {
+            for (int n = 0; n < id % 8; n++) {
+                sketch.increment("id " + id);
+            }
+        }
+        for (int id = 0; id < 1000; id++) {
+            assertTrue(sketch.frequency("id " + id) >= id % 8);
+        }
+    }
+}
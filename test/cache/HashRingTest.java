@@ -0,0 +1,56 @@
+package cpen221.mp3.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashRingTest {
+
+    private static final Function<String, String> NAME = node -> node;
+
+    @Test
+    public void ownersDoNotDependOnNodeOrder() {
+        HashRing<String> ring = new HashRing<>(List.of("a:1", "b:2", "c:3"), NAME, 64);
+        HashRing<String> shuffled = new HashRing<>(List.of("c:3", "a:1", "b:2"), NAME, 64);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.ownerOf("title " + i), shuffled.ownerOf("title " + i));
+        }
+    }
+
+    @Test
+    public void spreadsKeysOverNodes() {
+        HashRing<String> ring = new HashRing<>(List.of("a:1", "b:2", "c:3", "d:4"), NAME, 128);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < 40000; i++) {
+            owned.merge(ring.ownerOf("title " + i), 1, Integer::sum);
+        }
+        assertEquals(4, owned.size());
+        for (int count : owned.values()) {
+            assertTrue(count > 6000 && count < 14000, "uneven: " + owned);
+        }
+    }
+
+    @Test
+    public void removingANodeOnlyMovesItsKeys() {
+        HashRing<String> before = new HashRing<>(List.of("a:1", "b:2", "c:3"), NAME, 128);
+        HashRing<String> after = new HashRing<>(List.of("a:1", "b:2"), NAME, 128);
+        for (int i = 0; i < 5000; i++) {
+            String key = "title " + i;
+            if (!before.ownerOf(key).equals("c:3")) {
+                assertEquals(before.ownerOf(key), after.ownerOf(key));
+            }
+        }
+    }
+
+    @Test
+    public void singleNodeOwnsEverything() {
+        HashRing<String> ring = new HashRing<>(List.of("only:1"), NAME, 8);
+        assertEquals("only:1", ring.ownerOf(""));
+        assertEquals("only:1", ring.ownerOf("anything"));
+    }
+}
@@ -0,0 +1,101 @@
+package cpen221.mp3.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PeerCacheTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(5);
+
+    private final Map<String, String> stored = new ConcurrentHashMap<>();
+    private PeerCache a;
+    private PeerCache b;
+
+    @BeforeEach
+    public void start() throws IOException {
+        List<InetSocketAddress> nodes = List.of(
+                new InetSocketAddress("127.0.0.1", freePort()),
+                new InetSocketAddress("127.0.0.1", freePort()));
+        PeerCache.Owner owner = new PeerCache.Owner() {
+            @Override
+            public String load(String key, long timeoutMillis) {
+                return stored.computeIfAbsent(key, k -> "loaded " + k);
+            }
+
+            @Override
+            public String getIfCached(String key) {
+                return stored.get(key);
+            }
+
+            @Override
+            public void put(String key, String value) {
+                stored.put(key, value);
+            }
+        };
+        this.a = PeerCache.start(nodes.get(0), nodes, owner);
+        this.b = PeerCache.start(nodes.get(1), nodes, owner);
+    }
+
+    @AfterEach
+    public void stop() throws IOException {
+        this.a.close();
+        this.b.close();
+    }
+
+    @Test
+    public void loadsFromTheOwner() {
+        String key = keyOwnedBy(this.b);
+        assertEquals("loaded " + key, this.a.get(key, TIMEOUT));
+        assertEquals(1L, this.b.stats().get("served"));
+        assertEquals(0L, this.b.stats().get("rejected"));
+    }
+
+    @Test
+    public void putsAndPeeksInBatches() {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            values.put("title " + i, "text " + i);
+        }
+        this.a.putAll(values, TIMEOUT);
+        Map<String, String> found = this.a.getAllIfCached(values.keySet(), TIMEOUT);
+        for (Map.Entry<String, String> entry : found.entrySet()) {
+            assertEquals(values.get(entry.getKey()), entry.getValue());
+        }
+        assertFalse(found.isEmpty());
+    }
+
+    @Test
+    public void overLongKeysAreNotSentAndDoNotMarkPeersDown() {
+        String key = "é".repeat(40000);
+        assertNull(this.a.get(key, TIMEOUT));
+        assertTrue(this.a.getAllIfCached(List.of(key), TIMEOUT).isEmpty());
+        assertEquals(0, ((Number) this.a.stats().get("peersDown")).intValue());
+
+        String other = keyOwnedBy(this.b);
+        assertEquals("loaded " + other, this.a.get(other, TIMEOUT));
+    }
+
+    private static String keyOwnedBy(PeerCache node) {
+        for (int i = 0; ; i++) {
+            if (node.owns("key " + i)) {
+                return "key " + i;
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
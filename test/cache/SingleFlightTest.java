@@ -0,0 +1,45 @@
+package cpen221.mp3.cache;
+
+import cpen221.mp3.wikimediator.DeadlineExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void waiterGivesUpAfterItsTimeout() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(
+                () -> flights.load("page", () -> {
+                    started.countDown();
+                    await(release);
+                    return "text";
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        long begin = System.nanoTime();
+        assertThrows(DeadlineExceededException.class, () -> flights.load("page",
+                () -> "not run", TimeUnit.MILLISECONDS.toNanos(50)));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        assertTrue(waited >= 50 && waited < 2000, "waited " + waited + " ms");
+
+        // the load itself carries on for the caller that started it:
+        release.countDown();
+        assertEquals("text", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
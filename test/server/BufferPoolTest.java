@@ -0,0 +1,36 @@
+package cpen221.mp3.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void givenBuffersComeBackCleared() {
+        ByteBuffer used = BufferPool.take();
+        assertTrue(used.isDirect());
+        assertEquals(BufferPool.BUFFER_BYTES, used.capacity());
+        used.put(new byte[100]).flip();
+        BufferPool.give(used);
+
+        // other buffers may be pooled ahead of it:
+        List<ByteBuffer> taken = new ArrayList<>();
+        boolean found = false;
+        for (int i = 0; i < 1000 && !found; i++) {
+            ByteBuffer buffer = BufferPool.take();
+            assertEquals(0, buffer.position());
+            assertEquals(BufferPool.BUFFER_BYTES, buffer.limit());
+            found = buffer == used;
+            taken.add(buffer);
+        }
+        assertTrue(found, "a given buffer was not reused");
+        for (ByteBuffer buffer : taken) {
+            BufferPool.give(buffer);
+        }
+    }
+}
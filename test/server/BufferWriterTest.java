@@ -0,0 +1,67 @@
+package cpen221.mp3.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferWriterTest {
+
+    @Test
+    public void encodesAcrossBuffers() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * BufferPool.BUFFER_BYTES; i++) {
+            text.append(i % 3 == 0 ? 'é' : 'a');
+        }
+        BufferWriter writer = new BufferWriter();
+        writer.write(text.toString());
+        List<ByteBuffer> buffers = writer.finish();
+        assertTrue(buffers.size() > 1);
+        assertEquals(text.toString(), decode(buffers));
+    }
+
+    @Test
+    public void surrogatePairAtBufferBoundary() throws IOException {
+        // one byte left in the first buffer, where the pair takes four:
+        String text = "a".repeat(BufferPool.BUFFER_BYTES - 1) + "😀" + "b";
+        BufferWriter writer = new BufferWriter();
+        writer.write(text);
+        List<ByteBuffer> buffers = writer.finish();
+        assertEquals(2, buffers.size());
+        assertEquals(text, decode(buffers));
+    }
+
+    @Test
+    public void surrogatePairSplitAcrossWrites() throws IOException {
+        String prefix = "a".repeat(BufferPool.BUFFER_BYTES - 2);
+        BufferWriter writer = new BufferWriter();
+        writer.write(prefix + "\uD83D");
+        writer.write("\uDE00b");
+        writer.write('\uD83D');
+        writer.write('\uDE01');
+        assertEquals(prefix + "😀b😁", decode(writer.finish()));
+    }
+
+    @Test
+    public void unpairedHighSurrogateIsReplaced() throws IOException {
+        BufferWriter writer = new BufferWriter();
+        writer.write("a\uD83D");
+        assertEquals("a?", decode(writer.finish()));
+    }
+
+    private static String decode(List<ByteBuffer> buffers) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : buffers) {
+            byte[] chunk = new byte[buffer.remaining()];
+            buffer.get(chunk);
+            bytes.write(chunk, 0, chunk.length);
+            BufferPool.give(buffer);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package cpen221.mp3.server;
+
+import com.google.gson.Gson;
+import cpen221.mp3.wikimediator.FixtureWikiSource;
+import cpen221.mp3.wikimediator.WikiMediator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DispatcherTest {
+
+    private static final Gson GSON = new Gson();
+
+    /* One Response received from a Dispatcher. */
+    private static final class Response {
+        final String id;
+        final String status;
+        final Object result;
+
+        Response(String id, String status, Object result) {
+            this.id = id;
+            this.status = status;
+            this.result = result;
+        }
+    }
+
+    private final BlockingQueue<Response> responses = new LinkedBlockingQueue<>();
+
+    private static Dispatcher dispatcher(Duration latency, int maxNumRequests, int queueCapacity) {
+        FixtureWikiSource source = new FixtureWikiSource(latency);
+        source.addPage("hub", "hub", List.of());
+        source.addPage("near", "near", List.of("hub"));
+        return new Dispatcher(new WikiHandler(null, new WikiMediator(source)),
+                maxNumRequests, queueCapacity);
+    }
+
+    private static Request request(String json) {
+        return GSON.fromJson(json, Request.class);
+    }
+
+    /* a getPage request, with no timeout if timeout is null */
+    private static String getPage(String id, String title, String timeout) {
+        return "{\"id\":\"" + id + "\",\"type\":\"getPage\",\"query\":\"" + title
+                + "\",\"limit\":\"1\""
+                + (timeout == null ? "" : ",\"timeout\":\"" + timeout + "\"") + "}";
+    }
+
+    private void dispatch(Dispatcher dispatcher, String json) {
+        dispatcher.dispatch(request(json), (id, status, result) ->
+                this.responses.add(new Response(id, status, result)));
+    }
+
+    private Response next() throws InterruptedException {
+        Response response = this.responses.poll(10, TimeUnit.SECONDS);
+        assertNotNull(response, "no response");
+        return response;
+    }
+
+    @Test
+    public void requestsGoToTheLaneOfTheirCost() {
+        Dispatcher dispatcher = dispatcher(Duration.ZERO, 2, 2);
+        assertEquals(Dispatcher.Lane.LOCAL, dispatcher.laneOf(request(
+                "{\"type\":\"zeitgeist\",\"limit\":\"5\"}")));
+        assertEquals(Dispatcher.Lane.FETCH, dispatcher.laneOf(request(
+                "{\"type\":\"getPage\",\"query\":\"hub\",\"limit\":\"1\"}")));
+        assertEquals(Dispatcher.Lane.GRAPH, dispatcher.laneOf(request(
+                "{\"type\":\"getConnectedPages\",\"query\":\"hub\",\"hops\":\"1\"}")));
+    }
+
+    @Test
+    public void batchesGoToTheLaneOfTheirMostExpensiveRequest() {
+        Dispatcher dispatcher = dispatcher(Duration.ZERO, 2, 2);
+        assertEquals(Dispatcher.Lane.GRAPH, dispatcher.laneOf(request("{\"type\":\"batch\","
+                + "\"requests\":[{\"type\":\"getPage\",\"query\":\"hub\",\"limit\":\"1\"},"
+                + "{\"type\":\"getConnectedPages\",\"query\":\"hub\",\"hops\":\"1\"},"
+                + "{\"type\":\"stats\"}]}")));
+        assertEquals(Dispatcher.Lane.FETCH, dispatcher.laneOf(request("{\"type\":\"batch\","
+                + "\"requests\":[{\"type\":\"stats\"},null,"
+                + "{\"type\":\"getPage\",\"query\":\"hub\",\"limit\":\"1\"}]}")));
+        assertEquals(Dispatcher.Lane.LOCAL, dispatcher.laneOf(request("{\"type\":\"batch\","
+                + "\"requests\":[{\"type\":\"stats\"},{\"type\":\"peakLoad30s\"}]}")));
+        assertEquals(Dispatcher.Lane.LOCAL, dispatcher.laneOf(request("{\"type\":\"batch\"}")));
+    }
+
+    @Test
+    public void fullQueueIsRejected() throws Exception {
+        Dispatcher dispatcher = dispatcher(Duration.ofMillis(300), 1, 1);
+        dispatch(dispatcher, getPage("1", "hub", null));
+        dispatch(dispatcher, getPage("2", "near", null));
+        dispatch(dispatcher, getPage("3", "far", null));
+
+        Response busy = next();
+        assertEquals("3", busy.id);
+        assertEquals(WikiHandler.FAILED, busy.status);
+        assertEquals("server busy", busy.result);
+        assertEquals(1, dispatcher.rejected(Dispatcher.Lane.FETCH));
+
+        assertEquals("1", next().id);
+        Response second = next();
+        assertEquals("2", second.id);
+        assertEquals(WikiHandler.SUCCESS, second.status);
+        assertEquals("near", second.result);
+    }
+
+    @Test
+    public void timedOutRequestsLeaveTheQueue() throws Exception {
+        Dispatcher dispatcher = dispatcher(Duration.ofMillis(2000), 1, 4);
+        dispatch(dispatcher, getPage("1", "hub", null));
+        dispatch(dispatcher, getPage("2", "near", "1"));
+        assertEquals(1, dispatcher.depth(Dispatcher.Lane.FETCH));
+
+        Response timedOut = next();
+        assertEquals("2", timedOut.id);
+        assertEquals(WikiHandler.FAILED, timedOut.status);
+        assertEquals("Operation timed out", timedOut.result);
+        assertEquals(0, dispatcher.depth(Dispatcher.Lane.FETCH));
+        assertEquals(1, dispatcher.running(Dispatcher.Lane.FETCH));
+
+        assertEquals("1", next().id);
+        assertNull(this.responses.poll(500, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,101 @@
+package cpen221.mp3.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import cpen221.mp3.wikimediator.FixtureWikiSource;
+import cpen221.mp3.wikimediator.StatsDigest;
+import cpen221.mp3.wikimediator.WikiMediator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FleetTest {
+
+    private WikiMediator first;
+    private WikiMediator second;
+    private WikiMediatorServer firstServer;
+    private int firstPort;
+    private int secondPort;
+
+    private static WikiMediator mediator() {
+        FixtureWikiSource source = new FixtureWikiSource();
+        for (String title : List.of("x", "y", "z")) {
+            source.addPage(title, title, List.of());
+        }
+        return new WikiMediator(source);
+    }
+
+    private static WikiMediatorServer serve(int port, WikiMediator wiki) {
+        WikiMediatorServer server = new WikiMediatorServer(port, 2, wiki);
+        Thread serving = new Thread(server::serve, "test-server-" + port);
+        serving.setDaemon(true);
+        serving.start();
+        return server;
+    }
+
+    @BeforeEach
+    public void start() throws Exception {
+        this.first = mediator();
+        this.second = mediator();
+        for (String title : List.of("x", "x", "x", "y")) {
+            this.first.getPage(title);
+        }
+        for (String title : List.of("y", "y", "y", "y", "z", "z")) {
+            this.second.getPage(title);
+        }
+        this.firstPort = TestClient.freePort();
+        this.secondPort = TestClient.freePort();
+        this.firstServer = serve(this.firstPort, this.first);
+        serve(this.secondPort, this.second);
+        // wait until the second server is up:
+        TestClient.connect(this.secondPort).close();
+    }
+
+    private JsonObject mergeStats() throws Exception {
+        try (TestClient client = TestClient.connect(this.firstPort)) {
+            client.send("{\"id\":\"m\",\"type\":\"mergeStats\",\"limit\":\"5\"}\n");
+            JsonObject response = JsonParser.parseString(client.readLine()).getAsJsonObject();
+            assertEquals(WikiHandler.SUCCESS, response.get("status").getAsString(),
+                    response.toString());
+            return response.getAsJsonObject("result");
+        }
+    }
+
+    private static List<String> strings(JsonArray array) {
+        List<String> strings = new ArrayList<>();
+        array.forEach(element -> strings.add(element.getAsString()));
+        return strings;
+    }
+
+    @Test
+    public void mergeStatsAddsUpThePeers() throws Exception {
+        this.firstServer.setPeers(List.of(new InetSocketAddress("localhost", this.secondPort)));
+        JsonObject stats = mergeStats();
+
+        StatsDigest local = this.first.digest().merge(this.second.digest());
+        assertEquals(List.of("y", "x", "z"), local.zeitgeist(5));
+        assertEquals(local.zeitgeist(5), strings(stats.getAsJsonArray("zeitgeist")));
+        assertEquals(local.trending(5, System.currentTimeMillis()),
+                strings(stats.getAsJsonArray("trending")));
+        assertEquals(local.peakLoad30s(), stats.get("peakLoad30s").getAsInt());
+        assertEquals(2, stats.get("nodes").getAsInt());
+        assertEquals(0, stats.get("unreachable").getAsInt());
+    }
+
+    @Test
+    public void unreachablePeersAreLeftOut() throws Exception {
+        this.firstServer.setPeers(List.of(
+                new InetSocketAddress("localhost", this.secondPort),
+                new InetSocketAddress("localhost", TestClient.freePort())));
+        JsonObject stats = mergeStats();
+        assertEquals(2, stats.get("nodes").getAsInt());
+        assertEquals(1, stats.get("unreachable").getAsInt());
+        assertEquals(List.of("y", "x", "z"), strings(stats.getAsJsonArray("zeitgeist")));
+    }
+}
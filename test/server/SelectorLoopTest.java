@@ -0,0 +1,213 @@
+package cpen221.mp3.server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SelectorLoopTest {
+
+    private Thread loopThread;
+
+    /* Answers every request at once, with its query as the result. */
+    private static class EchoDispatcher extends Dispatcher {
+        EchoDispatcher() {
+            super(null, 1, 1);
+        }
+
+        @Override
+        void dispatch(Request request, Reply reply) {
+            reply.send(request.getID(), WikiHandler.SUCCESS, request.getQuery());
+        }
+    }
+
+    /* Answers each request from its own thread, later requests first. */
+    private static class ReversingDispatcher extends Dispatcher {
+        ReversingDispatcher() {
+            super(null, 1, 1);
+        }
+
+        @Override
+        void dispatch(Request request, Reply reply) {
+            long delay = 200 - 10 * Long.parseLong(request.getID());
+            Thread answer = new Thread(() -> {
+                try {
+                    Thread.sleep(Math.max(0, delay));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                reply.send(request.getID(), WikiHandler.SUCCESS, request.getQuery());
+            });
+            answer.setDaemon(true);
+            answer.start();
+        }
+    }
+
+    /* Holds every request until the test answers it. */
+    private static class HoldingDispatcher extends Dispatcher {
+        final BlockingQueue<Runnable> held = new LinkedBlockingQueue<>();
+
+        HoldingDispatcher() {
+            super(null, 1, 1);
+        }
+
+        @Override
+        void dispatch(Request request, Reply reply) {
+            this.held.add(() -> reply.send(request.getID(), WikiHandler.SUCCESS, null));
+        }
+
+        /* answer the next held request, waiting up to 5s for one */
+        void release() throws InterruptedException {
+            Runnable next = this.held.poll(5, TimeUnit.SECONDS);
+            assertNotNull(next, "no request was dispatched");
+            next.run();
+        }
+    }
+
+    /* start a SelectorLoop with dispatcher, returning its port */
+    private int start(Dispatcher dispatcher, int maxInFlight) throws IOException {
+        int port = TestClient.freePort();
+        SelectorLoop loop = new SelectorLoop(port, dispatcher, maxInFlight);
+        this.loopThread = new Thread(() -> {
+            try {
+                loop.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, "test-selector-loop");
+        this.loopThread.setDaemon(true);
+        this.loopThread.start();
+        return port;
+    }
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        if (this.loopThread != null) {
+            this.loopThread.interrupt();
+            this.loopThread.join(5000);
+        }
+    }
+
+    private static JsonObject parse(String line) {
+        assertNotNull(line, "the connection closed without a response");
+        return JsonParser.parseString(line).getAsJsonObject();
+    }
+
+    @Test
+    public void requestSplitAcrossReads() throws Exception {
+        int port = start(new EchoDispatcher(), 16);
+        try (TestClient client = TestClient.connect(port)) {
+            byte[] request = "{\"id\":\"1\",\"type\":\"echo\",\"query\":\"café\"}\n"
+                    .getBytes(StandardCharsets.UTF_8);
+            // split inside the two bytes of é:
+            int split = new String(request, StandardCharsets.UTF_8).indexOf('é') + 1;
+            client.send(Arrays.copyOfRange(request, 0, split));
+            Thread.sleep(100);
+            client.send(Arrays.copyOfRange(request, split, request.length));
+            JsonObject response = parse(client.readLine());
+            assertEquals("1", response.get("id").getAsString());
+            assertEquals("café", response.get("result").getAsString());
+        }
+    }
+
+    @Test
+    public void severalRequestsInOneRead() throws Exception {
+        int port = start(new EchoDispatcher(), 16);
+        try (TestClient client = TestClient.connect(port)) {
+            client.send("{\"id\":\"1\",\"type\":\"echo\",\"query\":\"a\"}\n"
+                    + "\n"
+                    + "{\"id\":\"2\",\"type\":\"echo\",\"query\":\"b\"}\n"
+                    + "{\"id\":\"3\",\"type\":\"echo\",\"query\":\"c\"}\n");
+            Set<String> answered = new HashSet<>();
+            for (int i = 0; i < 3; i++) {
+                JsonObject response = parse(client.readLine());
+                String id = response.get("id").getAsString();
+                assertEquals(String.valueOf((char) ('a' + Integer.parseInt(id) - 1)),
+                        response.get("result").getAsString());
+                answered.add(id);
+            }
+            assertEquals(Set.of("1", "2", "3"), answered);
+        }
+    }
+
+    @Test
+    public void partialRequestOverOneMegabyteIsRejected() throws Exception {
+        int port = start(new EchoDispatcher(), 16);
+        try (TestClient client = TestClient.connect(port)) {
+            Thread sender = new Thread(() -> {
+                try {
+                    client.send("{\"id\":\"1\",\"type\":\"echo\",\"query\":\""
+                            + "x".repeat(2 << 20));
+                } catch (IOException e) {
+                    // the server stopped reading and closed the connection.
+                }
+            });
+            sender.setDaemon(true);
+            sender.start();
+            JsonObject response = parse(client.readLine());
+            assertEquals(WikiHandler.FAILED, response.get("status").getAsString());
+            assertEquals("request too large", response.get("result").getAsString());
+            assertNull(client.readLine());
+        }
+    }
+
+    @Test
+    public void pipelinedRequestsAreAnsweredWithTheirIds() throws Exception {
+        int port = start(new ReversingDispatcher(), 16);
+        try (TestClient client = TestClient.connect(port)) {
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                requests.append("{\"id\":\"").append(i)
+                        .append("\",\"type\":\"echo\",\"query\":\"q").append(i).append("\"}\n");
+            }
+            client.send(requests.toString());
+            Set<String> answered = new HashSet<>();
+            for (int i = 0; i < 10; i++) {
+                JsonObject response = parse(client.readLine());
+                String id = response.get("id").getAsString();
+                assertEquals("q" + id, response.get("result").getAsString());
+                assertTrue(answered.add(id), "answered twice: " + id);
+            }
+            assertEquals(10, answered.size());
+        }
+    }
+
+    @Test
+    public void inFlightRequestsAreCapped() throws Exception {
+        HoldingDispatcher dispatcher = new HoldingDispatcher();
+        int port = start(dispatcher, 4);
+        try (TestClient client = TestClient.connect(port)) {
+            StringBuilder requests = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                requests.append("{\"id\":\"").append(i).append("\",\"type\":\"hold\"}\n");
+            }
+            client.send(requests.toString());
+            Thread.sleep(300);
+            assertEquals(4, dispatcher.held.size());
+
+            dispatcher.release();
+            assertNotNull(client.readLine());
+            Thread.sleep(300);
+            assertEquals(4, dispatcher.held.size());
+
+            Set<String> answered = new HashSet<>();
+            for (int i = 1; i < 10; i++) {
+                dispatcher.release();
+                answered.add(parse(client.readLine()).get("id").getAsString());
+            }
+            assertEquals(9, answered.size());
+            assertEquals(0, dispatcher.held.size());
+        }
+    }
+}
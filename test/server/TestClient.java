@@ -0,0 +1,70 @@
+package cpen221.mp3.server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/* A client of a test server, sending and receiving lines of JSON. */
+final class TestClient implements Closeable {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final OutputStream out;
+
+    private TestClient(Socket socket) throws IOException {
+        this.socket = socket;
+        this.socket.setSoTimeout(10_000);
+        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+        this.out = socket.getOutputStream();
+    }
+
+    /* a port no server was listening on a moment ago */
+    static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    /* connect to a server on this machine, which may still be starting */
+    static TestClient connect(int port) throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new TestClient(new Socket("localhost", port));
+            } catch (ConnectException e) {
+                if (attempt == 200) {
+                    throw e;
+                }
+                Thread.sleep(25);
+            }
+        }
+    }
+
+    void send(String text) throws IOException {
+        send(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void send(byte[] bytes) throws IOException {
+        this.out.write(bytes);
+        this.out.flush();
+    }
+
+    /* the next line from the server, or null once it closed the connection */
+    String readLine() throws IOException {
+        return this.in.readLine();
+    }
+
+    void shutdownOutput() throws IOException {
+        this.socket.shutdownOutput();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.socket.close();
+    }
+}
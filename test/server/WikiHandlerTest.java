@@ -0,0 +1,122 @@
+package cpen221.mp3.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import cpen221.mp3.wikimediator.FixtureWikiSource;
+import cpen221.mp3.wikimediator.WikiMediator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WikiHandlerTest {
+
+    // quotes, a backslash, newlines, a control character, and characters
+    // of two, three and four UTF-8 bytes, past the end of one buffer:
+    private static final String TEXT = "\"quoted\" \\ line\nline\r\n\t\u0001 café € 😀 "
+            .repeat(2 * BufferPool.BUFFER_BYTES / 30);
+
+    private FixtureWikiSource source;
+    private int port;
+
+    @BeforeEach
+    public void start() throws IOException {
+        this.source = new FixtureWikiSource();
+        this.source.addPage("Text", TEXT, List.of());
+        this.port = TestClient.freePort();
+        WikiMediatorServer server = new WikiMediatorServer(this.port, 2,
+                new WikiMediator(this.source));
+        Thread serving = new Thread(server::serve, "test-server");
+        serving.setDaemon(true);
+        serving.start();
+    }
+
+    /* send request to the server and return its one-line response */
+    private JsonObject ask(String request) throws Exception {
+        try (TestClient client = TestClient.connect(this.port)) {
+            client.send(request + "\n");
+            String line = client.readLine();
+            assertNotNull(line, "the connection closed without a response");
+            assertNull(client.readLine(), "more than one line in the response");
+            return JsonParser.parseString(line).getAsJsonObject();
+        }
+    }
+
+    @Test
+    public void pageTextRoundTrips() throws Exception {
+        JsonObject response = ask("{\"id\":\"1\",\"type\":\"getPage\",\"query\":\"Text\",\"limit\":\"1\"}");
+        assertEquals("1", response.get("id").getAsString());
+        assertEquals(WikiHandler.SUCCESS, response.get("status").getAsString());
+        assertEquals(TEXT, response.get("result").getAsString());
+    }
+
+    @Test
+    public void invalidTimeoutIsRejected() throws Exception {
+        JsonObject response = ask(
+                "{\"id\":\"2\",\"type\":\"getPage\",\"query\":\"Text\",\"timeout\":\"soon\"}");
+        assertEquals("2", response.get("id").getAsString());
+        assertEquals(WikiHandler.FAILED, response.get("status").getAsString());
+        assertEquals("invalid timeout", response.get("result").getAsString());
+        assertEquals(0, this.source.calls());
+    }
+
+    @Test
+    public void missingBatchRequestHasNoId() throws Exception {
+        JsonObject response = ask("{\"id\":\"3\",\"type\":\"batch\",\"requests\":[null]}");
+        assertEquals(WikiHandler.SUCCESS, response.get("status").getAsString());
+        JsonArray parts = response.getAsJsonArray("result");
+        assertEquals(1, parts.size());
+        JsonObject part = parts.get(0).getAsJsonObject();
+        assertFalse(part.has("id"));
+        assertEquals(WikiHandler.FAILED, part.get("status").getAsString());
+        assertEquals("missing request", part.get("result").getAsString());
+    }
+
+    @Test
+    public void batchAnswersEachRequest() throws Exception {
+        this.source.addPage("Other", "other", List.of());
+        JsonObject response = ask("{\"id\":\"5\",\"type\":\"batch\",\"requests\":["
+                + "{\"id\":\"a\",\"type\":\"getPage\",\"query\":\"Text\"},"
+                + "{\"id\":\"b\",\"type\":\"getPage\"},"
+                + "{\"id\":\"c\",\"type\":\"getPage\",\"query\":\"  \"},"
+                + "{\"id\":\"d\",\"type\":\"getPage\",\"query\":\"Other\"},"
+                + "{\"id\":\"e\",\"type\":\"getPage\",\"query\":\"Text\"},"
+                + "{\"id\":\"f\",\"type\":\"fly\",\"query\":\"Text\",\"limit\":\"1\"}]}");
+        assertEquals("5", response.get("id").getAsString());
+        assertEquals(WikiHandler.SUCCESS, response.get("status").getAsString());
+        JsonArray parts = response.getAsJsonArray("result");
+        assertEquals(6, parts.size());
+        String[][] expected = {
+            {"a", WikiHandler.SUCCESS, TEXT},
+            {"b", WikiHandler.FAILED, "missing title"},
+            {"c", WikiHandler.SUCCESS, ""},
+            {"d", WikiHandler.SUCCESS, "other"},
+            {"e", WikiHandler.SUCCESS, TEXT},
+            {"f", WikiHandler.FAILED, "request not found"},
+        };
+        for (int i = 0; i < expected.length; i++) {
+            JsonObject part = parts.get(i).getAsJsonObject();
+            assertEquals(expected[i][0], part.get("id").getAsString());
+            assertEquals(expected[i][1], part.get("status").getAsString());
+            assertEquals(expected[i][2], part.get("result").getAsString());
+        }
+        // both pages in one call:
+        assertEquals(1, this.source.calls());
+    }
+
+    @Test
+    public void nullResultIsWrittenAsJsonNull() throws Exception {
+        StringWriter json = new StringWriter();
+        WikiHandler.write(new JsonWriter(json), "4", WikiHandler.SUCCESS, null);
+        JsonObject response = JsonParser.parseString(json.toString()).getAsJsonObject();
+        assertEquals("4", response.get("id").getAsString());
+        assertTrue(response.has("result"));
+        assertTrue(response.get("result").isJsonNull());
+    }
+}
@@ -0,0 +1,87 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadlineTest {
+
+    @Test
+    public void callsHoldAPermitWhileTheyRun() {
+        Semaphore permits = new Semaphore(1);
+        Deadline deadline = Deadline.NONE.withPermits(permits);
+        assertEquals(0, (int) deadline.call(permits::availablePermits));
+        assertEquals(1, permits.availablePermits());
+    }
+
+    @Test
+    public void givesUpWaitingForAPermitWhenItPasses() {
+        Semaphore permits = new Semaphore(0);
+        Deadline deadline = Deadline.after(Duration.ofMillis(50)).withPermits(permits);
+        assertThrows(DeadlineExceededException.class, () -> deadline.call(() -> "called"));
+        assertEquals(0, permits.availablePermits());
+    }
+
+    @Test
+    public void cancellingStopsTheWaitForAPermit() throws InterruptedException {
+        Semaphore permits = new Semaphore(0);
+        Deadline deadline = Deadline.NONE.withPermits(permits);
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            deadline.cancel();
+        });
+        canceller.start();
+        assertThrows(DeadlineExceededException.class, () -> deadline.call(() -> "called"));
+        canceller.join();
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    /* a call that, like a fixture, returns early instead of throwing when interrupted */
+    private static String swallowInterrupt() {
+        try {
+            Thread.sleep(5000);
+            return "text";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    @Test
+    public void callCutShortByCancellingThrows() throws InterruptedException {
+        Deadline deadline = Deadline.after(Duration.ofSeconds(10));
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            deadline.cancel();
+        });
+        canceller.start();
+        assertThrows(DeadlineExceededException.class,
+                () -> deadline.call(DeadlineTest::swallowInterrupt));
+        canceller.join();
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void callCutShortByAnInterruptThrows() {
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(DeadlineExceededException.class,
+                    () -> Deadline.NONE.call(DeadlineTest::swallowInterrupt));
+            // the interrupt was not the Deadline's, so it stays:
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventLogTest {
+
+    @TempDir
+    Path directory;
+
+    /* the requests replayed from a log, by query */
+    private static final class Counts implements EventLog.Replay {
+        final Map<Integer, Long> events = new HashMap<>();
+        final Map<Integer, Long> rollups = new HashMap<>();
+        int peak;
+
+        @Override
+        public void event(long time, int type, int query) {
+            this.events.merge(query, 1L, Long::sum);
+        }
+
+        @Override
+        public void rollup(long time, int type, int query, int count) {
+            this.rollups.merge(query, (long) count, Long::sum);
+        }
+
+        @Override
+        public void peak(int load) {
+            this.peak = Math.max(this.peak, load);
+        }
+
+        long total(int query) {
+            return this.events.getOrDefault(query, 0L) + this.rollups.getOrDefault(query, 0L);
+        }
+    }
+
+    @Test
+    public void replaysRequestsOfEarlierRuns() throws IOException {
+        QueryIds ids = new QueryIds(1000);
+        EventLog log = EventLog.open(this.directory, ids, 1000, new Counts());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            log.record(EventLog.GET_PAGE, ids.record(i % 2 == 0 ? "cat" : "dog", now), now);
+        }
+        log.record(EventLog.ZEITGEIST, EventLog.NO_QUERY, now);
+        log.close();
+
+        QueryIds reopened = new QueryIds(1000);
+        Counts counts = new Counts();
+        EventLog.open(this.directory, reopened, 1000, counts).close();
+        assertEquals(5, counts.total(reopened.find("cat")));
+        assertEquals(5, counts.total(reopened.find("dog")));
+        assertEquals(1, counts.total(EventLog.NO_QUERY));
+    }
+
+    @Test
+    public void compactsOldSegmentsIntoRollups() throws IOException {
+        QueryIds ids = new QueryIds(1000);
+        long now = System.currentTimeMillis();
+        // three runs of 25 requests each, with segments of 10 requests:
+        for (int run = 0; run < 3; run++) {
+            QueryIds runIds = run == 0 ? ids : new QueryIds(1000);
+            EventLog log = EventLog.open(this.directory, runIds, 10, new Counts());
+            for (int i = 0; i < 25; i++) {
+                log.record(EventLog.SIMPLE_SEARCH, runIds.record("query " + (i % 5), now), now);
+            }
+            log.close();
+        }
+
+        QueryIds reopened = new QueryIds(1000);
+        Counts counts = new Counts();
+        EventLog.open(this.directory, reopened, 10, counts).close();
+        for (int q = 0; q < 5; q++) {
+            assertEquals(15, counts.total(reopened.find("query " + q)));
+        }
+        assertFalse(counts.rollups.isEmpty(), "old segments should be rolled up");
+        assertTrue(counts.peak > 0);
+        try (var files = Files.list(this.directory)) {
+            assertTrue(files.anyMatch(file -> file.getFileName().toString().startsWith("rollup-")));
+        }
+    }
+
+    @Test
+    public void foldsOldRollupsIntoOne() throws IOException {
+        long now = System.currentTimeMillis();
+        // twelve runs of 25 requests each, with segments of 10 requests:
+        for (int run = 0; run < 12; run++) {
+            QueryIds runIds = new QueryIds(1000);
+            EventLog log = EventLog.open(this.directory, runIds, 10, new Counts());
+            for (int i = 0; i < 25; i++) {
+                log.record(EventLog.SIMPLE_SEARCH, runIds.record("query " + (i % 5), now), now);
+            }
+            log.close();
+        }
+
+        QueryIds reopened = new QueryIds(1000);
+        Counts counts = new Counts();
+        EventLog.open(this.directory, reopened, 10, counts).close();
+        for (int q = 0; q < 5; q++) {
+            assertEquals(60, counts.total(reopened.find("query " + q)));
+        }
+        assertTrue(counts.peak > 0);
+        try (var files = Files.list(this.directory)) {
+            List<String> rollups = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith("rollup-")).toList();
+            assertTrue(rollups.size() <= 9, rollups::toString);
+            assertTrue(rollups.stream().anyMatch(name -> name.matches("rollup-0-\\d+\\.log")),
+                    rollups::toString);
+        }
+    }
+
+    @Test
+    public void ignoresRecordCutShortByCrash() throws IOException {
+        QueryIds ids = new QueryIds(1000);
+        EventLog log = EventLog.open(this.directory, ids, 1000, new Counts());
+        long now = System.currentTimeMillis();
+        log.record(EventLog.GET_PAGE, ids.record("cat", now), now);
+        log.close();
+        try (var files = Files.list(this.directory)) {
+            Path segment = files.filter(f -> f.getFileName().toString().startsWith("events-"))
+                    .findFirst().orElseThrow();
+            Files.write(segment, new byte[] {1, 2, 3}, java.nio.file.StandardOpenOption.APPEND);
+        }
+
+        QueryIds reopened = new QueryIds(1000);
+        Counts counts = new Counts();
+        EventLog.open(this.directory, reopened, 1000, counts).close();
+        assertEquals(1, counts.total(reopened.find("cat")));
+    }
+}
@@ -0,0 +1,126 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrequencySummaryTest {
+
+    @Test
+    public void exactBelowCapacity() {
+        FrequencySummary summary = new FrequencySummary(10);
+        for (int key = 0; key < 5; key++) {
+            for (int n = 0; n <= key; n++) {
+                summary.increment(key);
+            }
+        }
+        List<FrequencySummary.Counted> top = summary.top(10);
+        assertEquals(5, top.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(4 - i, top.get(i).key);
+            assertEquals(5 - i, top.get(i).count);
+        }
+        assertEquals(2, summary.top(2).size());
+    }
+
+    @Test
+    public void decrementForgetsAtZero() {
+        FrequencySummary summary = new FrequencySummary(4);
+        summary.increment(7);
+        summary.increment(7);
+        summary.increment(3);
+        summary.decrement(7);
+        summary.decrement(3);
+        summary.decrement(42);
+        List<FrequencySummary.Counted> top = summary.top(10);
+        assertEquals(1, top.size());
+        assertEquals(7, top.get(0).key);
+        assertEquals(1, top.get(0).count);
+    }
+
+    @Test
+    public void forgiveTakesBackTheCountTakenOver() {
+        FrequencySummary summary = new FrequencySummary(2);
+        for (int n = 0; n < 4; n++) {
+            summary.increment(1);
+        }
+        summary.increment(2);
+        assertEquals(2, summary.increment(3));
+        summary.increment(3);
+        summary.forgive(3);
+        summary.forgive(1);
+        assertEquals(Map.of(1, 4L, 3, 2L), counts(summary));
+        summary.forgive(3);
+        assertEquals(Map.of(1, 4L, 3, 2L), counts(summary));
+    }
+
+    @Test
+    public void addMatchesRepeatedIncrements() {
+        FrequencySummary added = new FrequencySummary(8);
+        FrequencySummary incremented = new FrequencySummary(8);
+        int[][] counts = {{1, 5}, {2, 3}, {1, 2}, {3, 9}, {2, 1}};
+        for (int[] c : counts) {
+            added.add(c[0], c[1]);
+            for (int n = 0; n < c[1]; n++) {
+                incremented.increment(c[0]);
+            }
+        }
+        assertEquals(counts(incremented), counts(added));
+        assertEquals(9, added.top(1).get(0).count);
+    }
+
+    @Test
+    public void subtractMatchesRepeatedDecrements() {
+        FrequencySummary subtracted = new FrequencySummary(8);
+        FrequencySummary decremented = new FrequencySummary(8);
+        for (int key = 0; key < 4; key++) {
+            subtracted.add(key, 10 * (key + 1));
+            decremented.add(key, 10 * (key + 1));
+        }
+        int[][] amounts = {{3, 15}, {0, 10}, {2, 40}, {1, 5}, {3, 1}};
+        for (int[] a : amounts) {
+            subtracted.subtract(a[0], a[1]);
+            for (int n = 0; n < a[1]; n++) {
+                decremented.decrement(a[0]);
+            }
+        }
+        assertEquals(counts(decremented), counts(subtracted));
+        assertEquals(Map.of(1, 15L, 3, 24L), counts(subtracted));
+    }
+
+    @Test
+    public void fullTableKeepsHeavyKeysAndBoundsError() {
+        FrequencySummary summary = new FrequencySummary(16);
+        Map<Integer, Long> truth = new HashMap<>();
+        Random random = new Random(221);
+        for (int i = 0; i < 20000; i++) {
+            // keys 0-3 are heavy, the rest a long tail of one-offs:
+            int key = random.nextInt(4) == 0 ? 100 + i : random.nextInt(4);
+            truth.merge(key, 1L, Long::sum);
+            summary.increment(key);
+        }
+        Map<Integer, Long> counted = counts(summary);
+        assertEquals(16, counted.size());
+        for (int heavy = 0; heavy < 4; heavy++) {
+            assertTrue(counted.containsKey(heavy));
+            assertTrue(counted.get(heavy) >= truth.get(heavy));
+        }
+        List<FrequencySummary.Counted> top = summary.top(4);
+        for (FrequencySummary.Counted c : top) {
+            assertTrue(c.key < 4, "a one-off key outranked a heavy one");
+        }
+    }
+
+    private static Map<Integer, Long> counts(FrequencySummary summary) {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (FrequencySummary.Counted c : summary.top(Integer.MAX_VALUE)) {
+            counts.put(c.key, c.count);
+        }
+        return counts;
+    }
+}
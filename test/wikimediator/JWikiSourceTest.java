@@ -0,0 +1,49 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JWikiSourceTest {
+
+    // a reply to titles "apple", "Fruit" and "Nowhere", in formatversion 2:
+    private static final String REPLY = "{\"batchcomplete\":true,\"query\":{"
+            + "\"normalized\":[{\"fromencoded\":false,\"from\":\"apple\",\"to\":\"Apple\"}],"
+            + "\"redirects\":[{\"from\":\"Apple\",\"to\":\"Apple (fruit)\"}],"
+            + "\"pages\":["
+            + "{\"pageid\":1,\"ns\":0,\"title\":\"Apple (fruit)\",\"revisions\":"
+            + "[{\"slots\":{\"main\":{\"contentmodel\":\"wikitext\",\"content\":\"red\"}}}]},"
+            + "{\"pageid\":2,\"ns\":0,\"title\":\"Fruit\",\"revisions\":"
+            + "[{\"slots\":{\"main\":{\"contentmodel\":\"wikitext\",\"content\":\"sweet\"}}}]},"
+            + "{\"ns\":0,\"title\":\"Nowhere\",\"missing\":true}]}}";
+
+    @Test
+    public void textsAreKeyedByTheTitlesAskedFor() {
+        Map<String, String> renamed = new HashMap<>();
+        Map<String, String> found = new HashMap<>();
+        JWikiSource.readPages(JsonParser.parseString(REPLY).getAsJsonObject(), renamed, found);
+        Map<String, String> texts = JWikiSource.textsOf(
+                List.of("apple", "Fruit", "Nowhere"), renamed, found);
+        assertEquals(Map.of("apple", "red", "Fruit", "sweet", "Nowhere", ""), texts);
+    }
+
+    @Test
+    public void redirectLoopsEnd() {
+        Map<String, String> renamed = Map.of("A", "B", "B", "A");
+        Map<String, String> texts = JWikiSource.textsOf(List.of("A"), renamed, Map.of());
+        assertEquals(Map.of("A", ""), texts);
+    }
+
+    @Test
+    public void replyWithoutQueryHasNoPages() {
+        Map<String, String> found = new HashMap<>();
+        JWikiSource.readPages(new JsonObject(), new HashMap<>(), found);
+        assertTrue(found.isEmpty());
+    }
+}
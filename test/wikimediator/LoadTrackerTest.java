@@ -0,0 +1,52 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadTrackerTest {
+
+    private static final long START = 1_000_000_000L;
+
+    @Test
+    public void peakCountsRequestsInOneWindow() {
+        LoadTracker tracker = new LoadTracker(START);
+        for (int s = 0; s < 30; s++) {
+            tracker.record(START + s * 1000L);
+        }
+        assertEquals(30, tracker.peak());
+        // the first second has left the window, so the load stays at 30:
+        tracker.record(START + 30_000);
+        assertEquals(30, tracker.peak());
+        tracker.record(START + 30_500);
+        assertEquals(31, tracker.peak());
+    }
+
+    @Test
+    public void peakIsKeptAfterLoadDrops() {
+        LoadTracker tracker = new LoadTracker(START);
+        for (int i = 0; i < 100; i++) {
+            tracker.record(START);
+        }
+        tracker.record(START + 3_600_000);
+        assertEquals(100, tracker.peak());
+        tracker.restorePeak(50);
+        assertEquals(100, tracker.peak());
+        tracker.restorePeak(500);
+        assertEquals(500, tracker.peak());
+    }
+
+    @Test
+    public void forEachSecondReportsRecentSeconds() {
+        LoadTracker tracker = new LoadTracker(START);
+        tracker.record(START + 100);
+        tracker.record(START + 200);
+        tracker.record(START + 5_000);
+        Map<Long, Long> seen = new HashMap<>();
+        tracker.forEachSecond(seen::put);
+        assertEquals(Map.of(START, 2L, START + 5_000, 1L), seen);
+    }
+}
@@ -0,0 +1,99 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryIdsTest {
+
+    @Test
+    public void givesIdsInOrderOfFirstSight() {
+        QueryIds ids = new QueryIds(100);
+        assertEquals(0, ids.idOf("cat"));
+        assertEquals(1, ids.idOf("dog"));
+        assertEquals(0, ids.idOf("cat"));
+        assertEquals("dog", ids.queryOf(1));
+        assertEquals(2, ids.size());
+    }
+
+    @Test
+    public void findNeverGivesOutIds() {
+        QueryIds ids = new QueryIds(100);
+        assertEquals(QueryIds.NONE, ids.find("cat"));
+        assertEquals(0, ids.size());
+        ids.idOf("cat");
+        assertEquals(0, ids.find("cat"));
+    }
+
+    @Test
+    public void recordsCountsAndLastSeen() {
+        QueryIds ids = new QueryIds(100);
+        int cat = ids.record("cat", 10);
+        ids.record("cat", 30);
+        ids.record("cat", 20);
+        ids.add(cat, 5, 15);
+        assertEquals(8, ids.count(cat));
+        assertEquals(30, ids.lastSeen(cat));
+        assertEquals(0, ids.count(ids.idOf("dog")));
+    }
+
+    @Test
+    public void growsPastManyChunks() {
+        QueryIds ids = new QueryIds(1 << 20);
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(i, ids.idOf("query " + i));
+        }
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(i, ids.find("query " + i));
+            assertEquals("query " + i, ids.queryOf(i));
+        }
+    }
+
+    @Test
+    public void concurrentInterningAgreesOnIds() throws InterruptedException {
+        QueryIds ids = new QueryIds(1 << 20);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    ids.record("query " + i, 1);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(5000, ids.size());
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < 5000; i++) {
+            int id = ids.find("query " + i);
+            assertTrue(seen.add(id));
+            assertEquals(8, ids.count(id));
+        }
+    }
+
+    @Test
+    public void countsQueriesPastMaxIdsApproximately() {
+        QueryIds ids = new QueryIds(2);
+        ids.record("cat", 1);
+        ids.record("dog", 1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(QueryIds.NONE, ids.record("bird", 2));
+        }
+        assertEquals(QueryIds.NONE, ids.record("fish", 3));
+        assertEquals(2, ids.size());
+        assertEquals(6, ids.overflowed());
+
+        List<Map.Entry<String, Long>> top = ids.topOverflow(2);
+        assertEquals("bird", top.get(0).getKey());
+        assertEquals(5L, top.get(0).getValue());
+        assertEquals("fish", top.get(1).getKey());
+    }
+}
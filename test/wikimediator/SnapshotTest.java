@@ -0,0 +1,79 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest {
+
+    private static final int MAGIC = 0x574D5331;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void restoresCachedPages() throws IOException {
+        FixtureWikiSource source = new FixtureWikiSource();
+        source.addPage("Cat", "meow", List.of());
+        WikiMediator saved = new WikiMediator(source);
+        assertEquals("meow", saved.getPage("Cat"));
+        Path file = this.directory.resolve("snapshot");
+        Snapshot.write(saved, file);
+
+        WikiMediator restored = new WikiMediator(source);
+        Snapshot.read(restored, file);
+        long calls = source.calls();
+        assertEquals("meow", restored.getPage("Cat"));
+        assertEquals(calls, source.calls());
+    }
+
+    @Test
+    public void rejectsStringLongerThanFile() throws IOException {
+        Path file = write(out -> {
+            out.writeInt(1);                 // one page,
+            out.writeInt(Integer.MAX_VALUE); // whose key is far too long
+        });
+        assertThrows(IOException.class,
+                () -> Snapshot.read(new WikiMediator(new FixtureWikiSource()), file));
+    }
+
+    @Test
+    public void rejectsListLongerThanFile() throws IOException {
+        Path file = write(out -> {
+            out.writeInt(0);                 // no pages,
+            out.writeInt(1);                 // one search,
+            out.writeInt(1);
+            out.writeByte('q');
+            out.writeLong(60_000);
+            out.writeInt(Integer.MAX_VALUE); // with far too many results
+        });
+        assertThrows(IOException.class,
+                () -> Snapshot.read(new WikiMediator(new FixtureWikiSource()), file));
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /* a snapshot file with a valid header followed by body */
+    private Path write(Body body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(1);
+        out.writeLong(System.currentTimeMillis());
+        body.write(out);
+        out.flush();
+        Path file = this.directory.resolve("corrupt");
+        Files.write(file, bytes.toByteArray());
+        return file;
+    }
+}
@@ -0,0 +1,72 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsDigestTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void mergeAddsUpQueries() {
+        StatsDigest a = new StatsDigest();
+        a.addQuery("x", 3);
+        a.addQuery("y", 1);
+        StatsDigest b = new StatsDigest();
+        b.addQuery("y", 4);
+        b.addQuery("z", 2);
+        StatsDigest merged = a.merge(b);
+        assertEquals(List.of("y", "x", "z"), merged.zeitgeist(5));
+        assertEquals(List.of("y", "x"), merged.zeitgeist(2));
+        assertEquals(merged.zeitgeist(5), b.merge(a).zeitgeist(5));
+        assertEquals(2, merged.nodes());
+        assertEquals(3, merged.merge(new StatsDigest()).nodes());
+    }
+
+    @Test
+    public void trendingCountsOnlyTheWindow() {
+        StatsDigest a = new StatsDigest();
+        a.addRecent(NOW, "x", 2);
+        a.addRecent(NOW - 60_000, "z", 50);
+        StatsDigest b = new StatsDigest();
+        b.addRecent(NOW - 1000, "y", 1);
+        b.addRecent(NOW, "y", 2);
+        b.addRecent(NOW - 60_000, "x", 50);
+        assertEquals(List.of("y", "x"), a.merge(b).trending(5, NOW));
+    }
+
+    @Test
+    public void peakAddsUpLoadInTheSameSeconds() {
+        StatsDigest a = new StatsDigest();
+        a.addLoad(NOW, 5);
+        a.raisePeak(5);
+        StatsDigest b = new StatsDigest();
+        b.addLoad(NOW + 1000, 4);
+        b.raisePeak(4);
+        assertEquals(9, a.merge(b).peakLoad30s());
+
+        // an older peak that has left the loads still counts:
+        StatsDigest c = new StatsDigest();
+        c.raisePeak(20);
+        assertEquals(20, a.merge(b).merge(c).peakLoad30s());
+    }
+
+    @Test
+    public void survivesJson() {
+        StatsDigest digest = new StatsDigest();
+        digest.addQuery("x", 3);
+        digest.addRecent(NOW, "y", 2);
+        digest.addLoad(NOW, 7);
+        digest.raisePeak(7);
+        Gson gson = new Gson();
+        StatsDigest copy = gson.fromJson(gson.toJson(digest), StatsDigest.class);
+        assertEquals(List.of("x"), copy.zeitgeist(5));
+        assertEquals(List.of("y"), copy.trending(5, NOW));
+        assertEquals(7, copy.peakLoad30s());
+        assertEquals(1, copy.nodes());
+    }
+}
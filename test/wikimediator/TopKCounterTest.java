@@ -0,0 +1,57 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKCounterTest {
+
+    @Test
+    public void ranksAcrossStripes() {
+        TopKCounter counter = new TopKCounter(1024, 8);
+        for (int key = 0; key < 50; key++) {
+            counter.add(key, key + 1);
+        }
+        assertEquals(List.of(49, 48, 47, 46, 45), counter.top(5));
+        assertEquals(50, counter.top(100).size());
+    }
+
+    @Test
+    public void forEachVisitsEveryCount() {
+        TopKCounter counter = new TopKCounter(64, 4);
+        counter.increment(1);
+        counter.increment(1);
+        counter.add(2, 10);
+        Map<Integer, Long> seen = new HashMap<>();
+        counter.forEach(seen::put);
+        assertEquals(Map.of(1, 2L, 2, 10L), seen);
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws InterruptedException {
+        TopKCounter counter = new TopKCounter(1024, 16);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    counter.increment(i % 100);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        Map<Integer, Long> seen = new HashMap<>();
+        counter.forEach(seen::put);
+        assertEquals(100, seen.size());
+        for (long count : seen.values()) {
+            assertEquals(800, count);
+        }
+    }
+}
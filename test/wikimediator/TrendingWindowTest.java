@@ -0,0 +1,79 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrendingWindowTest {
+
+    private static final long START = 1_000_000_000L;
+
+    @Test
+    public void ranksWithinWindow() {
+        TrendingWindow window = new TrendingWindow(START, 30, 64);
+        window.increment(1, START);
+        window.increment(2, START + 1000);
+        window.increment(2, START + 2000);
+        assertEquals(List.of(2, 1), window.top(10, START + 2000));
+    }
+
+    @Test
+    public void forgetsSecondsOlderThanWindow() {
+        TrendingWindow window = new TrendingWindow(START, 30, 64);
+        for (int i = 0; i < 5; i++) {
+            window.increment(1, START);
+        }
+        window.increment(2, START + 20_000);
+        assertEquals(List.of(1, 2), window.top(10, START + 29_999));
+        assertEquals(List.of(2), window.top(10, START + 30_000));
+        assertEquals(List.of(), window.top(10, START + 60_000));
+    }
+
+    @Test
+    public void forEachSecondReportsStartOfEachSecond() {
+        TrendingWindow window = new TrendingWindow(START, 30, 64);
+        window.increment(7, START + 1500);
+        window.increment(7, START + 1700);
+        List<long[]> seen = new ArrayList<>();
+        window.forEachSecond((time, key, count) -> seen.add(new long[] {time, key, count}));
+        assertEquals(1, seen.size());
+        assertArrayEquals(new long[] {START + 1000, 7, 2}, seen.get(0));
+    }
+
+    @Test
+    public void restoreSkipsExpiredSeconds() {
+        TrendingWindow window = new TrendingWindow(START, 30, 64);
+        long now = START + 100_000;
+        window.restore(1, 3, START, now);
+        window.restore(2, 2, now - 5000, now);
+        assertEquals(List.of(2), window.top(10, now));
+    }
+
+    @Test
+    public void restoredCountsLeaveWithTheirSecond() {
+        TrendingWindow window = new TrendingWindow(START, 30, 64);
+        window.restore(1, 1_000_000, START, START);
+        window.restore(2, 3, START + 1000, START);
+        window.increment(2, START + 1000);
+        assertEquals(List.of(1, 2), window.top(10, START + 1000));
+        assertEquals(List.of(2), window.top(10, START + 30_000));
+        assertEquals(List.of(), window.top(10, START + 31_000));
+    }
+
+    @Test
+    public void countsTakenOverAgeOutOfTheWindow() {
+        TrendingWindow window = new TrendingWindow(START, 30, 1);
+        for (int i = 0; i < 3; i++) {
+            window.increment(1, START);
+        }
+        // full: 2 takes over the count of 1.
+        window.increment(2, START + 1000);
+        assertEquals(List.of(2), window.top(10, START + 30_000));
+        assertEquals(List.of(), window.top(10, START + 31_000));
+        window.increment(3, START + 32_000);
+        assertEquals(List.of(3), window.top(10, START + 32_000));
+    }
+}
@@ -0,0 +1,101 @@
+package cpen221.mp3.wikimediator;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WikiMediatorTest {
+
+    /* a hub linked from 50 pages, each linked from 10 more */
+    private static FixtureWikiSource twoLevels(Duration latency) {
+        FixtureWikiSource source = new FixtureWikiSource(latency);
+        source.addPage("hub", "hub", List.of());
+        for (int i = 0; i < 50; i++) {
+            source.addPage("near " + i, "near", List.of("hub"));
+            for (int j = 0; j < 10; j++) {
+                source.addPage("far " + i + " " + j, "far", List.of("near " + i));
+            }
+        }
+        return source;
+    }
+
+    @Test
+    public void connectedPagesStopExpandingAtMaxPages() {
+        FixtureWikiSource source = twoLevels(Duration.ofMillis(20));
+        WikiMediator mediator = new WikiMediator(source);
+        List<String> pages = mediator.getConnectedPages("hub", 2, 55);
+        assertEquals(55, pages.size());
+        assertEquals("hub", pages.get(0));
+        for (int i = 1; i <= 50; i++) {
+            assertTrue(pages.get(i).startsWith("near "));
+        }
+        // one call for the hub, and only the first few of its 50 neighbours:
+        assertTrue(source.calls() < 20, source.calls() + " calls to the wiki");
+    }
+
+    @Test
+    public void connectedPagesThrowWhenInterrupted() {
+        WikiMediator mediator = new WikiMediator(twoLevels(Duration.ofMillis(20)));
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(DeadlineExceededException.class,
+                    () -> mediator.getConnectedPages("hub", 2));
+        } finally {
+            Thread.interrupted();
+        }
+        List<String> pages = mediator.getConnectedPages("hub", 2);
+        assertEquals(1 + 50 + 500, pages.size());
+    }
+
+    @Test
+    public void getPagesRejectsNullTitlesUpFront() {
+        FixtureWikiSource source = twoLevels(Duration.ZERO);
+        WikiMediator mediator = new WikiMediator(source);
+        assertThrows(IllegalArgumentException.class,
+                () -> mediator.getPages(Arrays.asList("hub", null)));
+        assertEquals(0, source.calls());
+        assertEquals(List.of(), mediator.zeitgeist(5));
+    }
+
+    @Test
+    public void pageCutShortIsNotCached() throws InterruptedException {
+        FixtureWikiSource source = new FixtureWikiSource(Duration.ofMillis(500));
+        source.addPage("slow", "the real text", List.of());
+        WikiMediator mediator = new WikiMediator(source);
+        Deadline deadline = Deadline.after(Duration.ofMillis(100));
+        Thread timer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            // as a server does once a request times out:
+            deadline.cancel();
+        });
+        timer.start();
+        assertThrows(DeadlineExceededException.class, () -> mediator.getPage("slow", deadline));
+        timer.join();
+        assertEquals("the real text", mediator.getPage("slow"));
+        assertEquals(2, source.calls());
+    }
+
+    @Test
+    public void digestHasQueriesWithoutIds() {
+        WikiMediator mediator = new WikiMediator(new FixtureWikiSource());
+        long now = System.currentTimeMillis();
+        // use up every id:
+        for (int i = 0; mediator.queryIds.record("filler " + i, now) != QueryIds.NONE; i++) {
+            // nothing else to do.
+        }
+        for (int i = 0; i < 3; i++) {
+            mediator.getPage("  ");
+        }
+        List<String> top = mediator.zeitgeist(1);
+        assertEquals(List.of("  "), top);
+        assertEquals(top, mediator.digest().zeitgeist(1));
+    }
+}
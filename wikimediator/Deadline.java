@@ -0,0 +1,185 @@
+package cpen221.mp3.wikimediator;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public final class Deadline {
+
+    /** The deadline of work that may run for as long as it needs. */
+    public static final Deadline NONE = new Deadline(0, false, null);
+
+    private final long expiresAt;
+    private final boolean bounded;
+    private final Semaphore permits;
+    private volatile boolean cancelled;
+    private final Set<Thread> callers = new HashSet<>();
+
+    // Abstraction Function:
+    //  Deadline represents the moment after which the result of some work
+    //  (a request, and every call and traversal it makes) is no longer
+    //  wanted, so the work should stop.
+    //    - expiresAt represents that moment in System.nanoTime(), if bounded.
+    //    - cancelled represents whether the work was given up before
+    //      expiresAt, e.g. by a server timer or a client going away.
+    //    - permits, if not null, bounds the calls made through call() at
+    //      once, along with the other work sharing it: each call holds one
+    //      permit while it runs.
+    //    - callers represents the threads blocked in calls made through
+    //      call(), which are interrupted when this Deadline is cancelled.
+
+    // Representation Invariant:
+    //    - NONE is not bounded and is never cancelled.
+    //    - callers is empty once cancelled is true.
+
+    // Thread Safety Arguments:
+    //  - expiresAt and bounded are final. cancelled is volatile, so every
+    //    thread sees a cancellation at its next check.
+    //  - callers is only used while holding the lock of this Deadline, and
+    //    a thread is only interrupted while it is still in callers, so an
+    //    interrupt never reaches work done after the call returned.
+
+    private Deadline(long expiresAt, boolean bounded, Semaphore permits) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+        this.permits = permits;
+    }
+
+    /**
+     * @param timeout how long the work may run
+     * @return a Deadline that passes timeout from now
+     */
+    public static Deadline after(Duration timeout) {
+        return new Deadline(System.nanoTime() + timeout.toNanos(), true, null);
+    }
+
+    /**
+     * @param permits the permits a call() must hold while it runs, e.g. to
+     *                bound the calls made to the wiki at once
+     * @return a Deadline that passes at the same time as this one (never, for
+     * NONE), is not cancelled, and whose calls each take one of permits
+     */
+    public Deadline withPermits(Semaphore permits) {
+        return new Deadline(this.expiresAt, this.bounded, permits);
+    }
+
+    /**
+     * @return true if this Deadline has passed or was cancelled
+     */
+    public boolean expired() {
+        return this.cancelled || (this.bounded && System.nanoTime() - this.expiresAt >= 0);
+    }
+
+    /**
+     * @return the number of nanoseconds left before this Deadline passes:
+     * 0 if it has expired, Long.MAX_VALUE if it is not bounded
+     */
+    public long remainingNanos() {
+        if (this.cancelled) {
+            return 0;
+        }
+        if (!this.bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, this.expiresAt - System.nanoTime());
+    }
+
+    /**
+     * @throws DeadlineExceededException if this Deadline has expired
+     */
+    public void check() {
+        if (expired()) {
+            throw new DeadlineExceededException();
+        }
+    }
+
+    /**
+     * Give up the work now: expire this Deadline and interrupt the threads
+     * blocked in call(). Has no effect on NONE.
+     */
+    public synchronized void cancel() {
+        if (this == NONE) {
+            return;
+        }
+        this.cancelled = true;
+        for (Thread caller : this.callers) {
+            caller.interrupt();
+        }
+        this.callers.clear();
+    }
+
+    /**
+     * Make a blocking call, typically to the wiki, that is interrupted if
+     * this Deadline is cancelled while it runs.
+     *
+     * @param work the call to make
+     * @param <T> the type of the result of work
+     * @return the result of work, even if this Deadline passed while work
+     * ran, since a finished call can still be cached
+     * @throws DeadlineExceededException if this Deadline expired before the
+     * call (or before a permit was free, if it has permits), or work failed
+     * after it expired, or this Deadline was cancelled or the thread was
+     * interrupted while work ran (work may then have been cut short, so its
+     * result must not be used)
+     */
+    public <T> T call(Supplier<T> work) {
+        if (this == NONE) {
+            return finished(work.get());
+        }
+        Thread caller = Thread.currentThread();
+        synchronized (this) {
+            check();
+            this.callers.add(caller);
+        }
+        boolean acquired = false;
+        try {
+            if (this.permits != null) {
+                acquired = acquire();
+            }
+            return finished(work.get());
+        } catch (RuntimeException e) {
+            check();
+            throw e;
+        } finally {
+            if (acquired) {
+                this.permits.release();
+            }
+            synchronized (this) {
+                this.callers.remove(caller);
+            }
+            if (this.cancelled) {
+                // the interrupt was ours, not the caller's:
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /* result, unless the call that returned it may have been cut short */
+    private <T> T finished(T result) {
+        if (this.cancelled || Thread.currentThread().isInterrupted()) {
+            throw new DeadlineExceededException();
+        }
+        return result;
+    }
+
+    /* wait for one of permits until this Deadline passes; true once taken */
+    private boolean acquire() {
+        try {
+            if (!this.bounded) {
+                this.permits.acquire();
+                return true;
+            }
+            if (this.permits.tryAcquire(remainingNanos(), TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            if (!this.cancelled) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        throw new DeadlineExceededException();
+    }
+}
@@ -0,0 +1,15 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown by work that stops because its Deadline passed or was cancelled.
+ * It is a CancellationException, so a load shared through a SingleFlight
+ * is retried by the callers whose own deadlines have not passed.
+ */
+public class DeadlineExceededException extends CancellationException {
+
+    public DeadlineExceededException() {
+        super("deadline exceeded");
+    }
+}
@@ -0,0 +1,600 @@
+package cpen221.mp3.wikimediator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*
+ * An append-only log of the requests made to a WikiMediator, kept as files
+ * of big-endian fields in one directory:
+ *   queries.dict   int DICTIONARY, int VERSION, then per query id (0, 1, ...):
+ *                    int byte length, UTF-8 bytes
+ *   events-N.log   int EVENTS, int VERSION, then per request:
+ *                    long time (milliseconds since 1970), int type,
+ *                    int query id or NO_QUERY
+ *   rollup-N.log   int ROLLUP, int VERSION, then per minute, type and query
+ *                  of segment N:
+ *                    long start of the minute, int type, int query id or
+ *                    NO_QUERY, int count
+ *                  and one record of type PEAK, whose count is the largest
+ *                  number of requests of segment N in WINDOW_SECONDS seconds
+ *   rollup-F-L.log the same, per hour instead of per minute, for segments F
+ *                  to L, and with the largest peak of those segments
+ * A new segment is started on every open and every segmentRecords requests;
+ * all but the newest KEEP_SEGMENTS segments are compacted into rollups, in
+ * the background. Once there are more than 2 * KEEP_ROLLUPS rollups, all
+ * but the newest KEEP_ROLLUPS are folded into one hourly rollup, so the
+ * number of files stays bounded and replay reads one record per hour, type
+ * and query for old requests.
+ */
+final class EventLog implements Closeable {
+
+    // The types of request recorded:
+    static final int SIMPLE_SEARCH = 0;
+    static final int GET_PAGE = 1;
+    static final int CONNECTED_PAGES = 2;
+    static final int ZEITGEIST = 3;
+    static final int TRENDING = 4;
+    static final int PEAK_LOAD = 5;
+    static final int NO_QUERY = QueryIds.NONE;
+    static final long SEGMENT_RECORDS = 1 << 20;
+    private static final int PEAK = -1;
+    private static final int DICTIONARY = 0x574D5144; // "WMQD"
+    private static final int EVENTS = 0x574D4556; // "WMEV"
+    private static final int ROLLUP = 0x574D5255; // "WMRU"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 16;
+    private static final int ROLLUP_BYTES = 20;
+    private static final int BUFFER_RECORDS = 8192;
+    private static final int FLUSH_BYTES = BUFFER_RECORDS / 2 * RECORD_BYTES;
+    private static final long FLUSH_MILLIS = 200;
+    private static final int KEEP_SEGMENTS = 2;
+    private static final Logger LOG = Logger.getLogger(EventLog.class.getName());
+    private static final int KEEP_ROLLUPS = 4;
+    private static final long MINUTE_MILLIS = 60_000;
+    private static final long HOUR_MILLIS = 3_600_000;
+    private static final Pattern SEGMENT =
+            Pattern.compile("(events|rollup)-(\\d+)(?:-(\\d+))?\\.log");
+
+    private final Path directory;
+    private final QueryIds ids;
+    private final long segmentRecords;
+    private final FileChannel dictionary;
+    private final Thread writer;
+    private final ExecutorService compactor;
+    private ByteBuffer pending = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_RECORDS * RECORD_BYTES);
+    private long dropped;
+    private boolean closed;
+    // Only used by writer:
+    private FileChannel segment;
+    private int segmentNumber;
+    private long segmentWritten;
+    private int savedQueries;
+
+    // Abstraction Function:
+    //  EventLog represents the requests made to a WikiMediator in this run
+    //  and in earlier runs that logged to directory, in the format above.
+    //    - ids represents the query of every id in the log (the ids of the
+    //      WikiMediator); ids 0 to savedQueries - 1 are already in the
+    //      dictionary file.
+    //    - pending holds the requests recorded but not yet handed to writer;
+    //      spare is the buffer writer is writing, or an empty one.
+    //    - segment is the open file events-segmentNumber.log, which holds
+    //      segmentWritten requests.
+    //    - dropped represents the number of requests not logged because
+    //      pending was full.
+    //    - compactor compacts the segments no longer kept, and folds the
+    //      rollups, one at a time in the order writer asks for them.
+
+    // Representation Invariant:
+    //    - segmentRecords > 0, 0 <= segmentWritten <= segmentRecords
+    //    - pending and spare each hold a whole number of records
+    //    - 0 <= savedQueries <= ids.size()
+    //    - the dictionary file holds exactly savedQueries queries, so every
+    //      id in a segment refers to a query saved before it
+
+    // Thread Safety Arguments:
+    //  - pending, spare (when swapped), dropped and closed are guarded by
+    //    the lock of this EventLog, which a request only holds to copy 16
+    //    bytes, so requests never wait for the disk.
+    //  - segment, segmentNumber, segmentWritten, savedQueries, the
+    //    dictionary channel and the buffer being written are confined to the
+    //    writer thread until close has joined it.
+    //  - ids is thread safe (see QueryIds).
+    //  - Only compactor changes the rollups and the segments older than the
+    //    one open, which writer no longer touches. close waits for writer,
+    //    the only thread handing it work, and then for compactor.
+
+    /* The file rolling up segments first to last, see the format above. */
+    private static final class Rollup {
+        final int first;
+        final int last;
+
+        Rollup(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        Path file(Path directory) {
+            return directory.resolve(this.first == this.last ? "rollup-" + this.first + ".log"
+                    : "rollup-" + this.first + "-" + this.last + ".log");
+        }
+    }
+
+    /* Receives the requests of a log, see open. */
+    interface Replay {
+        /* one request, from a segment; query is an id of ids or NO_QUERY */
+        void event(long time, int type, int query);
+
+        /* count requests in the minute starting at time, from a rollup */
+        void rollup(long time, int type, int query, int count);
+
+        /* the peak load of a compacted segment */
+        void peak(int load);
+    }
+
+    /**
+     * Open the log in directory, creating it if it does not exist. Every
+     * request logged there before is passed to replay first, oldest first,
+     * one segment at a time: nothing but the dictionary is held in memory.
+     *
+     * @param directory the directory of the log
+     * @param ids the ids to log queries with; must not have given out any
+     *            id yet, as it is filled with the ids of the log
+     * @param segmentRecords the number of requests in a segment, > 0
+     * @param replay receives the requests already logged
+     * @return the log, ready to record requests
+     * @throws IOException if the log cannot be read or created
+     */
+    static EventLog open(Path directory, QueryIds ids, long segmentRecords, Replay replay)
+            throws IOException {
+        if (ids.size() != 0) {
+            throw new IllegalStateException("ids already in use");
+        }
+        Files.createDirectories(directory);
+        FileChannel dictionary = readDictionary(directory.resolve("queries.dict"), ids);
+
+        TreeSet<Integer> segments = new TreeSet<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher m = SEGMENT.matcher(file.getFileName().toString());
+                if (m.matches() && m.group(1).equals("events")) {
+                    segments.add(Integer.parseInt(m.group(2)));
+                }
+            });
+        }
+        TreeMap<Integer, Rollup> rollups = rollups(directory);
+        // a compaction that was interrupted after writing its rollup:
+        for (Rollup rollup : rollups.values()) {
+            for (int number : new TreeSet<>(segments.subSet(rollup.first, true,
+                    rollup.last, true))) {
+                Files.delete(segmentFile(directory, number));
+                segments.remove(number);
+            }
+        }
+        int next = 1 + Math.max(segments.isEmpty() ? -1 : segments.last(),
+                rollups.isEmpty() ? -1 : rollups.lastEntry().getValue().last);
+        for (int number : new TreeSet<>(segments.headSet(next - KEEP_SEGMENTS, true))) {
+            compact(directory, number);
+            segments.remove(number);
+            rollups.put(number, new Rollup(number, number));
+        }
+
+        TreeSet<Integer> all = new TreeSet<>(segments);
+        all.addAll(rollups.keySet());
+        for (int number : all) {
+            Rollup rollup = rollups.get(number);
+            if (rollup != null) {
+                replayRollup(rollup.file(directory), ids, replay);
+            } else {
+                replaySegment(segmentFile(directory, number), ids, replay);
+            }
+        }
+        return new EventLog(directory, ids, segmentRecords, dictionary, next);
+    }
+
+    private EventLog(Path directory, QueryIds ids, long segmentRecords,
+                     FileChannel dictionary, int segmentNumber) throws IOException {
+        this.directory = directory;
+        this.ids = ids;
+        this.segmentRecords = segmentRecords;
+        this.dictionary = dictionary;
+        this.savedQueries = ids.size();
+        this.segmentNumber = segmentNumber;
+        this.segment = createSegment(directory, segmentNumber);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "wiki-event-log-compact");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.compactor.execute(() -> compactInBackground(-1));
+        this.writer = new Thread(this::writeLoop, "wiki-event-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Log one request. Never waits for the disk and never allocates: the
+     * request is written by a background thread within FLUSH_MILLIS, or
+     * dropped if that thread has fallen BUFFER_RECORDS requests behind.
+     *
+     * @param type the type of the request
+     * @param query the id in ids of the query or title of the request, or
+     *              NO_QUERY if it has none
+     * @param time the time of the request in milliseconds since January 1 1970
+     */
+    void record(int type, int query, long time) {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            if (this.pending.remaining() < RECORD_BYTES) {
+                this.dropped++;
+                return;
+            }
+            this.pending.putLong(time).putInt(type).putInt(query);
+            if (this.pending.position() >= FLUSH_BYTES) {
+                notify();
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests not logged because the disk could not
+     * keep up
+     */
+    synchronized long dropped() {
+        return this.dropped;
+    }
+
+    /**
+     * Write the requests recorded so far and close the log. Requests
+     * recorded afterwards are ignored; closing it again does nothing.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            this.closed = true;
+            notifyAll();
+        }
+        try {
+            this.writer.join();
+            this.compactor.shutdown();
+            this.compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!this.dictionary.isOpen()) {
+            // already closed.
+            return;
+        }
+        try {
+            this.segment.force(false);
+            this.dictionary.force(false);
+        } finally {
+            this.segment.close();
+            this.dictionary.close();
+        }
+    }
+
+    private void writeLoop() {
+        boolean done = false;
+        while (!done) {
+            ByteBuffer full;
+            synchronized (this) {
+                if (!this.closed && this.pending.position() < FLUSH_BYTES) {
+                    try {
+                        wait(FLUSH_MILLIS);
+                    } catch (InterruptedException e) {
+                        this.closed = true;
+                    }
+                }
+                full = this.pending;
+                this.pending = this.spare;
+                this.spare = full;
+                done = this.closed;
+            }
+            try {
+                write(full.flip());
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not write event log", e);
+            }
+            full.clear();
+        }
+    }
+
+    /* append batch to the segments, after the queries it refers to */
+    private void write(ByteBuffer batch) throws IOException {
+        if (!batch.hasRemaining()) {
+            return;
+        }
+        writeQueries();
+        int limit = batch.limit();
+        while (batch.position() < limit) {
+            if (this.segmentWritten == this.segmentRecords) {
+                rotate();
+            }
+            long room = (this.segmentRecords - this.segmentWritten) * RECORD_BYTES;
+            int end = (int) Math.min(limit, batch.position() + room);
+            batch.limit(end);
+            this.segmentWritten += batch.remaining() / RECORD_BYTES;
+            while (batch.hasRemaining()) {
+                this.segment.write(batch);
+            }
+            batch.limit(limit);
+        }
+    }
+
+    /* append the queries given ids since the last call to the dictionary */
+    private void writeQueries() throws IOException {
+        int known = this.ids.size();
+        if (known == this.savedQueries) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int id = this.savedQueries; id < known; id++) {
+            byte[] query = this.ids.queryOf(id).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(query.length);
+            out.write(query);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            this.dictionary.write(buffer);
+        }
+        this.savedQueries = known;
+    }
+
+    /* start the next segment, and have the ones no longer kept compacted */
+    private void rotate() throws IOException {
+        this.segment.close();
+        this.segmentNumber++;
+        this.segment = createSegment(this.directory, this.segmentNumber);
+        this.segmentWritten = 0;
+        int old = this.segmentNumber - KEEP_SEGMENTS;
+        if (old >= 0) {
+            this.compactor.execute(() -> compactInBackground(old));
+        }
+    }
+
+    /* compact segment number, if it is not already (or -1 for none), then fold */
+    private void compactInBackground(int number) {
+        try {
+            if (number >= 0 && Files.exists(segmentFile(this.directory, number))) {
+                compact(this.directory, number);
+            }
+            fold(this.directory);
+        } catch (IOException e) {
+            // left for the next compaction, or the next open.
+            LOG.log(Level.WARNING, "Could not compact event log", e);
+        }
+    }
+
+    private static Path segmentFile(Path directory, int number) {
+        return directory.resolve("events-" + number + ".log");
+    }
+
+    /* the rollups of directory by first segment, deleting those inside another */
+    private static TreeMap<Integer, Rollup> rollups(Path directory) throws IOException {
+        List<Rollup> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher m = SEGMENT.matcher(file.getFileName().toString());
+                if (m.matches() && m.group(1).equals("rollup")) {
+                    int first = Integer.parseInt(m.group(2));
+                    found.add(new Rollup(first,
+                            m.group(3) == null ? first : Integer.parseInt(m.group(3))));
+                }
+            });
+        }
+        // widest first, so a fold interrupted before deleting what it
+        // folded leaves only the folded rollup:
+        found.sort((a, b) -> Integer.compare(b.last - b.first, a.last - a.first));
+        TreeMap<Integer, Rollup> rollups = new TreeMap<>();
+        for (Rollup rollup : found) {
+            Map.Entry<Integer, Rollup> before = rollups.floorEntry(rollup.last);
+            if (before != null && before.getValue().last >= rollup.first) {
+                Files.delete(rollup.file(directory));
+            } else {
+                rollups.put(rollup.first, rollup);
+            }
+        }
+        return rollups;
+    }
+
+    private static FileChannel createSegment(Path directory, int number) throws IOException {
+        FileChannel channel = FileChannel.open(segmentFile(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(EVENTS).putInt(VERSION);
+        channel.write(header.flip());
+        return channel;
+    }
+
+    /* read the queries of the dictionary into ids, dropping a partly written last one */
+    private static FileChannel readDictionary(Path file, QueryIds ids) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(DICTIONARY).putInt(VERSION);
+            channel.write(header.flip());
+            return channel;
+        }
+        MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (in.remaining() < HEADER_BYTES || in.getInt() != DICTIONARY
+                || in.getInt() != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a query dictionary");
+        }
+        int end = in.position();
+        while (in.remaining() >= 4) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            if (ids.idOf(new String(bytes, StandardCharsets.UTF_8)) == QueryIds.NONE) {
+                // ids is full; the queries past it cannot be counted anyway.
+                break;
+            }
+            end = in.position();
+        }
+        channel.truncate(end);
+        channel.position(end);
+        return channel;
+    }
+
+    /* id, if it is an id of ids */
+    private static int checked(QueryIds ids, int id) {
+        return id >= 0 && id < ids.size() ? id : NO_QUERY;
+    }
+
+    /* the records of a file of the given kind, or throws if it is not one */
+    private static MappedByteBuffer records(Path file, int magic) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_BYTES || in.getInt() != magic
+                    || in.getInt() != VERSION) {
+                throw new IOException(file + " is not part of an event log");
+            }
+            return in;
+        }
+    }
+
+    private static void replaySegment(Path file, QueryIds ids, Replay replay)
+            throws IOException {
+        MappedByteBuffer in = records(file, EVENTS);
+        // a record cut short by a crash is ignored:
+        while (in.remaining() >= RECORD_BYTES) {
+            long time = in.getLong();
+            int type = in.getInt();
+            replay.event(time, type, checked(ids, in.getInt()));
+        }
+    }
+
+    private static void replayRollup(Path file, QueryIds ids, Replay replay)
+            throws IOException {
+        MappedByteBuffer in = records(file, ROLLUP);
+        while (in.remaining() >= ROLLUP_BYTES) {
+            long time = in.getLong();
+            int type = in.getInt();
+            int id = in.getInt();
+            int count = in.getInt();
+            if (type == PEAK) {
+                replay.peak(count);
+            } else {
+                replay.rollup(time, type, checked(ids, id), count);
+            }
+        }
+    }
+
+    /* replace segment number by its rollup */
+    private static void compact(Path directory, int number) throws IOException {
+        // minute -> (type, query id) -> count:
+        TreeMap<Long, Map<Long, long[]>> minutes = new TreeMap<>();
+        LoadTracker load = null;
+        MappedByteBuffer in = records(segmentFile(directory, number), EVENTS);
+        while (in.remaining() >= RECORD_BYTES) {
+            long time = in.getLong();
+            long typeAndQuery = in.getLong();
+            if (load == null) {
+                load = new LoadTracker(time);
+            }
+            load.record(time);
+            count(minutes, time - Math.floorMod(time, MINUTE_MILLIS), typeAndQuery, 1);
+        }
+        writeRollup(new Rollup(number, number).file(directory), minutes,
+                load == null ? 0 : load.peak());
+        Files.delete(segmentFile(directory, number));
+    }
+
+    /* replace all but the newest KEEP_ROLLUPS rollups by one, per hour */
+    private static void fold(Path directory) throws IOException {
+        List<Rollup> rollups = new ArrayList<>(rollups(directory).values());
+        if (rollups.size() <= 2 * KEEP_ROLLUPS) {
+            return;
+        }
+        List<Rollup> old = rollups.subList(0, rollups.size() - KEEP_ROLLUPS);
+        // hour -> (type, query id) -> count:
+        TreeMap<Long, Map<Long, long[]>> hours = new TreeMap<>();
+        int peak = 0;
+        for (Rollup rollup : old) {
+            MappedByteBuffer in = records(rollup.file(directory), ROLLUP);
+            while (in.remaining() >= ROLLUP_BYTES) {
+                long time = in.getLong();
+                long typeAndQuery = in.getLong();
+                int count = in.getInt();
+                if ((int) (typeAndQuery >> 32) == PEAK) {
+                    peak = Math.max(peak, count);
+                } else {
+                    count(hours, time - Math.floorMod(time, HOUR_MILLIS), typeAndQuery, count);
+                }
+            }
+        }
+        writeRollup(new Rollup(old.get(0).first, old.get(old.size() - 1).last).file(directory),
+                hours, peak);
+        for (Rollup rollup : old) {
+            Files.delete(rollup.file(directory));
+        }
+    }
+
+    private static void count(TreeMap<Long, Map<Long, long[]>> periods, long start,
+                              long typeAndQuery, long count) {
+        periods.computeIfAbsent(start, p -> new HashMap<>())
+                .computeIfAbsent(typeAndQuery, k -> new long[1])[0] += count;
+    }
+
+    /* write the counts of each period (start -> (type, query id) -> count) to file */
+    private static void writeRollup(Path file, TreeMap<Long, Map<Long, long[]>> periods,
+                                    int peak) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(ROLLUP);
+            out.writeInt(VERSION);
+            for (Map.Entry<Long, Map<Long, long[]>> period : periods.entrySet()) {
+                for (Map.Entry<Long, long[]> counted : period.getValue().entrySet()) {
+                    // counts too large for an int take several records:
+                    for (long left = counted.getValue()[0]; left > 0; left -= Integer.MAX_VALUE) {
+                        out.writeLong(period.getKey());
+                        out.writeLong(counted.getKey());
+                        out.writeInt((int) Math.min(left, Integer.MAX_VALUE));
+                    }
+                }
+            }
+            out.writeLong(periods.isEmpty() ? 0 : periods.firstKey());
+            out.writeInt(PEAK);
+            out.writeInt(NO_QUERY);
+            out.writeInt(peak);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
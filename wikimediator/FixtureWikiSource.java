@@ -0,0 +1,208 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FixtureWikiSource implements WikiSource {
+
+    private final ConcurrentSkipListMap<String, Page> pages = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Set<String>> backlinks = new ConcurrentHashMap<>();
+    private final long latencyNanos;
+    private final AtomicLong calls = new AtomicLong();
+
+    // Abstraction Function:
+    //  FixtureWikiSource represents a small wiki held in memory, used to run
+    //  WikiMediator without network access.
+    //    - pages maps the title of every page to its text and the titles it
+    //      links to, sorted by title.
+    //    - backlinks maps a title to the titles of the pages linking to it.
+    //    - latencyNanos represents a synthetic delay added to every call, to
+    //      stand in for the round trip to a real wiki.
+    //    - calls represents the number of calls made to this source.
+
+    // Representation Invariant:
+    //    - t is in backlinks.get(u) iff u is in pages.get(t).links
+    //    - latencyNanos >= 0
+
+    // Thread Safety Arguments:
+    //  - pages and backlinks are concurrent maps (Strategy 3). Page objects
+    //    are never changed once they are in pages (Strategy 2); addPage
+    //    replaces them instead. addPage is synchronized, so backlinks are
+    //    always updated together with pages.
+    //  - calls is atomic; latencyNanos is final.
+
+    /* One page of the fixture, stored as it is written to disk. */
+    private static final class Page {
+        final String text;
+        final List<String> links;
+
+        Page(String text, List<String> links) {
+            this.text = text;
+            this.links = links;
+        }
+    }
+
+    private static final Type FILE_TYPE = new TypeToken<Map<String, Page>>() { }.getType();
+
+    /**
+     * Create an empty fixture with no synthetic latency.
+     */
+    public FixtureWikiSource() {
+        this(Duration.ZERO);
+    }
+
+    /**
+     * Create an empty fixture.
+     *
+     * @param latency the delay added to every call
+     */
+    public FixtureWikiSource(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    /**
+     * Load a fixture written by save.
+     *
+     * @param file the fixture file, a JSON object from each title to its
+     *             "text" and "links"
+     * @param latency the delay added to every call
+     * @return the fixture stored in file
+     * @throws IOException if file cannot be read
+     */
+    public static FixtureWikiSource load(Path file, Duration latency) throws IOException {
+        FixtureWikiSource source = new FixtureWikiSource(latency);
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Map<String, Page> stored = new Gson().fromJson(reader, FILE_TYPE);
+            for (Map.Entry<String, Page> e : stored.entrySet()) {
+                Page page = e.getValue();
+                source.addPage(e.getKey(), page.text == null ? "" : page.text,
+                        page.links == null ? List.of() : page.links);
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Write every page of this fixture to a file that load can read.
+     *
+     * @param file the file to write
+     * @throws IOException if file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            new Gson().toJson(new TreeMap<>(this.pages), FILE_TYPE, writer);
+        }
+    }
+
+    /**
+     * Add a page to this fixture, replacing any page with the same title.
+     *
+     * @param title the title of the page
+     * @param text the text of the page
+     * @param links the titles the page links to
+     */
+    public synchronized void addPage(String title, String text, List<String> links) {
+        Page old = this.pages.put(title, new Page(text, List.copyOf(links)));
+        if (old != null) {
+            for (String link : old.links) {
+                this.backlinks.getOrDefault(link, Collections.emptySet()).remove(title);
+            }
+        }
+        for (String link : links) {
+            this.backlinks.computeIfAbsent(link, k -> ConcurrentHashMap.newKeySet()).add(title);
+        }
+    }
+
+    /**
+     * @return the number of calls made to this source so far
+     */
+    public long calls() {
+        return this.calls.get();
+    }
+
+    @Override
+    public List<String> allPages(String prefix, int limit) {
+        simulateLatency();
+        List<String> result = new ArrayList<>();
+        for (String title : this.pages.tailMap(prefix).keySet()) {
+            if (result.size() >= limit || !title.startsWith(prefix)) {
+                break;
+            }
+            result.add(title);
+        }
+        return result;
+    }
+
+    @Override
+    public String getPageText(String title) {
+        simulateLatency();
+        Page page = this.pages.get(title);
+        return page == null ? "" : page.text;
+    }
+
+    @Override
+    public Map<String, String> getPageTexts(Collection<String> titles) {
+        simulateLatency();
+        Map<String, String> texts = new HashMap<>();
+        for (String title : titles) {
+            Page page = this.pages.get(title);
+            texts.put(title, page == null ? "" : page.text);
+        }
+        return texts;
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title) {
+        simulateLatency();
+        return new ArrayList<>(this.backlinks.getOrDefault(title, Collections.emptySet()));
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        simulateLatency();
+        String needle = query.toLowerCase(Locale.ROOT);
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Page> e : this.pages.entrySet()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (e.getKey().toLowerCase(Locale.ROOT).contains(needle)
+                    || e.getValue().text.toLowerCase(Locale.ROOT).contains(needle)) {
+                result.add(e.getKey());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> getLinksOnPage(String title) {
+        simulateLatency();
+        Page page = this.pages.get(title);
+        return page == null ? new ArrayList<>() : new ArrayList<>(page.links);
+    }
+
+    private void simulateLatency() {
+        this.calls.incrementAndGet();
+        if (this.latencyNanos > 0) {
+            try {
+                Thread.sleep(this.latencyNanos / 1_000_000, (int) (this.latencyNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                // keep the interrupt for the caller to notice.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class FrequencySummary {
+
+    private final int capacity;
+    // Open-addressing index of the Nodes by key:
+    private final int[] keys;
+    private final Node[] slots;
+    private int size;
+    private final int shift;
+    private Bucket highest;
+    private Bucket lowest;
+    // Nodes and Buckets no longer in use, linked through next and lower:
+    private Node spareNodes;
+    private Bucket spareBuckets;
+    private static final int EMPTY = -1;
+
+    // Abstraction Function:
+    //  FrequencySummary represents a bounded table of approximate counts of
+    //  keys (the ids of queries, see QueryIds), kept in the "stream-summary"
+    //  layout of the Space-Saving algorithm so that counts can be raised,
+    //  lowered and ranked in O(1) per step.
+    //    - capacity represents the maximum number of keys being counted.
+    //      When a new key arrives while the table is full, the key with the
+    //      smallest count is forgotten and the new key takes over its count
+    //      (plus one), so a key's count can overestimate its true count by
+    //      at most the count it took over, which its Node keeps as error
+    //      until the error is forgiven.
+    //    - keys and slots map every counted key to its Node: slots[i] is
+    //      the Node of keys[i], found by linear probing from slotOf(key).
+    //      size is the number of keys counted, and shift is 32 minus the
+    //      number of bits of a slot index.
+    //    - highest and lowest represent the ends of a doubly-linked list of
+    //      Buckets, sorted by count from highest to lowest. Every Node sits
+    //      in the Bucket whose count is the count of its key.
+    //    - spareNodes and spareBuckets are kept for reuse, so that counting
+    //      allocates nothing once capacity keys have been seen.
+
+    // Representation Invariant:
+    //    - capacity > 0, 0 <= size <= capacity
+    //    - keys.length == slots.length is a power of two >= 2 * capacity
+    //    - keys[i] == EMPTY iff slots[i] == null
+    //    - no EMPTY slot lies between slotOf(keys[i]) and i
+    //    - every Bucket holds at least one Node, and bucket counts are
+    //      strictly decreasing from highest to lowest and all > 0
+    //    - 0 <= the error of every Node <= the count of its Bucket
+    //    - highest == null iff lowest == null iff size == 0
+
+    // Thread Safety Arguments:
+    //  FrequencySummary is not thread safe. Every caller guards it with its
+    //  own lock (see TopKCounter and TrendingWindow).
+
+
+    /* One key and the bucket (count) it is in. */
+    private static final class Node {
+        int key;
+        long error;
+        Bucket bucket;
+        Node previous;
+        Node next;
+    }
+
+    /* All the keys that share one count. */
+    private static final class Bucket {
+        long count;
+        Bucket higher;
+        Bucket lower;
+        Node first;
+    }
+
+    /* A key along with its count, as reported by top. */
+    static final class Counted {
+        final int key;
+        final long count;
+
+        Counted(int key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+
+    /**
+     * @param capacity the maximum number of distinct keys to count, > 0
+     */
+    FrequencySummary(int capacity) {
+        this.capacity = capacity;
+        int length = Integer.highestOneBit(Math.max(1, 2 * capacity - 1)) << 1;
+        this.keys = new int[length];
+        this.slots = new Node[length];
+        this.shift = Integer.numberOfLeadingZeros(length) + 1;
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    /**
+     * Count one more occurrence of key. Allocates nothing once capacity
+     * keys have been counted.
+     *
+     * @param key a key >= 0
+     * @return the key forgotten to make room for key, or -1 if none was
+     */
+    int increment(int key) {
+        Node node = find(key);
+        if (node != null) {
+            moveUp(node);
+            return EMPTY;
+        }
+        if (this.size < this.capacity) {
+            node = newNode(key);
+            Bucket one = this.lowest;
+            if (one == null || one.count != 1) {
+                one = insertBucket(1, this.lowest, null);
+            }
+            attach(node, one);
+            return EMPTY;
+        }
+        // full: the key with the smallest count gives its place to key.
+        node = this.lowest.first;
+        int forgotten = node.key;
+        remove(forgotten);
+        node.key = key;
+        node.error = this.lowest.count;
+        put(node);
+        moveUp(node);
+        return forgotten;
+    }
+
+    /**
+     * Count amount more occurrences of key, for example when restoring
+     * counts from a snapshot. Takes time proportional to the number of
+     * distinct counts passed over.
+     *
+     * @param key a key >= 0
+     * @param amount the number of occurrences, > 0
+     * @return the key forgotten to make room for key, or -1 if none was
+     */
+    int add(int key, long amount) {
+        Node node = find(key);
+        long count = 0;
+        int forgotten = EMPTY;
+        if (node == null && this.size < this.capacity) {
+            node = newNode(key);
+        } else if (node == null) {
+            // full: the key with the smallest count gives its place to key.
+            node = this.lowest.first;
+            forgotten = node.key;
+            remove(forgotten);
+            node.key = key;
+            node.error = this.lowest.count;
+            put(node);
+        }
+        if (node.bucket != null) {
+            count = node.bucket.count;
+        }
+
+        Bucket from = node.bucket;
+        Bucket below = from;
+        Bucket above = from == null ? this.lowest : from.higher;
+        if (from != null) {
+            detach(node);
+        }
+        while (above != null && above.count < count + amount) {
+            below = above;
+            above = above.higher;
+        }
+        if (above == null || above.count != count + amount) {
+            above = insertBucket(count + amount, above, below);
+        }
+        attach(node, above);
+        if (from != null) {
+            removeIfEmpty(from);
+        }
+        return forgotten;
+    }
+
+    /**
+     * Count one occurrence of key less, forgetting key when its count
+     * reaches zero. Does nothing if key is not being counted.
+     *
+     * @param key a key >= 0
+     */
+    void decrement(int key) {
+        subtract(key, 1);
+    }
+
+    /**
+     * Count amount occurrences of key less, forgetting key when its count
+     * reaches zero. Does nothing if key is not being counted. Takes time
+     * proportional to the number of distinct counts passed over.
+     *
+     * @param key a key >= 0
+     * @param amount the number of occurrences, > 0; at most the count of
+     *               key is taken away
+     */
+    void subtract(int key, long amount) {
+        Node node = find(key);
+        if (node != null) {
+            lower(node, Math.min(amount, node.bucket.count));
+        }
+    }
+
+    /**
+     * Take the count key took over when it was first counted (see the
+     * abstraction function) back out of its count, once the occurrences
+     * it stood for are known to no longer matter. Takes time proportional
+     * to the number of distinct counts passed over.
+     *
+     * @param key a key >= 0
+     */
+    void forgive(int key) {
+        Node node = find(key);
+        if (node != null && node.error > 0) {
+            long error = node.error;
+            node.error = 0;
+            lower(node, error);
+        }
+    }
+
+    /* count node amount times less, forgetting it at zero; amount <= its count */
+    private void lower(Node node, long amount) {
+        Bucket from = node.bucket;
+        long count = from.count - amount;
+        // decrements beyond the key's own occurrences also eat its error:
+        node.error = Math.min(node.error, count);
+        detach(node);
+        if (count == 0) {
+            remove(node.key);
+            node.next = this.spareNodes;
+            this.spareNodes = node;
+        } else {
+            Bucket above = from;
+            Bucket below = from.lower;
+            while (below != null && below.count > count) {
+                above = below;
+                below = below.lower;
+            }
+            if (below == null || below.count != count) {
+                below = insertBucket(count, above, below);
+            }
+            attach(node, below);
+        }
+        removeIfEmpty(from);
+    }
+
+    /**
+     * @param limit the maximum number of keys to return
+     * @return up to limit counted keys, in non-increasing count order.
+     * Takes O(limit) time.
+     */
+    List<Counted> top(int limit) {
+        List<Counted> result = new ArrayList<>(Math.min(limit, this.size));
+        for (Bucket b = this.highest; b != null && result.size() < limit; b = b.lower) {
+            for (Node n = b.first; n != null && result.size() < limit; n = n.next) {
+                result.add(new Counted(n.key, b.count));
+            }
+        }
+        return result;
+    }
+
+    private void moveUp(Node node) {
+        Bucket from = node.bucket;
+        detach(node);
+        Bucket to = from.higher;
+        if (to == null || to.count != from.count + 1) {
+            to = insertBucket(from.count + 1, to, from);
+        }
+        attach(node, to);
+        removeIfEmpty(from);
+    }
+
+    /* the Node of key, or null if key is not counted */
+    private Node find(int key) {
+        for (int i = slotOf(key); ; i = (i + 1) & (this.keys.length - 1)) {
+            if (this.keys[i] == key) {
+                return this.slots[i];
+            }
+            if (this.keys[i] == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /* a Node for key, not yet in a bucket, indexed */
+    private Node newNode(int key) {
+        Node node = this.spareNodes;
+        if (node != null) {
+            this.spareNodes = node.next;
+            node.next = null;
+        } else {
+            node = new Node();
+        }
+        node.key = key;
+        node.error = 0;
+        put(node);
+        return node;
+    }
+
+    /* index node under its key, which is not indexed yet */
+    private void put(Node node) {
+        int i = slotOf(node.key);
+        while (this.keys[i] != EMPTY) {
+            i = (i + 1) & (this.keys.length - 1);
+        }
+        this.keys[i] = node.key;
+        this.slots[i] = node;
+        this.size++;
+    }
+
+    /* stop indexing key, shifting back the keys probed past it */
+    private void remove(int key) {
+        int mask = this.keys.length - 1;
+        int i = slotOf(key);
+        while (this.keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        int hole = i;
+        for (int j = (hole + 1) & mask; this.keys[j] != EMPTY; j = (j + 1) & mask) {
+            // keys[j] may move back to the hole if its home is not in (hole, j]:
+            if (((j - slotOf(this.keys[j])) & mask) >= ((j - hole) & mask)) {
+                this.keys[hole] = this.keys[j];
+                this.slots[hole] = this.slots[j];
+                hole = j;
+            }
+        }
+        this.keys[hole] = EMPTY;
+        this.slots[hole] = null;
+        this.size--;
+    }
+
+    /* the home slot of key, from the top bits of its Fibonacci hash */
+    private int slotOf(int key) {
+        return (key * 0x9E3779B9) >>> this.shift;
+    }
+
+    /* create a bucket between higher and lower (either may be null) */
+    private Bucket insertBucket(long count, Bucket higher, Bucket lower) {
+        Bucket b = this.spareBuckets;
+        if (b != null) {
+            this.spareBuckets = b.lower;
+        } else {
+            b = new Bucket();
+        }
+        b.count = count;
+        b.higher = higher;
+        b.lower = lower;
+        if (higher != null) {
+            higher.lower = b;
+        } else {
+            this.highest = b;
+        }
+        if (lower != null) {
+            lower.higher = b;
+        } else {
+            this.lowest = b;
+        }
+        return b;
+    }
+
+    private void removeIfEmpty(Bucket b) {
+        if (b.first != null) {
+            return;
+        }
+        if (b.higher != null) {
+            b.higher.lower = b.lower;
+        } else {
+            this.highest = b.lower;
+        }
+        if (b.lower != null) {
+            b.lower.higher = b.higher;
+        } else {
+            this.lowest = b.higher;
+        }
+        b.higher = null;
+        b.lower = this.spareBuckets;
+        this.spareBuckets = b;
+    }
+
+    private static void attach(Node node, Bucket b) {
+        node.bucket = b;
+        node.previous = null;
+        node.next = b.first;
+        if (b.first != null) {
+            b.first.previous = node;
+        }
+        b.first = node;
+    }
+
+    private static void detach(Node node) {
+        Bucket b = node.bucket;
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            b.first = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+        node.bucket = null;
+    }
+}
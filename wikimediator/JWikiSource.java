@@ -0,0 +1,186 @@
+package cpen221.mp3.wikimediator;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.fastily.jwiki.core.Wiki;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JWikiSource implements WikiSource {
+
+    private final Wiki wiki;
+
+    // Abstraction Function:
+    //  JWikiSource represents a live wiki, reached through the jwiki API.
+    //    - wiki represents the jwiki client for the wiki's domain.
+
+    // Representation Invariant:
+    //    - wiki != null
+
+    // Thread Safety Arguments:
+    //  - wiki is final and the jwiki client is safe to share between
+    //    threads; this class keeps no other state.
+
+    /**
+     * @param domain the domain of the wiki, e.g. "en.wikipedia.org"
+     */
+    public JWikiSource(String domain) {
+        this.wiki = new Wiki.Builder().withDomain(domain).build();
+    }
+
+    /**
+     * @return the client for English Wikipedia shared by every WikiMediator
+     * that does not name its own source. Created on first use.
+     */
+    public static JWikiSource english() {
+        return English.SOURCE;
+    }
+
+    /* holder idiom: the client is only created when first needed */
+    private static final class English {
+        static final JWikiSource SOURCE = new JWikiSource("en.wikipedia.org");
+    }
+
+    @Override
+    public List<String> allPages(String prefix, int limit) {
+        return this.wiki.allPages(prefix, false, false, limit, null);
+    }
+
+    @Override
+    public String getPageText(String title) {
+        // the same query as a batch, so that both follow redirects:
+        return getPageTexts(List.of(title)).get(title);
+    }
+
+    @Override
+    public Map<String, String> getPageTexts(Collection<String> titles) {
+        Map<String, String> renamed = new HashMap<>();
+        Map<String, String> found = new HashMap<>();
+        if (!titles.isEmpty()) {
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("prop", "revisions");
+            params.put("rvprop", "content");
+            params.put("rvslots", "main");
+            params.put("redirects", "1");
+            params.put("formatversion", "2");
+            params.put("titles", String.join("|", titles));
+            JsonObject reply;
+            do {
+                reply = query(params);
+                readPages(reply, renamed, found);
+                // pages whose text did not fit in this reply come in the next:
+                JsonObject more = reply.getAsJsonObject("continue");
+                if (more != null) {
+                    more.entrySet().forEach(e -> params.put(e.getKey(), e.getValue().getAsString()));
+                }
+            } while (reply.has("continue"));
+        }
+        return textsOf(titles, renamed, found);
+    }
+
+    /* send a query to the API and return its reply */
+    private JsonObject query(Map<String, String> params) {
+        List<String> pairs = new ArrayList<>();
+        params.forEach((name, value) -> {
+            pairs.add(name);
+            pairs.add(value);
+        });
+        try (Response response = this.wiki.basicGET("query", pairs.toArray(new String[0]))) {
+            ResponseBody body = response == null ? null : response.body();
+            if (body == null) {
+                throw new UncheckedIOException(new IOException("no reply from the wiki"));
+            }
+            return JsonParser.parseString(body.string()).getAsJsonObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read one reply to a page text query.
+     *
+     * @param reply the reply, in formatversion 2
+     * @param renamed where to record each title the wiki normalized or
+     *                redirected, mapped to its new title
+     * @param found where to record the text of each page in reply, keyed by
+     *              its title
+     */
+    static void readPages(JsonObject reply, Map<String, String> renamed,
+                          Map<String, String> found) {
+        JsonObject query = reply.getAsJsonObject("query");
+        if (query == null) {
+            return;
+        }
+        for (String renaming : List.of("normalized", "redirects")) {
+            JsonArray pairs = query.getAsJsonArray(renaming);
+            if (pairs != null) {
+                for (JsonElement pair : pairs) {
+                    JsonObject fromTo = pair.getAsJsonObject();
+                    renamed.put(fromTo.get("from").getAsString(), fromTo.get("to").getAsString());
+                }
+            }
+        }
+        JsonArray pages = query.getAsJsonArray("pages");
+        if (pages == null) {
+            return;
+        }
+        for (JsonElement element : pages) {
+            JsonObject page = element.getAsJsonObject();
+            JsonArray revisions = page.getAsJsonArray("revisions");
+            if (revisions == null || revisions.isEmpty()) {
+                continue;
+            }
+            JsonObject main = revisions.get(0).getAsJsonObject()
+                    .getAsJsonObject("slots").getAsJsonObject("main");
+            found.put(page.get("title").getAsString(), main.get("content").getAsString());
+        }
+    }
+
+    /**
+     * @param titles the titles asked for
+     * @param renamed the new title of each title the wiki normalized or
+     *                redirected
+     * @param found the text of each page found, keyed by its final title
+     * @return the text of each of titles, keyed by the title asked for; an
+     * empty string for titles with no such page
+     */
+    static Map<String, String> textsOf(Collection<String> titles, Map<String, String> renamed,
+                                       Map<String, String> found) {
+        Map<String, String> texts = new HashMap<>();
+        for (String title : titles) {
+            String page = title;
+            // follow normalizations and redirects, stopping on a loop:
+            for (int hop = 0; hop <= renamed.size() && renamed.containsKey(page); hop++) {
+                page = renamed.get(page);
+            }
+            texts.put(title, found.getOrDefault(page, ""));
+        }
+        return texts;
+    }
+
+    @Override
+    public List<String> whatLinksHere(String title) {
+        return this.wiki.whatLinksHere(title);
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        return this.wiki.search(query, limit);
+    }
+
+    @Override
+    public List<String> getLinksOnPage(String title) {
+        return this.wiki.getLinksOnPage(title);
+    }
+}
@@ -0,0 +1,136 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class LoadTracker {
+
+    /* length of the sliding window, in seconds */
+    static final int WINDOW_SECONDS = 30;
+    /* number of per-second buckets kept; a power of two >= WINDOW_SECONDS */
+    private static final int RING_SIZE = 32;
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final long initialTime;
+    private final AtomicLongArray buckets = new AtomicLongArray(RING_SIZE);
+    private final AtomicInteger peak = new AtomicInteger();
+
+    // Abstraction Function:
+    //  LoadTracker represents the history of request times seen by a
+    //  WikiMediator, reduced to what peakLoad30s needs.
+    //    - initialTime represents the time (in milliseconds since
+    //      January 1 1970) this tracker was created. Second s of the tracker
+    //      covers [initialTime + 1000s, initialTime + 1000(s+1)).
+    //    - buckets represents the request counts of the last RING_SIZE
+    //      seconds. Bucket s & RING_MASK holds (s << 32) | count, where count
+    //      is the number of requests recorded in second s.
+    //    - peak represents the largest number of requests recorded in any
+    //      WINDOW_SECONDS-second window so far.
+
+    // Representation Invariant:
+    //    - initialTime > 0
+    //    - the count of every bucket >= 0
+    //    - peak >= the sum of the counts of the buckets whose seconds lie
+    //      within the last WINDOW_SECONDS seconds
+
+    // Thread Safety Arguments:
+    //  - initialTime is final and immutable (Strategy 2).
+    //  - buckets and peak are only changed through compare-and-set loops on
+    //    atomic types (Strategy 3), so concurrent records never lose counts.
+    //    The record whose sum is read last sees every increment that came
+    //    before it, so peak never misses a window.
+
+    LoadTracker(long initialTime) {
+        this.initialTime = initialTime;
+    }
+
+    /**
+     * Record one request. Allocation-free and lock-free.
+     *
+     * @param time the time of the request in milliseconds since January 1 1970
+     */
+    void record(long time) {
+        long second = Math.max(0, time - this.initialTime) / 1000;
+        int index = (int) (second & RING_MASK);
+        while (true) {
+            long current = this.buckets.get(index);
+            long bucketSecond = current >>> 32;
+            long next;
+            if (bucketSecond == second) {
+                next = current + 1;
+            } else if (bucketSecond < second) {
+                // the bucket still holds a second that left the window:
+                next = (second << 32) | 1;
+            } else {
+                // a late request from a second that is already overwritten.
+                return;
+            }
+            if (this.buckets.compareAndSet(index, current, next)) {
+                break;
+            }
+        }
+
+        int load = windowSum(second);
+        int max = this.peak.get();
+        while (load > max && !this.peak.compareAndSet(max, load)) {
+            max = this.peak.get();
+        }
+    }
+
+    /**
+     * @return the maximum number of requests recorded in any window of
+     * WINDOW_SECONDS seconds.
+     */
+    int peak() {
+        return this.peak.get();
+    }
+
+    /**
+     * Raise the peak to at least peak, for example when restoring a
+     * snapshot of an earlier run.
+     *
+     * @param peak a number of requests seen in one window
+     */
+    void restorePeak(int peak) {
+        int max = this.peak.get();
+        while (peak > max && !this.peak.compareAndSet(max, peak)) {
+            max = this.peak.get();
+        }
+    }
+
+    /**
+     * Visit the request count of every second still in the ring, so that
+     * the loads of several trackers can be added up second by second.
+     *
+     * @param visitor called with the start time of a second (in
+     *                milliseconds since January 1 1970) and the number of
+     *                requests recorded in it, for each second with requests
+     */
+    void forEachSecond(SecondVisitor visitor) {
+        for (int i = 0; i < RING_SIZE; i++) {
+            long bucket = this.buckets.get(i);
+            long count = bucket & COUNT_MASK;
+            if (count > 0) {
+                visitor.visit(this.initialTime + (bucket >>> 32) * 1000, count);
+            }
+        }
+    }
+
+    /* Receives the load of a LoadTracker, see forEachSecond. */
+    interface SecondVisitor {
+        void visit(long time, long count);
+    }
+
+    /* number of requests recorded in the window ending at (and including) second */
+    private int windowSum(long second) {
+        long sum = 0;
+        for (long s = second; s > second - WINDOW_SECONDS && s >= 0; s--) {
+            long bucket = this.buckets.get((int) (s & RING_MASK));
+            if ((bucket >>> 32) == s) {
+                sum += bucket & COUNT_MASK;
+            }
+        }
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+}
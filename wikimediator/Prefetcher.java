@@ -0,0 +1,161 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+class Prefetcher {
+
+    private final ThreadPoolExecutor pool;
+    private final long bytesPerSecond;
+    private long budget;
+    private long refilledAt = System.nanoTime();
+    private final LinkedHashMap<String, Boolean> unused;
+    private final LongAdder prefetched = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+    private static final int IDLE_SECONDS = 30;
+
+    // Abstraction Function:
+    //  Prefetcher represents the background fetching of pages that clients
+    //  are expected to ask for soon, with limits so that it never competes
+    //  with the pages clients are waiting for.
+    //    - pool runs the prefetches on its threads, which are the only
+    //      threads fetching for it, so its number of threads bounds the
+    //      calls to the wiki made for prefetching at once. Its queue is
+    //      bounded; prefetches that do not fit are dropped and counted in
+    //      dropped.
+    //    - budget represents the number of bytes of page text that may still
+    //      be prefetched: it grows by bytesPerSecond every second, up to
+    //      bytesPerSecond, and falls by the size of every page prefetched.
+    //      Pages skipped while it is not positive are counted in overBudget.
+    //    - unused holds the titles of the pages prefetched but not yet
+    //      asked for, oldest first, up to a bound; prefetched counts the
+    //      pages prefetched and hits those later asked for while cached.
+
+    // Representation Invariant:
+    //    - budget <= bytesPerSecond
+    //    - unused.size() <= the bound given at construction
+
+    // Thread Safety Arguments:
+    //  - budget and refilledAt are only used while holding the lock of this
+    //    Prefetcher, and unused while holding its own lock.
+    //  - pool is a thread-safe executor and the counters are LongAdders.
+
+    /**
+     * @param threads the most pages fetched at once for prefetching
+     * @param queueCapacity the most prefetches waiting for a thread
+     * @param bytesPerSecond the most bytes of page text prefetched per
+     *                       second, averaged over a second
+     * @param maxUnused the most prefetched pages remembered until they are
+     *                  asked for, to count hits
+     */
+    Prefetcher(int threads, int queueCapacity, long bytesPerSecond, int maxUnused) {
+        this.pool = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "wiki-prefetch");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, (task, executor) -> this.dropped.increment());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.bytesPerSecond = bytesPerSecond;
+        this.budget = bytesPerSecond;
+        this.unused = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxUnused;
+            }
+        };
+    }
+
+    /**
+     * Run a prefetch in the background, or drop it if too many are waiting.
+     *
+     * @param prefetch the prefetch
+     */
+    void submit(Runnable prefetch) {
+        this.pool.execute(() -> {
+            try {
+                prefetch.run();
+            } catch (RuntimeException e) {
+                // a page that could not be prefetched is fetched when asked for.
+            }
+        });
+    }
+
+    /**
+     * @return true if more pages may be prefetched now; false, counting the
+     * page skipped, if the byte budget is used up
+     */
+    synchronized boolean hasBudget() {
+        long now = System.nanoTime();
+        // a second refills the whole budget, so longer idle times need not
+        // be multiplied (and would overflow):
+        long elapsed = Math.min(now - this.refilledAt, TimeUnit.SECONDS.toNanos(1));
+        long refill = elapsed * this.bytesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        if (refill > 0) {
+            this.budget = Math.min(this.bytesPerSecond, this.budget + refill);
+            this.refilledAt = now;
+        }
+        if (this.budget <= 0) {
+            this.overBudget.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Count a page prefetched.
+     *
+     * @param pageTitle the title of the page
+     * @param bytes the size of its text, taken from the budget
+     */
+    void prefetched(String pageTitle, long bytes) {
+        synchronized (this) {
+            this.budget -= bytes;
+        }
+        synchronized (this.unused) {
+            this.unused.put(pageTitle, Boolean.TRUE);
+        }
+        this.prefetched.increment();
+    }
+
+    /**
+     * Count a request for a page, a hit if the page was prefetched and is
+     * still cached.
+     *
+     * @param pageTitle the title of the page
+     * @param cached true if the page was found in the cache
+     */
+    void requested(String pageTitle, boolean cached) {
+        Boolean wasPrefetched;
+        synchronized (this.unused) {
+            wasPrefetched = this.unused.remove(pageTitle);
+        }
+        if (wasPrefetched != null && cached) {
+            this.hits.increment();
+        }
+    }
+
+    /**
+     * @return the number of pages prefetched, of those later asked for
+     * while cached, their fraction, and the number of prefetches dropped
+     * because too many were waiting and pages skipped for the byte budget,
+     * by name
+     */
+    Map<String, Number> stats() {
+        Map<String, Number> stats = new LinkedHashMap<>();
+        long prefetched = this.prefetched.sum();
+        long hits = this.hits.sum();
+        stats.put("prefetched", prefetched);
+        stats.put("hits", hits);
+        stats.put("hitRate", prefetched == 0 ? 0.0 : (double) hits / prefetched);
+        stats.put("dropped", this.dropped.sum());
+        stats.put("overBudget", this.overBudget.sum());
+        stats.put("queued", this.pool.getQueue().size());
+        return stats;
+    }
+}
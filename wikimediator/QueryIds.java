@@ -0,0 +1,279 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+class QueryIds {
+
+    /* the id of a query that did not fit, see idOf */
+    static final int NONE = -1;
+    /* ids are kept in chunks of 2^CHUNK_BITS, so growing never copies them */
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int OVERFLOW_CAPACITY = 4096;
+
+    private final int maxIds;
+    private volatile Table table = new Table(INITIAL_SLOTS);
+    private volatile String[][] queries = new String[0][];
+    private volatile AtomicLongArray[] counts = new AtomicLongArray[0];
+    private volatile AtomicLongArray[] lastSeen = new AtomicLongArray[0];
+    private volatile int size;
+    private final FrequencySummary overflow = new FrequencySummary(OVERFLOW_CAPACITY);
+    private final Map<Integer, String> overflowQueries = new HashMap<>();
+    private final LongAdder overflowed = new LongAdder();
+
+    // Abstraction Function:
+    //  QueryIds represents a dictionary that gives every distinct query a
+    //  small int id, in the order the queries were first seen, along with
+    //  the number of times each query was recorded and when it was last
+    //  recorded.
+    //    - table maps each query to its id, by open addressing: the query
+    //      is at the first slot at or after slotOf(query) holding it or null.
+    //    - queries[id >> CHUNK_BITS][id & (CHUNK - 1)] is the query with id,
+    //      and counts and lastSeen, chunked the same way, are its number of
+    //      recordings and the time of the last one (milliseconds since
+    //      January 1 1970, 0 if never recorded).
+    //    - size is the number of ids given out: 0 to size - 1.
+    //    - maxIds bounds size, so that one-off queries cannot use up the
+    //      heap; later queries are not given ids.
+    //    - overflow keeps approximate counts of the recordings of queries
+    //      without ids, for the OVERFLOW_CAPACITY heaviest of them (see
+    //      FrequencySummary), keyed by overflowKey(query); overflowQueries
+    //      maps each key counted there back to its query. Queries that
+    //      share a key are counted together. overflowed counts all the
+    //      recordings of queries without ids.
+
+    // Representation Invariant:
+    //    - 0 <= size <= maxIds
+    //    - table holds exactly the queries with ids 0 to size - 1, and at
+    //      most half of its slots are used
+    //    - queries, counts and lastSeen have the same number of chunks,
+    //      enough for size ids
+    //    - overflowQueries has exactly the keys counted in overflow
+
+    // Thread Safety Arguments:
+    //  - Looking up a known query and recording it take no lock and
+    //    allocate nothing: the probe reads slots through the atomic keys of
+    //    table, and the counts are atomic.
+    //  - New ids are given out while holding the lock of this QueryIds.
+    //    Each write of a new id (its query, its chunks, its slot's id) comes
+    //    before the volatile write that publishes it (the slot's key, a new
+    //    table, the chunk arrays, size), so a reader that finds a query also
+    //    sees everything about it. A reader still probing an old table only
+    //    misses queries added meanwhile, and then looks again under the lock.
+    //  - overflow and overflowQueries are only used while holding the lock
+    //    of overflow; overflowed is a LongAdder.
+
+    /* An open-addressing table from query to id. */
+    private static final class Table {
+        final AtomicReferenceArray<String> keys;
+        final int[] ids;
+        final int shift;
+
+        Table(int slots) {
+            this.keys = new AtomicReferenceArray<>(slots);
+            this.ids = new int[slots];
+            this.shift = Integer.numberOfLeadingZeros(slots) + 1;
+        }
+
+        /* the slot of query, or the empty slot where it would go */
+        int slotOf(String query) {
+            int mask = this.ids.length - 1;
+            int i = (query.hashCode() * 0x9E3779B9) >>> this.shift;
+            String key;
+            while ((key = this.keys.get(i)) != null && !key.equals(query)) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * @param maxIds the most ids to give out, > 0
+     */
+    QueryIds(int maxIds) {
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * @param query a non-null query
+     * @return the id of query, or NONE if it has none; never gives out an id
+     */
+    int find(String query) {
+        Table table = this.table;
+        int slot = table.slotOf(query);
+        return table.keys.get(slot) != null ? table.ids[slot] : NONE;
+    }
+
+    /**
+     * @param query a non-null query
+     * @return the id of query, giving it the next id if it has none yet, or
+     * NONE if it has none and maxIds ids are already given out
+     */
+    int idOf(String query) {
+        Table table = this.table;
+        int slot = table.slotOf(query);
+        if (table.keys.get(slot) != null) {
+            return table.ids[slot];
+        }
+        return add(query);
+    }
+
+    /**
+     * Count one recording of query at time: a single lock-free update that
+     * allocates nothing once query has an id.
+     *
+     * Once maxIds ids are given out, the recordings of queries without
+     * one are counted approximately instead, see topOverflow.
+     *
+     * @param query a non-null query
+     * @param time the time in milliseconds since January 1 1970
+     * @return the id of query, or NONE if it could not be given one
+     */
+    int record(String query, long time) {
+        int id = idOf(query);
+        if (id != NONE) {
+            add(id, 1, time);
+        } else {
+            this.overflowed.increment();
+            int key = overflowKey(query);
+            synchronized (this.overflow) {
+                int forgotten = this.overflow.increment(key);
+                if (forgotten >= 0) {
+                    this.overflowQueries.remove(forgotten);
+                }
+                this.overflowQueries.putIfAbsent(key, query);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * @param limit the maximum number of queries to return
+     * @return up to limit of the queries recorded most without an id, with
+     * their approximate number of recordings (never less than the true
+     * one), in non-increasing count order
+     */
+    List<Map.Entry<String, Long>> topOverflow(int limit) {
+        List<Map.Entry<String, Long>> top = new ArrayList<>();
+        synchronized (this.overflow) {
+            for (FrequencySummary.Counted counted : this.overflow.top(limit)) {
+                top.add(new AbstractMap.SimpleImmutableEntry<>(
+                        this.overflowQueries.get(counted.key), counted.count));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * @return the number of recordings of queries that had no id
+     */
+    long overflowed() {
+        return this.overflowed.sum();
+    }
+
+    /**
+     * Count more recordings of a query, for example when replaying a log.
+     *
+     * @param id an id given out by idOf
+     * @param count the number of recordings
+     * @param time the time of the last of them, in milliseconds since
+     *             January 1 1970
+     */
+    void add(int id, long count, long time) {
+        int chunk = id >>> CHUNK_BITS;
+        int index = id & (CHUNK - 1);
+        this.counts[chunk].addAndGet(index, count);
+        AtomicLongArray seen = this.lastSeen[chunk];
+        long last = seen.get(index);
+        while (time > last && !seen.compareAndSet(index, last, time)) {
+            last = seen.get(index);
+        }
+    }
+
+    /**
+     * @param id an id given out by idOf
+     * @return the query with that id
+     */
+    String queryOf(int id) {
+        return this.queries[id >>> CHUNK_BITS][id & (CHUNK - 1)];
+    }
+
+    /**
+     * @param id an id given out by idOf
+     * @return the number of times the query with that id was recorded
+     */
+    long count(int id) {
+        return this.counts[id >>> CHUNK_BITS].get(id & (CHUNK - 1));
+    }
+
+    /**
+     * @param id an id given out by idOf
+     * @return the last time the query with that id was recorded, in
+     * milliseconds since January 1 1970, or 0 if it never was
+     */
+    long lastSeen(int id) {
+        return this.lastSeen[id >>> CHUNK_BITS].get(id & (CHUNK - 1));
+    }
+
+    /**
+     * @return the number of ids given out; they are 0 to size() - 1
+     */
+    int size() {
+        return this.size;
+    }
+
+    /* a key >= 0 for query in overflow */
+    private static int overflowKey(String query) {
+        return (query.hashCode() * 0x9E3779B9) & Integer.MAX_VALUE;
+    }
+
+    private synchronized int add(String query) {
+        Table table = this.table;
+        int slot = table.slotOf(query);
+        if (table.keys.get(slot) != null) {
+            return table.ids[slot];
+        }
+        int id = this.size;
+        if (id == this.maxIds) {
+            return NONE;
+        }
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk == this.queries.length) {
+            String[][] queries = Arrays.copyOf(this.queries, chunk + 1);
+            AtomicLongArray[] counts = Arrays.copyOf(this.counts, chunk + 1);
+            AtomicLongArray[] lastSeen = Arrays.copyOf(this.lastSeen, chunk + 1);
+            queries[chunk] = new String[CHUNK];
+            counts[chunk] = new AtomicLongArray(CHUNK);
+            lastSeen[chunk] = new AtomicLongArray(CHUNK);
+            this.counts = counts;
+            this.lastSeen = lastSeen;
+            this.queries = queries;
+        }
+        this.queries[chunk][id & (CHUNK - 1)] = query;
+
+        if (2 * (id + 1) > table.ids.length) {
+            table = new Table(2 * table.ids.length);
+            for (int other = 0; other < id; other++) {
+                String key = queryOf(other);
+                int free = table.slotOf(key);
+                table.ids[free] = other;
+                table.keys.set(free, key);
+            }
+            slot = table.slotOf(query);
+        }
+        table.ids[slot] = id;
+        table.keys.set(slot, query);
+        this.table = table;
+        this.size = id + 1;
+        return id;
+    }
+}
@@ -0,0 +1,236 @@
+package cpen221.mp3.wikimediator;
+
+import cpen221.mp3.cache.CacheRegion;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Reads and writes snapshots of the caches and statistics of a WikiMediator.
+ *
+ * A snapshot is a binary file of big-endian fields:
+ *   int MAGIC, int VERSION, long time written (milliseconds since 1970)
+ *   for the page, search, backlink and link regions, in that order:
+ *     int entries, then per entry (least recently accessed first):
+ *       string key, long milliseconds to live, value
+ *     where a page value is a string and the other values are an int
+ *     count followed by that many strings
+ *   int count, then per all-time query: string query, long count
+ *   int count, then per recent query: long second start time, string query,
+ *     int count
+ *   int peakLoad30s
+ * Every string is an int byte length followed by its UTF-8 bytes.
+ */
+final class Snapshot {
+
+    private static final int MAGIC = 0x574D5331; // "WMS1"
+    private static final int VERSION = 1;
+
+    private Snapshot() {
+    }
+
+    /**
+     * Write a snapshot of mediator to file, replacing file atomically so a
+     * crash while writing never leaves a partial snapshot behind.
+     *
+     * @param mediator the WikiMediator to snapshot
+     * @param file the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(WikiMediator mediator, Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            writeRegion(out, mediator.cache, Snapshot::writeString);
+            writeRegion(out, mediator.searchCache, Snapshot::writeList);
+            writeRegion(out, mediator.backlinkCache, Snapshot::writeList);
+            writeRegion(out, mediator.linkCache, Snapshot::writeList);
+
+            List<String> queries = new ArrayList<>();
+            List<Long> counts = new ArrayList<>();
+            mediator.allTimeQueries.forEach((query, count) -> {
+                queries.add(mediator.queryIds.queryOf(query));
+                counts.add(count);
+            });
+            out.writeInt(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                writeString(out, queries.get(i));
+                out.writeLong(counts.get(i));
+            }
+
+            List<Long> times = new ArrayList<>();
+            List<String> recentQueries = new ArrayList<>();
+            List<Integer> recentCounts = new ArrayList<>();
+            mediator.recentQueries.forEachSecond((time, query, count) -> {
+                times.add(time);
+                recentQueries.add(mediator.queryIds.queryOf(query));
+                recentCounts.add(count);
+            });
+            out.writeInt(times.size());
+            for (int i = 0; i < times.size(); i++) {
+                out.writeLong(times.get(i));
+                writeString(out, recentQueries.get(i));
+                out.writeInt(recentCounts.get(i));
+            }
+
+            out.writeInt(mediator.loadTracker.peak());
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load a snapshot written by write into mediator. Cached values keep
+     * the time they had left to live when the snapshot was written, less
+     * the time since; values that have gone stale since are skipped.
+     *
+     * @param mediator the WikiMediator to restore into
+     * @param file the snapshot file
+     * @throws IOException if file cannot be read or is not a snapshot
+     */
+    static void read(WikiMediator mediator, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 16 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException(file + " is not a WikiMediator snapshot");
+            }
+            long now = System.currentTimeMillis();
+            long savedAt = Math.min(now, in.getLong());
+            long age = now - savedAt;
+
+            readRegion(in, mediator.cache, age, Snapshot::readString);
+            readRegion(in, mediator.searchCache, age, Snapshot::readList);
+            readRegion(in, mediator.backlinkCache, age, Snapshot::readList);
+            readRegion(in, mediator.linkCache, age, Snapshot::readList);
+
+            // the statistics of a mediator that logs its requests were
+            // already rebuilt from its event log:
+            boolean statistics = mediator.eventLog == null;
+            int queries = in.getInt();
+            for (int i = 0; i < queries; i++) {
+                String query = readString(in);
+                long count = in.getLong();
+                int id = statistics ? mediator.queryIds.idOf(query) : QueryIds.NONE;
+                if (id != QueryIds.NONE) {
+                    // the snapshot has no times for these; the recent ones
+                    // below move them forward.
+                    mediator.queryIds.add(id, count, savedAt);
+                    mediator.allTimeQueries.add(id, count);
+                }
+            }
+
+            int recent = in.getInt();
+            for (int i = 0; i < recent; i++) {
+                long time = in.getLong();
+                String query = readString(in);
+                int count = in.getInt();
+                int id = statistics ? mediator.queryIds.idOf(query) : QueryIds.NONE;
+                if (id != QueryIds.NONE) {
+                    // already counted above, so only its last time:
+                    mediator.queryIds.add(id, 0, time);
+                    mediator.recentQueries.restore(id, count, time, now);
+                }
+            }
+
+            int peak = in.getInt();
+            if (statistics) {
+                mediator.loadTracker.restorePeak(peak);
+            }
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, or a corrupt length.
+            throw new IOException(file + " is not a valid WikiMediator snapshot", e);
+        }
+    }
+
+    private interface ValueWriter<V> {
+        void write(DataOutputStream out, V value) throws IOException;
+    }
+
+    private interface ValueReader<V> {
+        V read(ByteBuffer in);
+    }
+
+    private static <V> void writeRegion(DataOutputStream out, CacheRegion<V> region,
+                                        ValueWriter<V> writer) throws IOException {
+        // collect first, so the region is not locked while encoding:
+        List<String> keys = new ArrayList<>();
+        List<V> values = new ArrayList<>();
+        List<Long> timesToLive = new ArrayList<>();
+        region.forEach((key, value, timeToLive) -> {
+            keys.add(key);
+            values.add(value);
+            timesToLive.add(timeToLive);
+        });
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            writeString(out, keys.get(i));
+            out.writeLong(timesToLive.get(i));
+            writer.write(out, values.get(i));
+        }
+    }
+
+    private static <V> void readRegion(ByteBuffer in, CacheRegion<V> region, long age,
+                                       ValueReader<V> reader) {
+        int entries = in.getInt();
+        for (int i = 0; i < entries; i++) {
+            String key = readString(in);
+            long timeToLive = in.getLong() - age;
+            V value = reader.read(in);
+            if (timeToLive > 0) {
+                region.restore(key, value, timeToLive);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readLength(in, 1);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    private static List<String> readList(ByteBuffer in) {
+        // every string takes at least the 4 bytes of its length:
+        int size = readLength(in, 4);
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return List.copyOf(list);
+    }
+
+    /* a length of items of at least itemBytes each, checked against what is left of in */
+    private static int readLength(ByteBuffer in, int itemBytes) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / itemBytes) {
+            throw new IllegalArgumentException("bad length " + length);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,161 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The statistics of one or more WikiMediators, in a form that can be sent
+ * to other servers (its fields map directly to JSON) and merged with the
+ * statistics of other WikiMediators, to answer zeitgeist, trending and
+ * peakLoad30s for a whole fleet. See WikiMediator.digest.
+ */
+public final class StatsDigest {
+
+    private Map<String, Long> queries = new HashMap<>();
+    private Map<Long, Map<String, Integer>> recent = new HashMap<>();
+    private Map<Long, Long> load = new HashMap<>();
+    private int peak;
+    private int nodes = 1;
+    private static final long WINDOW_MILLIS = LoadTracker.WINDOW_SECONDS * 1000L;
+
+    // Abstraction Function:
+    //  StatsDigest represents the requests seen by nodes WikiMediators.
+    //    - queries maps each query to the number of times it was searched
+    //      for, counting on each node only its most searched queries (see
+    //      TopKCounter), so a query's count is a lower bound.
+    //    - recent maps the start of each of the last seconds to the number
+    //      of times each query was searched for in that second.
+    //    - load maps the start of each of the last seconds to the number of
+    //      requests made in it.
+    //    - peak represents the largest number of requests seen in any
+    //      window of LoadTracker.WINDOW_SECONDS seconds, within one node or
+    //      across the nodes merged. Windows of different nodes are only
+    //      added up while they are still in load, so peak is a lower bound.
+    //  Seconds start at a multiple of 1000 milliseconds, so that the seconds
+    //  of different nodes line up.
+
+    // Representation Invariant:
+    //    - no field is null, nodes > 0, peak >= 0
+    //    - every count > 0
+
+    // Thread Safety Arguments:
+    //  - A StatsDigest is not changed after it is built (by digest or
+    //    merge), so it can be shared once published.
+
+    StatsDigest() {
+    }
+
+    /**
+     * Combine this digest with another, adding up their counts.
+     *
+     * @param other the digest of other WikiMediators; must not describe any
+     *              of the WikiMediators of this one
+     * @return a digest of the WikiMediators of both digests
+     */
+    public StatsDigest merge(StatsDigest other) {
+        StatsDigest merged = new StatsDigest();
+        merged.nodes = this.nodes + other.nodes;
+        for (StatsDigest digest : List.of(this, other)) {
+            digest.queries.forEach((query, count) -> merged.addQuery(query, count));
+            digest.recent.forEach((second, counts) -> counts.forEach(
+                    (query, count) -> merged.addRecent(second, query, count)));
+            digest.load.forEach(merged::addLoad);
+        }
+        merged.peak = Math.max(Math.max(this.peak, other.peak), merged.windowPeak());
+        return merged;
+    }
+
+    /**
+     * @param limit the maximum number of queries to return
+     * @return up to limit of the queries searched for most across the
+     * nodes, most searched first
+     */
+    public List<String> zeitgeist(int limit) {
+        return top(this.queries, limit);
+    }
+
+    /**
+     * @param limit the maximum number of queries to return
+     * @param now the current time in milliseconds since January 1 1970
+     * @return up to limit of the queries searched for most across the
+     * nodes in the LoadTracker.WINDOW_SECONDS seconds before now, most
+     * searched first
+     */
+    public List<String> trending(int limit, long now) {
+        Map<String, Long> counts = new HashMap<>();
+        this.recent.forEach((second, perQuery) -> {
+            if (second > now - WINDOW_MILLIS && second <= now) {
+                perQuery.forEach((query, count) -> counts.merge(query, (long) count, Long::sum));
+            }
+        });
+        return top(counts, limit);
+    }
+
+    /**
+     * @return the largest number of requests seen across the nodes in any
+     * window of LoadTracker.WINDOW_SECONDS seconds
+     */
+    public int peakLoad30s() {
+        return this.peak;
+    }
+
+    /**
+     * @return the number of WikiMediators described
+     */
+    public int nodes() {
+        return this.nodes;
+    }
+
+    void addQuery(String query, long count) {
+        this.queries.merge(query, count, Long::sum);
+    }
+
+    void addRecent(long time, String query, int count) {
+        this.recent.computeIfAbsent(secondOf(time), second -> new HashMap<>())
+                .merge(query, count, Integer::sum);
+    }
+
+    void addLoad(long time, long count) {
+        this.load.merge(secondOf(time), count, Long::sum);
+    }
+
+    void raisePeak(int peak) {
+        this.peak = Math.max(this.peak, peak);
+    }
+
+    private static long secondOf(long time) {
+        return time - Math.floorMod(time, 1000L);
+    }
+
+    /* the most requests in any window of load */
+    private int windowPeak() {
+        TreeMap<Long, Long> seconds = new TreeMap<>(this.load);
+        List<Long> starts = new ArrayList<>(seconds.keySet());
+        long best = 0;
+        long sum = 0;
+        int first = 0;
+        for (Long start : starts) {
+            sum += seconds.get(start);
+            while (starts.get(first) <= start - WINDOW_MILLIS) {
+                sum -= seconds.get(starts.get(first++));
+            }
+            best = Math.max(best, sum);
+        }
+        return (int) Math.min(best, Integer.MAX_VALUE);
+    }
+
+    private static List<String> top(Map<String, Long> counts, int limit) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+            result.add(entries.get(i).getKey());
+        }
+        return result;
+    }
+}
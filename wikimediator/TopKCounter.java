@@ -0,0 +1,149 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+class TopKCounter {
+
+    private final FrequencySummary[] stripes;
+
+    // Abstraction Function:
+    //  TopKCounter represents the approximate all-time number of times each
+    //  key (the id of a query, see QueryIds) was counted, keeping only the
+    //  heaviest keys.
+    //    - stripes represents a partition of the counted keys by hash.
+    //      A key is always counted in stripes[stripeOf(key)], so each key
+    //      lives in exactly one stripe and the overall ranking is a merge of
+    //      the rankings of the stripes.
+
+    // Representation Invariant:
+    //    - stripes.length is a power of two and > 0
+    //    - no key is counted in more than one stripe
+
+    // Thread Safety Arguments:
+    //  - Following Strategy 4 (synchronization), each stripe is only used
+    //    while holding its own lock, so callers counting keys of different
+    //    stripes never contend.
+    //  - stripes is final and never resized.
+
+    /**
+     * @param capacity the total number of distinct keys to keep, > 0
+     * @param stripeCount the number of independently locked stripes; a power
+     *                    of two > 0
+     */
+    TopKCounter(int capacity, int stripeCount) {
+        this.stripes = new FrequencySummary[stripeCount];
+        int perStripe = Math.max(1, capacity / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new FrequencySummary(perStripe);
+        }
+    }
+
+    /**
+     * Count one more occurrence of key. Allocates nothing once every stripe
+     * is full.
+     *
+     * @param key a key >= 0
+     */
+    void increment(int key) {
+        FrequencySummary stripe = this.stripes[stripeOf(key)];
+        synchronized (stripe) {
+            stripe.increment(key);
+        }
+    }
+
+    /**
+     * Count amount more occurrences of key.
+     *
+     * @param key a key >= 0
+     * @param amount the number of occurrences, > 0
+     */
+    void add(int key, long amount) {
+        FrequencySummary stripe = this.stripes[stripeOf(key)];
+        synchronized (stripe) {
+            stripe.add(key, amount);
+        }
+    }
+
+    /**
+     * Visit every counted key with its count. Stripes are visited one at a
+     * time, so counts made meanwhile may or may not be seen.
+     *
+     * @param visitor called with each key and its count
+     */
+    void forEach(CountVisitor visitor) {
+        for (FrequencySummary stripe : this.stripes) {
+            List<FrequencySummary.Counted> counted;
+            synchronized (stripe) {
+                counted = stripe.top(Integer.MAX_VALUE);
+            }
+            for (FrequencySummary.Counted c : counted) {
+                visitor.visit(c.key, c.count);
+            }
+        }
+    }
+
+    /**
+     * @param limit the maximum number of keys to return
+     * @return up to limit of the most counted keys, in non-increasing count
+     * order. Takes O(limit * log(number of stripes)) time.
+     */
+    List<Integer> top(int limit) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>();
+        for (FrequencySummary stripe : this.stripes) {
+            List<FrequencySummary.Counted> ranked;
+            synchronized (stripe) {
+                ranked = stripe.top(limit);
+            }
+            if (!ranked.isEmpty()) {
+                heads.add(new Cursor(ranked));
+            }
+        }
+
+        List<Integer> result = new ArrayList<>(limit);
+        while (result.size() < limit && !heads.isEmpty()) {
+            Cursor c = heads.poll();
+            result.add(c.current().key);
+            if (c.advance()) {
+                heads.add(c);
+            }
+        }
+        return result;
+    }
+
+    /* Receives the counts of a TopKCounter, see forEach. */
+    interface CountVisitor {
+        void visit(int key, long count);
+    }
+
+    /* mixed differently from the slots within a stripe, so that the keys
+     * of one stripe still spread over all its slots */
+    private int stripeOf(int key) {
+        int h = (key ^ (key >>> 16)) * 0x85EBCA6B;
+        return (h ^ (h >>> 13)) & (this.stripes.length - 1);
+    }
+
+    /* position within the ranking of one stripe, ordered by current count */
+    private static final class Cursor implements Comparable<Cursor> {
+        private final List<FrequencySummary.Counted> ranked;
+        private int position;
+
+        Cursor(List<FrequencySummary.Counted> ranked) {
+            this.ranked = ranked;
+        }
+
+        FrequencySummary.Counted current() {
+            return this.ranked.get(this.position);
+        }
+
+        boolean advance() {
+            return ++this.position < this.ranked.size();
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            return Long.compare(other.current().count, this.current().count);
+        }
+    }
+}
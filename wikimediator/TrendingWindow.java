@@ -0,0 +1,246 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class TrendingWindow {
+
+    private final long initialTime;
+    private final int windowSeconds;
+    private final int capacity;
+    private final FrequencySummary window;
+    private final Second[] seconds;
+    private long latestSecond = -1;
+    private static final int EMPTY = -1;
+    private static final int INITIAL_SLOTS = 16;
+
+    // Abstraction Function:
+    //  TrendingWindow represents the approximate number of times each key
+    //  (the id of a query, see QueryIds) was counted during the last
+    //  windowSeconds seconds.
+    //    - initialTime represents the time (in milliseconds since
+    //      January 1 1970) this window was created. Second s covers
+    //      [initialTime + 1000s, initialTime + 1000(s+1)).
+    //    - window represents the counts of the keys over the whole window.
+    //    - seconds[s % windowSeconds] represents the counts of the keys
+    //      recorded during its second, so they can be taken back out of
+    //      window once that second is older than the window. Its takenOver
+    //      holds the keys that took over the count of another key in
+    //      window during that second: that count was made of occurrences
+    //      no later than the second, so it is forgiven along with it.
+    //    - latestSecond represents the most recent second anything was
+    //      recorded or queried in, or -1 before that.
+    //    - capacity bounds the number of distinct keys kept in window and
+    //      in each second.
+
+    // Representation Invariant:
+    //    - windowSeconds > 0, capacity > 0
+    //    - seconds.length == windowSeconds
+    //    - the second of every seconds[i] is within the last windowSeconds
+    //      seconds before latestSecond, or seconds[i] is empty
+    //    - every seconds[i].size <= capacity
+
+    // Thread Safety Arguments:
+    //  Following Strategy 4 (synchronization), all the fields are only read
+    //  and written in synchronized methods of this TrendingWindow.
+
+    /**
+     * @param initialTime the current time in milliseconds since January 1 1970
+     * @param windowSeconds the length of the window, > 0
+     * @param capacity the maximum number of distinct strings kept, > 0
+     */
+    TrendingWindow(long initialTime, int windowSeconds, int capacity) {
+        this.initialTime = initialTime;
+        this.windowSeconds = windowSeconds;
+        this.capacity = capacity;
+        this.window = new FrequencySummary(capacity);
+        this.seconds = new Second[windowSeconds];
+        for (int i = 0; i < windowSeconds; i++) {
+            this.seconds[i] = new Second();
+        }
+    }
+
+    /* The counts of the keys recorded during one second, by open addressing. */
+    private static final class Second {
+        long second;
+        int[] keys = emptyKeys(INITIAL_SLOTS);
+        int[] counts = new int[INITIAL_SLOTS];
+        int size;
+        int[] takenOver = new int[INITIAL_SLOTS];
+        int takeovers;
+
+        /* the slot of key, or the EMPTY slot where it would go */
+        int slotOf(int key) {
+            int mask = this.keys.length - 1;
+            int i = (key * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+            while (this.keys[i] != key && this.keys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /* double the number of slots; only while the second is still growing */
+        void grow() {
+            int[] oldKeys = this.keys;
+            int[] oldCounts = this.counts;
+            this.keys = emptyKeys(2 * oldKeys.length);
+            this.counts = new int[2 * oldKeys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slotOf(oldKeys[i]);
+                    this.keys[slot] = oldKeys[i];
+                    this.counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        void tookOver(int key) {
+            if (this.takeovers == this.takenOver.length) {
+                this.takenOver = Arrays.copyOf(this.takenOver, 2 * this.takeovers);
+            }
+            this.takenOver[this.takeovers++] = key;
+        }
+
+        void clear() {
+            Arrays.fill(this.keys, EMPTY);
+            this.size = 0;
+            this.takeovers = 0;
+        }
+
+        private static int[] emptyKeys(int length) {
+            int[] keys = new int[length];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+
+    /**
+     * Count one occurrence of key at the given time. Allocates nothing
+     * once every second has held as many keys as it will hold.
+     *
+     * @param key a key >= 0
+     * @param time the time in milliseconds since January 1 1970
+     */
+    synchronized void increment(int key, long time) {
+        count(key, 1, time);
+    }
+
+    /* count key amount times at time, see increment */
+    private void count(int key, int amount, long time) {
+        long second = secondOf(time);
+        advanceTo(second);
+        if (second <= this.latestSecond - this.windowSeconds) {
+            // already outside the window.
+            return;
+        }
+        Second counts = this.seconds[(int) (second % this.windowSeconds)];
+        if (counts.size == 0) {
+            counts.second = second;
+        }
+        int slot = counts.slotOf(key);
+        if (counts.keys[slot] == EMPTY) {
+            if (counts.size >= this.capacity) {
+                // a one-off key in a very busy second; not worth tracking.
+                return;
+            }
+            if (2 * (counts.size + 1) > counts.keys.length) {
+                counts.grow();
+                slot = counts.slotOf(key);
+            }
+            counts.keys[slot] = key;
+            counts.counts[slot] = 0;
+            counts.size++;
+        }
+        counts.counts[slot] += amount;
+        int forgotten = amount == 1 ? this.window.increment(key) : this.window.add(key, amount);
+        if (forgotten != EMPTY) {
+            counts.tookOver(key);
+        }
+    }
+
+    /**
+     * @param limit the maximum number of keys to return
+     * @param time the current time in milliseconds since January 1 1970
+     * @return up to limit of the most counted keys within the window that
+     * ends at time, in non-increasing count order. Takes O(limit) time.
+     */
+    synchronized List<Integer> top(int limit, long time) {
+        advanceTo(secondOf(time));
+        List<Integer> result = new ArrayList<>();
+        for (FrequencySummary.Counted c : this.window.top(limit)) {
+            result.add(c.key);
+        }
+        return result;
+    }
+
+    /**
+     * Visit the counts of every second still within the window.
+     *
+     * @param visitor called with the start time of a second (in
+     *                milliseconds since January 1 1970), a key and the
+     *                number of times it was counted in that second
+     */
+    synchronized void forEachSecond(CountVisitor visitor) {
+        for (Second counts : this.seconds) {
+            if (counts.size == 0 || counts.second <= this.latestSecond - this.windowSeconds) {
+                continue;
+            }
+            long time = this.initialTime + counts.second * 1000;
+            for (int i = 0; i < counts.keys.length; i++) {
+                if (counts.keys[i] != EMPTY) {
+                    visitor.visit(time, counts.keys[i], counts.counts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count key count times in the second starting at time, unless that
+     * second is already outside the window ending now. Used to restore the
+     * counts of a snapshot.
+     *
+     * @param key a key >= 0
+     * @param count the number of occurrences, > 0
+     * @param time the start of the second they happened in, in milliseconds
+     *             since January 1 1970
+     * @param now the current time in milliseconds since January 1 1970
+     */
+    synchronized void restore(int key, int count, long time, long now) {
+        if (count <= 0 || now - time >= this.windowSeconds * 1000L) {
+            return;
+        }
+        count(key, count, time);
+    }
+
+    /* Receives the counts of a TrendingWindow, see forEachSecond. */
+    interface CountVisitor {
+        void visit(long time, int key, int count);
+    }
+
+    private long secondOf(long time) {
+        return Math.max(0, time - this.initialTime) / 1000;
+    }
+
+    /* drop every second that is older than the window ending at second */
+    private void advanceTo(long second) {
+        if (second <= this.latestSecond) {
+            return;
+        }
+        this.latestSecond = second;
+        for (Second counts : this.seconds) {
+            if (counts.size > 0 && counts.second <= second - this.windowSeconds) {
+                for (int i = 0; i < counts.keys.length; i++) {
+                    if (counts.keys[i] != EMPTY) {
+                        this.window.subtract(counts.keys[i], counts.counts[i]);
+                    }
+                }
+                // what was taken over then is older than the window too:
+                for (int i = 0; i < counts.takeovers; i++) {
+                    this.window.forgive(counts.takenOver[i]);
+                }
+                counts.clear();
+            }
+        }
+    }
+}
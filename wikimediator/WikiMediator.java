@@ -1,26 +1,89 @@
 package cpen221.mp3.wikimediator;
 
-import cpen221.mp3.cache.Cache;
-import cpen221.mp3.cache.myCacheable;
-import fastily.jwiki.core.Wiki;
-
+import cpen221.mp3.cache.CacheRegion;
+import cpen221.mp3.cache.CompressedTextStore;
+import cpen221.mp3.cache.PeerCache;
+import cpen221.mp3.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class WikiMediator {
 
-    // a Cache that will be used throughout the life of the WikiMediator:
-    Cache<myCacheable> cache = new Cache(CACHE_CAPACITY, CACHE_TIME_OUT);
-    Wiki myWiki = new Wiki("en.wikipedia.org");
+    // Caches that will be used throughout the life of the WikiMediator:
+    final CacheRegion<String> cache = new CacheRegion<>(CACHE_CAPACITY, CACHE_TIME_OUT,
+            WikiMediator::pageBytes, CACHE_MAX_BYTES);
+    final CacheRegion<List<String>> searchCache =
+            new CacheRegion<>(SEARCH_CACHE_CAPACITY, SEARCH_CACHE_TIME_OUT);
+    final CacheRegion<List<String>> backlinkCache =
+            new CacheRegion<>(LINK_CACHE_CAPACITY, LINK_CACHE_TIME_OUT);
+    final CacheRegion<List<String>> linkCache =
+            new CacheRegion<>(LINK_CACHE_CAPACITY, LINK_CACHE_TIME_OUT);
+    // Off-heap second tier for page text, or null when it is disabled:
+    final CompressedTextStore offHeapPages;
+    // Page text shared with other servers, or null when it is not shared:
+    volatile PeerCache peerPages;
+    final WikiSource myWiki;
     // Used for Zeitgeist and Trending methods:
-    Map<String, Integer> frequencyMap = new HashMap<>();
-    Map<String, Long> timeMap = new HashMap<>();
+    final QueryIds queryIds = new QueryIds(MAX_QUERIES);
+    final TopKCounter allTimeQueries;
+    final TrendingWindow recentQueries;
     // Used for peakLoad30s method:
-    List<Long> allTimeStamps = new ArrayList<>();
+    final LoadTracker loadTracker;
+    // The log of every request, or null when requests are not logged:
+    volatile EventLog eventLog;
+    // Fetches, in the background, the pages likely to be asked for next:
+    private final Prefetcher prefetcher = new Prefetcher(PREFETCH_THREADS, PREFETCH_QUEUE,
+            PREFETCH_BYTES_PER_SECOND, PREFETCH_REMEMBERED);
+    // Latency of the calls to myWiki, by operation, and calls that failed:
+    private final Map<String, LatencyHistogram> upstreamLatency = new LinkedHashMap<>();
+    private final LongAdder upstreamErrors = new LongAdder();
+    private static final Logger LOG = Logger.getLogger(WikiMediator.class.getName());
     private static final int CACHE_TIME_OUT = 43200;
-    private static final int CACHE_CAPACITY = 256;
+    private static final int CACHE_CAPACITY = 65536;
+    private static final long CACHE_MAX_BYTES = 64L << 20;
+    private static final int SEARCH_CACHE_TIME_OUT = 3600;
+    private static final int SEARCH_CACHE_CAPACITY = 1024;
+    private static final int LINK_CACHE_TIME_OUT = 3600;
+    private static final int LINK_CACHE_CAPACITY = 8192;
+    private static final int QUERY_CAPACITY = 8192;
+    private static final int QUERY_STRIPES = 16;
+    private static final int MAX_QUERIES = 1 << 20;
+    private static final int TRENDING_SECONDS = 30;
+    private static final int GRAPH_THREADS = 8;
+    private static final int BATCH_TITLES = 50;
+    private static final int PREFETCH_MIN_REQUESTS = 2;
+    private static final int PREFETCH_NEIGHBOURS = 5;
+    private static final int PREFETCH_THREADS = 2;
+    private static final int PREFETCH_QUEUE = 64;
+    private static final long PREFETCH_BYTES_PER_SECOND = 1L << 20;
+    private static final int PREFETCH_REMEMBERED = 4096;
+    private static final Duration PREFETCH_TIMEOUT = Duration.ofSeconds(30);
     private final long wikiMediatorInitialTime;
-    private Object Executors;
+    // Shared by every WikiMediator to expand graph traversals in parallel:
+    private static final ExecutorService graphPool =
+            Executors.newFixedThreadPool(GRAPH_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "wiki-graph");
+                thread.setDaemon(true);
+                return thread;
+            });
+    // Shared by every WikiMediator to write snapshots in the background:
+    private static final ScheduledExecutorService snapshotTimer =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wiki-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
 
 
     // Abstraction Function (what do all those variables do to make/contribute
@@ -28,47 +91,418 @@ public class WikiMediator {
     //  WikiMediator represents a service for interacting with Wikipedia to obtain
     //  pages and to gain other information about some query.
     //     - cache represents a storage to help WikiMediator avoid accessing
-    //       network resources excessively. cache stores any objects that
-    //       have a unique Identification value.
-    //     - myWiki represents the main entry point to the jwiki API, because
-    //       WikiMediator uses jwiki API to interact with the wikipedia server.
-    //     - frequencyMap keeps track of the number of times a query or
-    //       a pageTitle was searched for using this WikiMediator service.
-    //     - timeMap keeps track of the exact and the most updated time a
-    //       query or pageTitle was searched for using this WikiMediator service.
-    //     - allTimeStamps keeps track of the time each of the 6 basic page
+    //       network resources excessively. cache stores the text of pages,
+    //       keyed by pageTitle.
+    //     - searchCache stores the results of simpleSearch, keyed by the
+    //       limit and the query.
+    //     - backlinkCache and linkCache store the titles of the pages linking
+    //       to a page and linked from a page, keyed by the page's title, so
+    //       that graph traversals reuse the links fetched by earlier requests.
+    //     - offHeapPages, if not null, keeps a compressed copy of every
+    //       fetched page outside the Java heap, so pages evicted from cache
+    //       are decompressed instead of being fetched again. Pages are
+    //       compressed on its own thread, not on the threads of requests.
+    //     - peerPages, if not null, shares page text with the WikiMediators
+    //       of other servers: each title is owned by one of them, which
+    //       fetches it for all the others, so a page missing from cache (and
+    //       offHeapPages) is asked of its owner before myWiki.
+    //     - Concurrent misses for the same key in any of these caches share
+    //       one call to myWiki.
+    //     - myWiki represents the wiki this WikiMediator interacts with:
+    //       the jwiki API for the wikipedia server by default, or an offline
+    //       fixture.
+    //     - queryIds gives each query or pageTitle searched for an int id
+    //       (for the first MAX_QUERIES distinct ones), and keeps the exact
+    //       number of times and the last time it was searched for. The
+    //       statistics below are kept by id, so each string is stored once.
+    //       The strings searched for after that are counted approximately
+    //       by queryIds itself, and zeitgeist merges the heaviest of them in.
+    //     - allTimeQueries keeps track of the number of times a query or
+    //       a pageTitle was searched for using this WikiMediator service,
+    //       for the QUERY_CAPACITY most searched strings.
+    //     - recentQueries keeps track of the number of times a query or
+    //       pageTitle was searched for in the last TRENDING_SECONDS seconds.
+    //     - loadTracker keeps track of how many of the 6 basic page
     //       requests from this WikiMediator (simpleSearch, getPage,
-    //       zeitgist, trending, peakLoad30) were requested.
+    //       zeitgist, trending, peakLoad30) were requested in each second,
+    //       and of the busiest 30-second window seen so far.
     //     - CACHE_TIME_OUT represents the number of seconds before an item
     //       gets marked as stale and gets evicted from the cache. WikiMediator's
     //       cache evicts elements that have been in cache for more than
     //       12 hours (43200 seconds).
+    //     - CACHE_MAX_BYTES represents the maximum number of bytes of page
+    //       text stored inside the cache by the WikiMediator service (64 MiB).
+    //       Pages that are rarely requested are evicted first, so a few huge
+    //       one-off pages cannot push out many popular small ones.
     //     - CACHE_CAPACITY represents the maximum number of pages that
-    //       are stored inside the cache by the WikiMediator service. WikiMediator
-    //       only allows 256 pages to be stored in its cache.
+    //       are stored inside the cache, however small they are.
+    //     - SEARCH_CACHE_* and LINK_CACHE_* are the capacities and timeouts
+    //       (in seconds) of searchCache, and of backlinkCache and linkCache.
+    //     - eventLog, if not null, keeps every request on disk, so that
+    //       allTimeQueries, recentQueries and loadTracker are rebuilt from it
+    //       on the next start.
     //     - wikiMediatorInitialTime represents the exact time this WikiMediator
     //       service was requested/called for.
+    //     - upstreamLatency maps the name of each WikiSource method to the
+    //       durations of the calls made to it, and upstreamErrors represents
+    //       the number of those calls that threw.
+    //     - BATCH_TITLES is the largest number of pages fetched from myWiki
+    //       in one call (the most the MediaWiki API accepts).
+    //     - prefetcher fetches into cache, in the background, the pages
+    //       linked from a page that missed the cache, if that page was asked
+    //       for at least PREFETCH_MIN_REQUESTS times: the PREFETCH_NEIGHBOURS
+    //       links asked for most (then most recently) according to
+    //       queryIds, since clients often follow links next. It fetches at
+    //       most PREFETCH_THREADS pages at once, on low-priority threads,
+    //       and at most PREFETCH_BYTES_PER_SECOND bytes of text a second
+    //       (at two bytes per char, as cache weighs pages), so it never
+    //       takes much from the requests clients are waiting for.
+    //     - graphPool represents the GRAPH_THREADS daemon threads, shared by
+    //       all WikiMediators, that fetch the links of the pages of one BFS
+    //       level in parallel.
+    //     - snapshotTimer represents the daemon thread, shared by all
+    //       WikiMediators, that writes periodic snapshots.
 
 
     // Rep Invariants:
     //   - The elements put into the cache should be of type Cacheable.
-    //   - The domain defined inside the wiki's constructor has to be a
-    //     well-defined and non-null string.
-    //   - The key for frequencyMap != null
-    //   - The value for frequencyMap > 0
-    //   - The key for timeMap != null
-    //   - The value for timeMap > 0
-    //   - The elements of allTimeStamps are greater than zero
+    //   - myWiki != null
+    //   - allTimeQueries != null
+    //   - recentQueries != null
+    //   - every key of allTimeQueries and recentQueries is an id of queryIds
+    //   - loadTracker != null
+    //   - prefetcher != null
+    //   - upstreamLatency has one histogram for each method of WikiSource,
+    //     and is never changed after construction
     //   - wikiMediatorInitialTime should correspond to the exact time of the
     //     CPU which this WikiMediator service was initialized/requested.
 
 
     // Negative integers not allowed.
-    // the value for frequencyMap should not get disconnected from the actual
+    // the counts in allTimeQueries should not get disconnected from the actual
     // frequency increase.
 
+    /**
+     * Create a WikiMediator for English Wikipedia.
+     */
     public WikiMediator() {
+        this(JWikiSource.english());
+    }
+
+    /**
+     * Create a WikiMediator for the given wiki.
+     *
+     * @param source the wiki to interact with
+     */
+    public WikiMediator(WikiSource source) {
+        this(source, 0);
+    }
+
+    /**
+     * Create a WikiMediator for the given wiki that also keeps up to
+     * offHeapBytes of compressed page text outside the Java heap.
+     *
+     * @param source the wiki to interact with
+     * @param offHeapBytes the size of the off-heap page tier, 0 for none
+     */
+    public WikiMediator(WikiSource source, long offHeapBytes) {
+        this.myWiki = source;
+        this.offHeapPages = offHeapBytes > 0
+                ? new CompressedTextStore(offHeapBytes, CACHE_TIME_OUT) : null;
         this.wikiMediatorInitialTime = System.currentTimeMillis();
+        this.loadTracker = new LoadTracker(this.wikiMediatorInitialTime);
+        this.allTimeQueries = new TopKCounter(QUERY_CAPACITY, QUERY_STRIPES);
+        this.recentQueries = new TrendingWindow(this.wikiMediatorInitialTime,
+                TRENDING_SECONDS, QUERY_CAPACITY);
+        for (String operation : List.of("allPages", "getPageText", "getPageTexts",
+                "whatLinksHere", "getLinksOnPage")) {
+            this.upstreamLatency.put(operation, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * @return the fraction of getPage requests answered from the cache
+     */
+    public double pageCacheHitRate() {
+        return this.cache.hitRate();
+    }
+
+    /**
+     * @param pageTitle the title of a page
+     * @return true if getPage(pageTitle) can be answered without calling
+     * the wiki
+     */
+    public boolean hasPage(String pageTitle) {
+        return pageTitle.equals("") || pageTitle.equals(" ") || cache.contains(pageTitle)
+                || (this.offHeapPages != null && this.offHeapPages.contains(pageTitle));
+    }
+
+    /**
+     * @param query the query of a search
+     * @param limit the limit of a search
+     * @return true if simpleSearch(query, limit) can be answered without
+     * calling the wiki
+     */
+    public boolean hasSearch(String query, int limit) {
+        return query.equals("") || query.equals(" ") || limit == 0
+                || searchCache.contains(limit + "|" + query);
+    }
+
+    /**
+     * @return the number of bytes of page text held in the cache
+     */
+    public long pageCacheBytes() {
+        return this.cache.weight();
+    }
+
+    /**
+     * @return the fraction of pages missing from the cache that were found
+     * in the off-heap tier, or 0 if there is no off-heap tier
+     */
+    public double offHeapHitRate() {
+        return this.offHeapPages == null ? 0 : this.offHeapPages.hitRate();
+    }
+
+    /**
+     * Share page text with the WikiMediators of other servers (typically
+     * the replicas behind one load balancer), so that a page is fetched
+     * from the wiki about once for all of them. Each title is owned by one
+     * WikiMediator, chosen by consistent hashing of the titles over nodes:
+     * the others ask it for the page, over a binary protocol, when the page
+     * is missing from their own caches. When the owner cannot be reached,
+     * the page is fetched from the wiki as if it were not shared.
+     *
+     * @param self the address to listen at for the other WikiMediators
+     * @param nodes the addresses every WikiMediator sharing pages listens
+     *              at, with or without self, written the same way for all
+     * @throws IOException if this WikiMediator cannot listen at self
+     * @throws IllegalStateException if pages are already shared
+     */
+    public synchronized void sharePages(InetSocketAddress self, List<InetSocketAddress> nodes)
+            throws IOException {
+        if (this.peerPages != null) {
+            throw new IllegalStateException("pages are already shared");
+        }
+        this.peerPages = PeerCache.start(self, nodes, new PeerCache.Owner() {
+            @Override
+            public String load(String pageTitle, long timeoutMillis) {
+                Deadline deadline = Deadline.after(Duration.ofMillis(timeoutMillis));
+                return cache.get(pageTitle, () -> fetchPage(pageTitle, deadline, false),
+                        deadline.remainingNanos());
+            }
+
+            @Override
+            public String getIfCached(String pageTitle) {
+                String text = cache.getIfCached(pageTitle);
+                return text != null || offHeapPages == null ? text : offHeapPages.get(pageTitle);
+            }
+
+            @Override
+            public void put(String pageTitle, String text) {
+                cache.put(pageTitle, text);
+                if (offHeapPages != null) {
+                    offHeapPages.putInBackground(pageTitle, text);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the size, weight and hit, miss, eviction and expiry counts of
+     * each cache, the lookups sent to and received from the servers sharing
+     * pages, the number of pages prefetched and how many of them were then
+     * asked for, the number and latency of the calls made to the wiki by
+     * operation, the number of queries given ids and of searches for
+     * queries that had none, and the number of requests the event log
+     * dropped, as nested maps
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> caches = new LinkedHashMap<>();
+        caches.put("page", this.cache.stats());
+        caches.put("search", this.searchCache.stats());
+        caches.put("backlinks", this.backlinkCache.stats());
+        caches.put("links", this.linkCache.stats());
+        if (this.offHeapPages != null) {
+            Map<String, Number> offHeap = new LinkedHashMap<>();
+            offHeap.put("size", this.offHeapPages.size());
+            offHeap.put("storedBytes", this.offHeapPages.storedBytes());
+            offHeap.put("textBytes", this.offHeapPages.textBytes());
+            offHeap.put("hitRate", this.offHeapPages.hitRate());
+            offHeap.put("dropped", this.offHeapPages.dropped());
+            caches.put("offHeap", offHeap);
+        }
+        PeerCache peers = this.peerPages;
+        if (peers != null) {
+            caches.put("peers", peers.stats());
+        }
+        Map<String, Object> upstream = new LinkedHashMap<>();
+        this.upstreamLatency.forEach((operation, latency) -> {
+            if (latency.count() > 0) {
+                upstream.put(operation, latency.summary());
+            }
+        });
+        upstream.put("errors", this.upstreamErrors.sum());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("caches", caches);
+        stats.put("prefetch", this.prefetcher.stats());
+        stats.put("upstream", upstream);
+        Map<String, Number> queries = new LinkedHashMap<>();
+        queries.put("ids", this.queryIds.size());
+        queries.put("overflowed", this.queryIds.overflowed());
+        stats.put("queries", queries);
+        EventLog log = this.eventLog;
+        if (log != null) {
+            stats.put("eventsDropped", log.dropped());
+        }
+        return stats;
+    }
+
+    /**
+     * @return the statistics behind zeitgeist, trending and peakLoad30s, in
+     * a form that can be sent to other servers and merged with theirs
+     */
+    public StatsDigest digest() {
+        StatsDigest digest = new StatsDigest();
+        this.allTimeQueries.forEach((query, count) ->
+                digest.addQuery(this.queryIds.queryOf(query), count));
+        // queries without ids, which zeitgeist ranks along with the others:
+        for (Map.Entry<String, Long> query : this.queryIds.topOverflow(Integer.MAX_VALUE)) {
+            digest.addQuery(query.getKey(), query.getValue());
+        }
+        this.recentQueries.forEachSecond((time, query, count) ->
+                digest.addRecent(time, this.queryIds.queryOf(query), count));
+        this.loadTracker.forEachSecond(digest::addLoad);
+        digest.raisePeak(this.loadTracker.peak());
+        return digest;
+    }
+
+    /* run one call to myWiki under deadline, timing it as operation */
+    private <T> T upstream(String operation, Deadline deadline, Supplier<T> call) {
+        LatencyHistogram latency = this.upstreamLatency.get(operation);
+        long start = System.nanoTime();
+        try {
+            return deadline.call(call);
+        } catch (RuntimeException e) {
+            this.upstreamErrors.increment();
+            throw e;
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /* the heap used by the text of a page, at two bytes per char */
+    private static long pageBytes(String text) {
+        return text == null ? 0 : 2L * text.length();
+    }
+
+    /**
+     * Write the caches and statistics of this WikiMediator to a snapshot
+     * file, replacing any earlier snapshot in that file.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        Snapshot.write(this, file);
+    }
+
+    /**
+     * Restore the caches and statistics saved by saveSnapshot, typically
+     * right after this WikiMediator is created. Cached values go stale at the
+     * same time they would have without the restart.
+     *
+     * @param file the snapshot file
+     * @throws IOException if file cannot be read or is not a snapshot
+     */
+    public void loadSnapshot(Path file) throws IOException {
+        Snapshot.read(this, file);
+    }
+
+    /**
+     * Log every request from now on to the event log in directory, after
+     * rebuilding the statistics of zeitgeist, trending and peakLoad30s from
+     * the requests already logged there. Call it right after creating this
+     * WikiMediator, and before loading a snapshot: while requests are
+     * logged, snapshots only save and restore the caches. The log is closed
+     * when the JVM shuts down.
+     *
+     * @param directory the directory of the event log
+     * @throws IOException if the event log cannot be read or created
+     * @throws IllegalStateException if requests are already being logged
+     */
+    public synchronized void logEvents(Path directory) throws IOException {
+        if (this.eventLog != null) {
+            throw new IllegalStateException("requests are already logged");
+        }
+        long now = System.currentTimeMillis();
+        LoadTracker[] replayed = new LoadTracker[1];
+        EventLog log = EventLog.open(directory, this.queryIds, EventLog.SEGMENT_RECORDS,
+                new EventLog.Replay() {
+                    @Override
+                    public void event(long time, int type, int query) {
+                        if (replayed[0] == null) {
+                            replayed[0] = new LoadTracker(time);
+                        }
+                        replayed[0].record(time);
+                        if (query != EventLog.NO_QUERY) {
+                            queryIds.add(query, 1, time);
+                            allTimeQueries.increment(query);
+                            recentQueries.restore(query, 1, time, now);
+                        }
+                    }
+
+                    @Override
+                    public void rollup(long time, int type, int query, int count) {
+                        if (query != EventLog.NO_QUERY) {
+                            queryIds.add(query, count, time);
+                            allTimeQueries.add(query, count);
+                        }
+                    }
+
+                    @Override
+                    public void peak(int load) {
+                        loadTracker.restorePeak(load);
+                    }
+                });
+        if (replayed[0] != null) {
+            this.loadTracker.restorePeak(replayed[0].peak());
+        }
+        this.eventLog = log;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not close event log", e);
+            }
+        }, "wiki-event-log-on-exit"));
+    }
+
+    /**
+     * Restore the snapshot in file if there is one, then save a snapshot to
+     * file every period and once more when the JVM shuts down.
+     *
+     * @param file the snapshot file
+     * @param period the time between snapshots
+     */
+    public void snapshotPeriodically(Path file, Duration period) {
+        if (Files.exists(file)) {
+            try {
+                loadSnapshot(file);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not load snapshot", e);
+            }
+        }
+        Runnable save = () -> {
+            try {
+                saveSnapshot(file);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not save snapshot", e);
+            }
+        };
+        snapshotTimer.scheduleWithFixedDelay(save, period.toMillis(), period.toMillis(),
+                TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(save, "wiki-snapshot-on-exit"));
     }
 
 
@@ -94,27 +528,33 @@ public class WikiMediator {
      * list if the query is an empty string or if the limit is zero.
      */
     public List<String> simpleSearch(String query, int limit) {
-        // for PeakLoad30s:
-        this.allTimeStamps.add(System.currentTimeMillis());
+        return simpleSearch(query, limit, Deadline.NONE);
+    }
+
+    /**
+     * simpleSearch(query, limit), giving up once deadline expires.
+     *
+     * @param query a non-null string to search for in Wikipedia
+     * @param limit sets the the maximum number of page titles to be returned
+     * @param deadline when the result is no longer wanted
+     * @return up to limit page titles that match the query
+     * @throws DeadlineExceededException if deadline expires before the
+     * titles are found
+     */
+    public List<String> simpleSearch(String query, int limit, Deadline deadline) {
+        // for PeakLoad30s, "zeitgeist" and "trending":
+        recordRequest(EventLog.SIMPLE_SEARCH, query);
         List<String> searchResult = new ArrayList<>();
-        // Doing the following for "zeitgeist" and "getPage" method's sake:
-        if (this.frequencyMap.containsKey(query)) {
-            int numOfOccur = this.frequencyMap.get(query);
-            this.frequencyMap.put(query, ++numOfOccur);
-            this.timeMap.put(query, System.currentTimeMillis());
-        } else {
-            this.frequencyMap.put(query, 1);
-            this.timeMap.put(query, System.currentTimeMillis());
-        }
 
         // actual simpleSearch logic:
         if (query.equals("") | query.equals(" ") | limit == 0) {
             return new ArrayList<>();
         }
-        searchResult = myWiki.allPages(query, false, false,
-                limit, null);
+        searchResult = searchCache.get(limit + "|" + query,
+                () -> List.copyOf(upstream("allPages", deadline, () -> myWiki.allPages(query, limit))),
+                deadline.remainingNanos());
 
-        return List.copyOf(searchResult);
+        return searchResult;
     }
 
     /**
@@ -127,18 +567,21 @@ public class WikiMediator {
      * string if the pageTitle is an empty string or if it is a space.
      */
     public String getPage(String pageTitle) {
-        // for PeakLoad30s:
-        this.allTimeStamps.add(System.currentTimeMillis());
-
-        // Doing the following for "zeitgeist" and "getPage" method's sake:
-        if (this.frequencyMap.containsKey(pageTitle)) {
-            int numOfOccur = this.frequencyMap.get(pageTitle);
-            this.frequencyMap.put(pageTitle, ++numOfOccur);
-            this.timeMap.put(pageTitle, System.currentTimeMillis());
-        } else {
-            this.frequencyMap.put(pageTitle, 1);
-            this.timeMap.put(pageTitle, System.currentTimeMillis());
-        }
+        return getPage(pageTitle, Deadline.NONE);
+    }
+
+    /**
+     * getPage(pageTitle), giving up once deadline expires.
+     *
+     * @param pageTitle the title of the page
+     * @param deadline when the result is no longer wanted
+     * @return the text of the page
+     * @throws DeadlineExceededException if deadline expires before the
+     * page is fetched
+     */
+    public String getPage(String pageTitle, Deadline deadline) {
+        // for PeakLoad30s, "zeitgeist" and "trending":
+        int id = recordRequest(EventLog.GET_PAGE, pageTitle);
 
         // Zeroth step:
         if (pageTitle.equals("") | pageTitle.equals(" ")) {
@@ -146,28 +589,223 @@ public class WikiMediator {
         }
 
         // First of all, check the Cache if we have the
-        // text associated with the pageTitle:
-        try {
-            // Instance of any Generic type has to be non-generic:
-            myCacheable<String> cachedElement = cache.get(pageTitle);
-            return cachedElement.content();
-        } catch (NoSuchElementException e) {
-            // Now, since we haven't returned yet(and got an EXCEPTION, meaning
-            // could not find the object inside the Cache), means
-            // the argument "pageTitle" was not found in the Cache,
-            // so we should add it into the Cache
-            // so that the next time someone wants to have it, it should
-            // be retrieved from the Cache:
-            String resultFromWiki = myWiki.getPageText(pageTitle);
-            // generate a unique ID for every cacheable object we put into the Cache:
-
-            // The pageTitle is used as the ID for an object.
-            this.cache.put(new myCacheable(pageTitle, resultFromWiki));
-
-            return resultFromWiki;
+        // text associated with the pageTitle. If not, fetch it and add it
+        // into the Cache so that the next time someone wants to have it, it
+        // will be retrieved from the Cache. If other requests missed the
+        // same page at the same time, only one of them fetches it:
+        boolean cached = cache.contains(pageTitle);
+        this.prefetcher.requested(pageTitle, cached);
+        String text = cache.get(pageTitle, () -> fetchPage(pageTitle, deadline, true),
+                deadline.remainingNanos());
+        if (!cached && id != QueryIds.NONE
+                && this.queryIds.count(id) >= PREFETCH_MIN_REQUESTS) {
+            this.prefetcher.submit(() -> prefetchNeighbours(pageTitle));
+        }
+        return text;
+    }
+
+    /*
+     * Fetch into cache the PREFETCH_NEIGHBOURS pages linked from pageTitle
+     * that were asked for most, then most recently, within the byte budget
+     * of prefetcher. Runs on a thread of prefetcher.
+     */
+    private void prefetchNeighbours(String pageTitle) {
+        Deadline deadline = Deadline.after(PREFETCH_TIMEOUT);
+        List<String> links = getLinksOnPage(pageTitle, deadline);
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (String link : links) {
+            ids.putIfAbsent(link, this.queryIds.find(link));
         }
+        List<String> neighbours = new ArrayList<>(ids.keySet());
+        neighbours.removeIf(this::hasPage);
+        // the sort is stable, so links never asked for keep their order on
+        // the page, after the others:
+        neighbours.sort(Comparator.comparingLong((String link) -> countOf(ids.get(link)))
+                .thenComparingLong(link -> lastSeenOf(ids.get(link)))
+                .reversed());
+        int wanted = Math.min(PREFETCH_NEIGHBOURS, neighbours.size());
+        for (String neighbour : neighbours.subList(0, wanted)) {
+            if (!this.prefetcher.hasBudget()) {
+                return;
+            }
+            // not a request for the page: no miss is counted, and the page
+            // does not gain frequency in the cache until a client asks for it.
+            String text = cache.prefetch(neighbour,
+                    () -> fetchPage(neighbour, deadline, true));
+            if (text != null) {
+                this.prefetcher.prefetched(neighbour, pageBytes(text));
+            }
+        }
+    }
+
+    private long countOf(int id) {
+        return id == QueryIds.NONE ? 0 : this.queryIds.count(id);
     }
 
+    private long lastSeenOf(int id) {
+        return id == QueryIds.NONE ? 0 : this.queryIds.lastSeen(id);
+    }
+
+    /**
+     * Given several pageTitles, return the text of each of their pages, as
+     * getPage would, with fewer calls to the wiki: each title is fetched
+     * once however often it is listed, cached pages are not fetched, and
+     * the other pages are fetched BATCH_TITLES at a time.
+     *
+     * @param pageTitles the titles of the pages; every title counts as one
+     *                   getPage request for the statistics of this WikiMediator
+     * @return the text of each page, keyed by its title
+     */
+    public Map<String, String> getPages(List<String> pageTitles) {
+        return getPages(pageTitles, Deadline.NONE);
+    }
+
+    /**
+     * getPages(pageTitles), giving up once deadline expires.
+     *
+     * @param pageTitles the titles of the pages
+     * @param deadline when the result is no longer wanted
+     * @return the text of each page, keyed by its title; an empty string
+     * for a blank title
+     * @throws IllegalArgumentException if a title is null; nothing is then
+     * recorded or fetched
+     * @throws DeadlineExceededException if deadline expires before every
+     * page is fetched
+     */
+    public Map<String, String> getPages(List<String> pageTitles, Deadline deadline) {
+        if (pageTitles.contains(null)) {
+            throw new IllegalArgumentException("null title");
+        }
+        Map<String, String> texts = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String pageTitle : pageTitles) {
+            recordRequest(EventLog.GET_PAGE, pageTitle);
+            if (texts.containsKey(pageTitle)) {
+                continue;
+            }
+            String text = pageTitle.isBlank() ? "" : cache.getIfCached(pageTitle);
+            if (text == null && this.offHeapPages != null) {
+                text = this.offHeapPages.get(pageTitle);
+                if (text != null) {
+                    cache.put(pageTitle, text);
+                }
+            }
+            texts.put(pageTitle, text);
+            if (text == null) {
+                missing.add(pageTitle);
+            }
+        }
+
+        // pages other servers own and have already fetched:
+        PeerCache peers = this.peerPages;
+        if (peers != null && !missing.isEmpty()) {
+            Map<String, String> shared = peers.getAllIfCached(missing, deadline.remainingNanos());
+            shared.forEach((pageTitle, text) -> {
+                texts.put(pageTitle, text);
+                cache.put(pageTitle, text);
+                if (this.offHeapPages != null) {
+                    this.offHeapPages.putInBackground(pageTitle, text);
+                }
+            });
+            missing.removeAll(shared.keySet());
+        }
+
+        Map<String, String> fetchedForPeers = new HashMap<>();
+        for (int from = 0; from < missing.size(); from += BATCH_TITLES) {
+            List<String> batch = missing.subList(from, Math.min(missing.size(), from + BATCH_TITLES));
+            Map<String, String> fetched =
+                    upstream("getPageTexts", deadline, () -> myWiki.getPageTexts(batch));
+            for (String pageTitle : batch) {
+                String text = fetched.getOrDefault(pageTitle, "");
+                texts.put(pageTitle, text);
+                cache.put(pageTitle, text);
+                if (this.offHeapPages != null) {
+                    this.offHeapPages.putInBackground(pageTitle, text);
+                }
+                if (peers != null && !peers.owns(pageTitle)) {
+                    fetchedForPeers.put(pageTitle, text);
+                }
+            }
+        }
+        if (!fetchedForPeers.isEmpty()) {
+            // so that their owners do not fetch them again:
+            peers.putAll(fetchedForPeers, deadline.remainingNanos());
+        }
+        return texts;
+    }
+
+    /*
+     * The text of pageTitle from the off-heap tier, or else from the server
+     * that owns it if askPeers and pages are shared, or else from myWiki.
+     * Owners answering other servers do not ask peers, so that servers that
+     * disagree on owners never ask each other in a loop.
+     */
+    private String fetchPage(String pageTitle, Deadline deadline, boolean askPeers) {
+        String text = this.offHeapPages == null ? null : this.offHeapPages.get(pageTitle);
+        if (text != null) {
+            return text;
+        }
+        PeerCache peers = this.peerPages;
+        if (askPeers && peers != null && !peers.owns(pageTitle)) {
+            deadline.check();
+            text = peers.get(pageTitle, deadline.remainingNanos());
+        }
+        if (text == null) {
+            text = upstream("getPageText", deadline, () -> myWiki.getPageText(pageTitle));
+        }
+        if (this.offHeapPages != null) {
+            this.offHeapPages.putInBackground(pageTitle, text);
+        }
+        return text;
+    }
+
+    /* myWiki.whatLinksHere, through backlinkCache */
+    private List<String> whatLinksHere(String title, Deadline deadline) {
+        return backlinkCache.get(title,
+                () -> List.copyOf(upstream("whatLinksHere", deadline,
+                        () -> myWiki.whatLinksHere(title))), deadline.remainingNanos());
+    }
+
+    /* myWiki.getLinksOnPage, through linkCache */
+    private List<String> getLinksOnPage(String title, Deadline deadline) {
+        return linkCache.get(title,
+                () -> List.copyOf(upstream("getLinksOnPage", deadline,
+                        () -> myWiki.getLinksOnPage(title))), deadline.remainingNanos());
+    }
+
+
+    /** Count one request, for peakLoad30s, and its query, for zeitgeist
+    * and trending, and log it if requests are logged.
+    *
+    * @param type the type of the request, see EventLog
+    * @param query the query or pageTitle that was searched for, or null for
+    *              requests that are not searches
+    * @return the id of query in queryIds, or QueryIds.NONE if it has none
+    **/
+   private int recordRequest(int type, String query) {
+       long now = System.currentTimeMillis();
+       this.loadTracker.record(now);
+       int id = query == null ? QueryIds.NONE : this.queryIds.record(query, now);
+       if (id != QueryIds.NONE) {
+           this.allTimeQueries.increment(id);
+           this.recentQueries.increment(id, now);
+       }
+       EventLog log = this.eventLog;
+       if (log != null) {
+           log.record(type, id, now);
+       }
+       return id;
+   }
+
+   /* the queries of ids, in the same order */
+   private List<String> queriesOf(List<Integer> ids) {
+       List<String> queries = new ArrayList<>(ids.size());
+       for (int id : ids) {
+           queries.add(this.queryIds.queryOf(id));
+       }
+       return queries;
+   }
+
 
     /** Return a list of page titles that can be reached by
      * following up to hops links starting with the page specified by pageTitle.
@@ -175,41 +813,139 @@ public class WikiMediator {
      * @param pageTitle title of the starting page that will get us to other pages
      * @param hops number of links to be followed
      * @return list of page titles (links) that were reached by following hops
-     * number of links. Returns a list containing only the pageTitle if there
-     * are no links associated with pageTitle.
+     * number of links, starting with pageTitle itself and in the order they
+     * were reached. Every title appears once. Returns a list containing only
+     * the pageTitle if there are no links associated with pageTitle.
      **/
    public List<String> getConnectedPages(String pageTitle, int hops) {
+       return getConnectedPages(pageTitle, hops, Integer.MAX_VALUE);
+   }
+
+   /** Return a list of at most maxPages page titles that can be reached by
+    * following up to hops links starting with the page specified by pageTitle.
+    *
+    * @param pageTitle title of the starting page that will get us to other pages
+    * @param hops number of links to be followed
+    * @param maxPages the maximum number of titles to return, > 0
+    * @return the first maxPages titles of getConnectedPages(pageTitle, hops)
+    **/
+   public List<String> getConnectedPages(String pageTitle, int hops, int maxPages) {
+       return getConnectedPages(pageTitle, hops, maxPages, Deadline.NONE);
+   }
+
+   /** getConnectedPages(pageTitle, hops, maxPages), giving up once deadline
+    * expires. The pages being fetched when it expires are interrupted.
+    *
+    * @param pageTitle title of the starting page that will get us to other pages
+    * @param hops number of links to be followed
+    * @param maxPages the maximum number of titles to return, > 0
+    * @param deadline when the result is no longer wanted
+    * @return the first maxPages titles of getConnectedPages(pageTitle, hops)
+    * @throws DeadlineExceededException if deadline expires first, or the
+    * calling thread is interrupted
+    **/
+   public List<String> getConnectedPages(String pageTitle, int hops, int maxPages,
+                                         Deadline deadline) {
        // for PeakLoad30s:
-       this.allTimeStamps.add(System.currentTimeMillis());
-
-       if (hops == 0 || myWiki.whatLinksHere(pageTitle).isEmpty()) {
-           // fetching only the startingPage if hops = 0;
-           List<String> listOfTitles = new ArrayList<>();
-           listOfTitles.add(pageTitle);
-           return listOfTitles;
-       } else {
-           return getConnectedPagesHelper(pageTitle, hops);
+       recordRequest(EventLog.CONNECTED_PAGES, null);
+
+       // Breadth-first search, one level (hop) at a time. Every title is
+       // fetched at most once, because it is only put into a frontier the
+       // first time it is reached.
+       ConcurrentMap<String, String> reached = new ConcurrentHashMap<>();
+       reached.put(pageTitle, pageTitle);
+       List<String> listOfTitles = new ArrayList<>();
+       listOfTitles.add(pageTitle);
+       List<String> frontier = List.of(pageTitle);
+
+       for (int hop = 0; hop < hops && !frontier.isEmpty()
+               && listOfTitles.size() < maxPages; hop++) {
+           List<String> next = expandFrontier(frontier, reached,
+                   title -> whatLinksHere(title, deadline), deadline,
+                   maxPages - listOfTitles.size());
+           if (next == null) {
+               // interrupted: what has been reached so far is not the answer.
+               throw new DeadlineExceededException();
+           }
+           listOfTitles.addAll(next);
+           frontier = next;
        }
+
+       if (listOfTitles.size() > maxPages) {
+           return new ArrayList<>(listOfTitles.subList(0, maxPages));
+       }
+       return listOfTitles;
    }
 
 
-   /** Helper method for getConnectedPages method.
+   /** Fetch the neighbours of every title of a BFS frontier in parallel.
     *
+    * @param frontier the titles to expand
+    * @param parents maps every title already reached to the title it was
+    *                reached from; every newly reached title is added to it
+    * @param neighbours fetches the neighbours of one title
+    * @param deadline when the traversal is no longer wanted
+    * @param limit the number of titles wanted, > 0; once the first frontier
+    *              titles have reached that many, the fetches for the rest
+    *              are cancelled
+    * @return the titles reached for the first time, in frontier order, or
+    * null if the calling thread was interrupted while waiting (in which case
+    * the outstanding fetches are cancelled).
+    * @throws DeadlineExceededException if deadline expires first; the
+    * outstanding fetches are cancelled, and the ones not started yet are
+    * skipped
     **/
-   private List<String> getConnectedPagesHelper(String pageTitle, int hops) {
-       // base case:
-       if (hops == 0) {
-           return new ArrayList<>();
+   private static List<String> expandFrontier(List<String> frontier,
+                                              ConcurrentMap<String, String> parents,
+                                              Function<String, List<String>> neighbours,
+                                              Deadline deadline, int limit) {
+       deadline.check();
+       List<Future<List<String>>> fetches = new ArrayList<>(frontier.size());
+       for (String title : frontier) {
+           fetches.add(graphPool.submit(() -> {
+               List<String> discovered = new ArrayList<>();
+               if (deadline.expired()) {
+                   return discovered;
+               }
+               for (String neighbour : neighbours.apply(title)) {
+                   // putIfAbsent is atomic, so only one task claims each title:
+                   if (parents.putIfAbsent(neighbour, title) == null) {
+                       discovered.add(neighbour);
+                   }
+               }
+               return discovered;
+           }));
        }
 
-       // recursive case:
-       List<String> returningResult = new ArrayList<>();
-       List<String> beta = myWiki.whatLinksHere(pageTitle);
-       returningResult.addAll(beta);
-       for (String element: beta) {
-           returningResult.addAll(getConnectedPagesHelper(element, hops - 1));
+       List<String> next = new ArrayList<>();
+       try {
+           for (int i = 0; i < fetches.size() && next.size() < limit; i++) {
+               try {
+                   next.addAll(fetches.get(i).get(deadline.remainingNanos(),
+                           TimeUnit.NANOSECONDS));
+               } catch (ExecutionException e) {
+                   // one page failing to load should not lose the others.
+               }
+           }
+           // enough titles: the rest of the frontier is not expanded.
+           for (Future<List<String>> fetch : fetches) {
+               fetch.cancel(true);
+           }
+       } catch (InterruptedException e) {
+           for (Future<List<String>> fetch : fetches) {
+               fetch.cancel(true);
+           }
+           Thread.currentThread().interrupt();
+           return null;
+       } catch (TimeoutException e) {
+           for (Future<List<String>> fetch : fetches) {
+               fetch.cancel(true);
+           }
+           throw new DeadlineExceededException();
        }
-       return returningResult;
+       // fetches that stopped because deadline was cancelled return too few titles:
+       deadline.check();
+       return next;
    }
 
 
@@ -229,33 +965,29 @@ public class WikiMediator {
 
    public List<String> zeitgeist(int limit) {
        // for PeakLoad30s:
-       this.allTimeStamps.add(System.currentTimeMillis());
+       recordRequest(EventLog.ZEITGEIST, null);
 
        if (limit == 0) {
            return new ArrayList<>();
        }
 
-       List<String> frequencyList = new ArrayList<>();
-       Map<String, Integer> dummyFrequencyMap = new HashMap<>(this.frequencyMap);
-
-       while (!dummyFrequencyMap.isEmpty()) {
-           int initialMax = 0;
-           String foundCommon = "";
-           for (String element : dummyFrequencyMap.keySet()) {
-               if (dummyFrequencyMap.get(element) > initialMax) {
-                   initialMax = dummyFrequencyMap.get(element);
-                   foundCommon = element;
-               }
-           }
-
-           if (frequencyList.size() < limit) {
-               frequencyList.add(foundCommon);
-               dummyFrequencyMap.remove(foundCommon);
-           } else {
-               break;
-           }
+       List<Integer> top = this.allTimeQueries.top(limit);
+       List<Map.Entry<String, Long>> overflow = this.queryIds.topOverflow(limit);
+       if (overflow.isEmpty()) {
+           return queriesOf(top);
+       }
+       // queries without ids are ranked along with the others by their count.
+       List<Map.Entry<String, Long>> ranked = new ArrayList<>(overflow);
+       for (int id : top) {
+           ranked.add(new AbstractMap.SimpleImmutableEntry<>(
+                   this.queryIds.queryOf(id), this.queryIds.count(id)));
+       }
+       ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+       List<String> queries = new ArrayList<>(limit);
+       for (int i = 0; i < limit && i < ranked.size(); i++) {
+           queries.add(ranked.get(i).getKey());
        }
-       return frequencyList;
+       return queries;
    }
 
    /** Return the most common Strings used in simpleSearch and getPage requests
@@ -268,14 +1000,12 @@ public class WikiMediator {
     * */
    public List<String> trending(int limit) {
        // for PeakLoad30s:
-       this.allTimeStamps.add(System.currentTimeMillis());
+       recordRequest(EventLog.TRENDING, null);
 
        if (limit == 0) {
            return new ArrayList<>();
        }
-       List<String> resultFromZeitgeist = this.zeitgeist(limit);
-       return resultFromZeitgeist.stream().filter( s ->
-               (System.currentTimeMillis() - this.timeMap.get(s) <= 30000)).collect(Collectors.toList());
+       return queriesOf(this.recentQueries.top(limit, System.currentTimeMillis()));
    }
 
 
@@ -289,140 +1019,150 @@ public class WikiMediator {
     **/
    public int peakLoad30s() {
        // for PeakLoad30s:
-       this.allTimeStamps.add(System.currentTimeMillis());
-
-       List<Integer> countList = new ArrayList<>();
-       // Starting Time: 0 seconds
-       long window1= this.wikiMediatorInitialTime;
-       int count = 0;
-       long currentTime = System.currentTimeMillis();
-       while (window1 + 30000 <= currentTime) {
-           for (Long timeElement : this.allTimeStamps) {
-               if (timeElement <= window1 + 30000 && timeElement >= window1) {
-                   ++count;
-               }
-           }
-           // now that you found number of requests in the very first time
-           // interval (between 0s - 30 s), you should add that number into the
-           // countList:
-           countList.add(count);
-           window1 = window1 + 1000; // increment by 1 second (== 1000 milliseconds)
-       }
+       recordRequest(EventLog.PEAK_LOAD, null);
 
-       int maxSoFar = 0;
-       for (Integer countElement: countList) {
-           if (countElement > maxSoFar) {
-               maxSoFar = countElement;
-           }
-       }
-       return maxSoFar;
+       return this.loadTracker.peak();
    }
 
+   /** Find a shortest path of links from startPage to stopPage.
+    * Gives up after 300 seconds.
+    *
+    * @param startPage the title of the page to start from
+    * @param stopPage the title of the page to reach
+    * @return the titles of the pages along a shortest path from startPage to
+    * stopPage, including both. Returns an empty list if there is no such
+    * path or if it could not be found in time.
+    **/
    public List<String> getPath(String startPage, String stopPage) {
-       myRunnable2 runnableObject = new myRunnable2(startPage, stopPage);
+       myRunnable2 runnableObject = new myRunnable2(this, startPage, stopPage);
        return runnableObject.kk();
    }
 
-   public List<String> getPath_logic(String startPage, String stopPage, List<String> listOf) {
+   /** Find a shortest path of links from startPage to stopPage, giving up
+    * once deadline expires.
+    *
+    * @param startPage the title of the page to start from
+    * @param stopPage the title of the page to reach
+    * @param deadline when the path is no longer wanted
+    * @return the titles of the pages along a shortest path from startPage to
+    * stopPage, including both. Returns an empty list if there is no such
+    * path or if it could not be found before deadline expired.
+    **/
+   public List<String> getPath(String startPage, String stopPage, Deadline deadline) {
        List<String> path = new ArrayList<>();
-       Stack<String> stack = new Stack<>();
-       Set<String> discoveredSet = new HashSet<>();
-       List<String> allVertices = myWiki.whatLinksHere(stopPage);
-       stack.push(stopPage);
-       path.add(stopPage);
-       while (!stack.isEmpty()) {
-           String v = stack.pop();
-           if (startPage.equals(v)) {
-               path.add(startPage);
-           }
-           allVertices = myWiki.whatLinksHere(v);
-           if (!discoveredSet.contains(v)) {
-               discoveredSet.add(v);
-               for (String element: allVertices) {
-                   stack.push(element);
-               }
-           }
-
+       try {
+           return getPath_logic(startPage, stopPage, path, deadline);
+       } catch (DeadlineExceededException e) {
+           return path;
        }
-       Collections.sort(path, Collections.reverseOrder());
-       return path;
    }
 
-   /*
+   /** Bidirectional breadth-first search for a shortest path of links from
+    * startPage to stopPage. The forward search follows the links on each page,
+    * the backward search follows the links to each page (whatLinksHere), and
+    * the side with the smaller frontier is expanded one level at a time until
+    * the two searches meet. Stops early, returning an empty list, if the
+    * calling thread is interrupted.
+    *
+    * @param startPage the title of the page to start from
+    * @param stopPage the title of the page to reach
+    * @param listOf a list the path is appended to
+    * @return listOf, with the titles of a shortest path from startPage to
+    * stopPage appended to it (nothing is appended if there is no path).
+    **/
    public List<String> getPath_logic(String startPage, String stopPage, List<String> listOf) {
-       if (startPage.equals(stopPage) | myWiki.whatLinksHere(startPage).isEmpty()) {
+       return getPath_logic(startPage, stopPage, listOf, Deadline.NONE);
+   }
+
+   /** getPath_logic(startPage, stopPage, listOf), giving up once deadline
+    * expires.
+    *
+    * @param startPage the title of the page to start from
+    * @param stopPage the title of the page to reach
+    * @param listOf a list the path is appended to
+    * @param deadline when the path is no longer wanted
+    * @return listOf, with the titles of a shortest path appended to it
+    * @throws DeadlineExceededException if deadline expires first; nothing
+    * is appended to listOf then
+    **/
+   public List<String> getPath_logic(String startPage, String stopPage, List<String> listOf,
+                                     Deadline deadline) {
+       if (startPage.equals(stopPage)) {
            listOf.add(startPage);
            return listOf;
-       } else {
-           int hop = 1;
-           List<String> fd = getConnectedPages(stopPage, hop);
-           while (!getConnectedPages(stopPage, hop).contains(startPage)) {
-               ++hop;
-           }
-           System.out.println(hop);
-           List<String> beta = myWiki.whatLinksHere(stopPage);
-           getPathHelper(startPage, stopPage, listOf, hop);
-           return listOf;
        }
-   }
-
-   private boolean getPathHelper(String currentPage, String finalPage, List<String> list, int radius) {
-       boolean remove = true;
-       List<String> neighbours =myWiki.whatLinksHere(currentPage);
+       ConcurrentMap<String, String> forward = new ConcurrentHashMap<>();
+       ConcurrentMap<String, String> backward = new ConcurrentHashMap<>();
+       Map<String, Integer> forwardDepth = new HashMap<>();
+       Map<String, Integer> backwardDepth = new HashMap<>();
+       forward.put(startPage, startPage);
+       backward.put(stopPage, stopPage);
+       forwardDepth.put(startPage, 0);
+       backwardDepth.put(stopPage, 0);
+       List<String> forwardFrontier = List.of(startPage);
+       List<String> backwardFrontier = List.of(stopPage);
+       int forwardLevel = 0;
+       int backwardLevel = 0;
+
+       while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+           if (Thread.currentThread().isInterrupted()) {
+               return listOf;
+           }
+           boolean expandForward = forwardFrontier.size() <= backwardFrontier.size();
+           List<String> next;
+           Map<String, Integer> depth;
+           Map<String, Integer> otherDepth;
+           int level;
+           if (expandForward) {
+               next = expandFrontier(forwardFrontier, forward,
+                       title -> getLinksOnPage(title, deadline), deadline, Integer.MAX_VALUE);
+               depth = forwardDepth;
+               otherDepth = backwardDepth;
+               level = ++forwardLevel;
+           } else {
+               next = expandFrontier(backwardFrontier, backward,
+                       title -> whatLinksHere(title, deadline), deadline, Integer.MAX_VALUE);
+               depth = backwardDepth;
+               otherDepth = forwardDepth;
+               level = ++backwardLevel;
+           }
+           if (next == null) {
+               return listOf;
+           }
 
-       list.add(currentPage);
-       if (neighbours.contains(finalPage)) {
-           list.add(finalPage);
-           return true;
-       }
-       if (radius == 0) {
-           list.remove(currentPage);
-           return false;
-       }
-       for (String element:neighbours ) {
-           if (!list.contains(element)) {
-               if (getPathHelper(element, finalPage, list, radius - 1)) {
-                   remove = false;
+           // among the titles where the searches meet, keep the one on the
+           // shortest path:
+           String meeting = null;
+           int shortest = Integer.MAX_VALUE;
+           for (String title : next) {
+               depth.put(title, level);
+               Integer otherLevel = otherDepth.get(title);
+               if (otherLevel != null && level + otherLevel < shortest) {
+                   shortest = level + otherLevel;
+                   meeting = title;
+               }
+           }
+           if (meeting != null) {
+               List<String> path = new ArrayList<>();
+               for (String title = meeting; !title.equals(startPage); title = forward.get(title)) {
+                   path.add(title);
                }
+               path.add(startPage);
+               Collections.reverse(path);
+               for (String title = meeting; !title.equals(stopPage); ) {
+                   title = backward.get(title);
+                   path.add(title);
+               }
+               listOf.addAll(path);
+               return listOf;
+           }
+
+           if (expandForward) {
+               forwardFrontier = next;
+           } else {
+               backwardFrontier = next;
            }
        }
-       if(remove){list.remove(currentPage);}
-       return true;
+       return listOf;
    }
-
-    */
-}
-
-
-
-
-
-
-
-
-/*
-class CPENList<T, S extends Collection> {
-    private T object;
-    private S parameter;
-    CPENList(T obj, S param) {
-        object = obj;
-        parameter = param;
-    }
-
-    S getParameter() {
-        return parameter;
-    }
-
-    void addToParameter(S otherParam) {
-        parameter.addAll(otherParam);
-    }
 }
-
-class MainClass {
-    public static void main() {
-        CPENList<String, Double> myList = new CPENList<String, Double>("MP3", 4d);
-        System.out.println(myList.getParameter());
-    }
-}
-
- */
\ No newline at end of file
@@ -0,0 +1,56 @@
+package cpen221.mp3.wikimediator;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The calls WikiMediator makes to a wiki. Implemented by JWikiSource for
+ * the live Wikipedia API and by FixtureWikiSource for offline runs.
+ *
+ * Implementations must be safe to call from many threads at once.
+ */
+public interface WikiSource {
+
+    /**
+     * @param prefix the prefix every returned title starts with
+     * @param limit the maximum number of titles to return
+     * @return up to limit titles of pages starting with prefix
+     */
+    List<String> allPages(String prefix, int limit);
+
+    /**
+     * @param title the title of a page
+     * @return the wikitext of the page, or an empty string if there is no
+     * such page
+     */
+    String getPageText(String title);
+
+    /**
+     * Fetch the text of several pages in one call.
+     *
+     * @param titles the titles of at most 50 pages
+     * @return the wikitext of every page in titles, keyed by its title; an
+     * empty string for titles with no such page
+     */
+    Map<String, String> getPageTexts(Collection<String> titles);
+
+    /**
+     * @param title the title of a page
+     * @return the titles of the pages that link to the page
+     */
+    List<String> whatLinksHere(String title);
+
+    /**
+     * @param query the text to search for
+     * @param limit the maximum number of titles to return
+     * @return up to limit titles of pages matching query, best match first
+     */
+    List<String> search(String query, int limit);
+
+    /**
+     * @param title the title of a page
+     * @return the titles of the pages the page links to
+     */
+    List<String> getLinksOnPage(String title);
+}
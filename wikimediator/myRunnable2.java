@@ -1,39 +1,35 @@
 package cpen221.mp3.wikimediator;
 
-import fastily.jwiki.core.Wiki;
-
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.*;
 
 public class myRunnable2 implements Runnable {
-    private String startPage;
-    private String endPage;
-    private List<String> listOf = new ArrayList<>();
-    Wiki myWiki = new Wiki("en.wikipedia.org");
-    WikiMediator wikiMed = new WikiMediator();
-
-    public myRunnable2(String startPage, String endPage) {
+    private static final Duration TIMEOUT = Duration.ofSeconds(300);
+    private final WikiMediator wikiMed;
+    private final String startPage;
+    private final String endPage;
+    private final List<String> listOf = new ArrayList<>();
+
+    // Abstraction Function:
+    //  myRunnable2 represents one getPath search run under a time limit.
+    //    - wikiMed represents the WikiMediator whose getPath_logic is run.
+    //    - startPage and endPage represent the ends of the path searched for.
+    //    - listOf represents the path found, or is empty if no path was found
+    //      within TIMEOUT.
+
+    // Representation Invariant:
+    //    - wikiMed, startPage, endPage != null
+
+    public myRunnable2(WikiMediator wikiMed, String startPage, String endPage) {
+        this.wikiMed = wikiMed;
         this.startPage = startPage;
         this.endPage = endPage;
     }
 
     public void run() {
-        Duration timeout = Duration.ofSeconds(300);
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        Future<List<String>> handler = executor.submit(new Callable() {
-            @Override
-            public List<String> call() throws Exception {
-                return wikiMed.getPath_logic(startPage, endPage, listOf);
-            }
-        });
-
-        try {
-           handler.get(timeout.toSeconds(), TimeUnit.SECONDS);
-        } catch (ExecutionException | InterruptedException | TimeoutException e) {
-            handler.cancel(true);
-        }
-        executor.shutdownNow();
+        // runs on the calling thread; the search stops within one fetch of
+        // the deadline, and interrupts the fetches still running then:
+        listOf.addAll(wikiMed.getPath(startPage, endPage, Deadline.after(TIMEOUT)));
     }
 
     public List<String> kk() {
@@ -41,5 +37,3 @@ public class myRunnable2 implements Runnable {
         return listOf;
     }
 }
-
-